@@ -0,0 +1,53 @@
+package org.starmatch.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.starmatch.src.model.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the service operations behind the most used features, each run against every {@link UserDataset}.
+ * <p>
+ * Run them before and after a performance change and compare the scores and the {@code gc.alloc.rate.norm} of the
+ * allocation profiler, which {@link BenchmarkRunner} enables.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+    @Benchmark
+    public NatalChart getNatalChart(UserDataset dataset) {
+        return dataset.service.getNatalChart(dataset.probe);
+    }
+
+    @Benchmark
+    public Compatibility calculateCompatibility(UserDataset dataset) {
+        return dataset.service.calculateCompatibility(dataset.probe, dataset.probeFriendEmail);
+    }
+
+    @Benchmark
+    public Map<Element, Long> mostPopularElements(UserDataset dataset) {
+        return dataset.service.mostPopularElements(dataset.userRepository.getAll());
+    }
+
+    @Benchmark
+    public List<User> getFriends(UserDataset dataset) {
+        return dataset.service.getFriends(dataset.probe);
+    }
+
+    @Benchmark
+    public boolean validateUserLogin(UserDataset dataset) {
+        return dataset.service.validateUserLogin(dataset.probe.getEmail(), dataset.probe.getPassword());
+    }
+
+    @Benchmark
+    public int getMaxId(UserDataset dataset) {
+        return dataset.service.getMaxId(dataset.userRepository);
+    }
+}
@@ -0,0 +1,75 @@
+package org.starmatch.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.starmatch.src.StarMatchService;
+import org.starmatch.src.model.User;
+import org.starmatch.src.repository.CompactUserRepository;
+import org.starmatch.src.repository.InFileRepository;
+import org.starmatch.src.repository.InMemoryRepository;
+import org.starmatch.src.repository.Repository;
+import org.starmatch.src.utils.SyntheticDataGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.starmatch.src.utils.InMemoryData.*;
+
+/**
+ * Benchmark state holding a service over a generated user base, for every combination of size and storage.
+ * <p>
+ * The users come from {@link SyntheticDataGenerator} with a fixed seed, so that runs before and after a change see
+ * the same data. Signs, quotes, traits and admins come from {@link org.starmatch.src.utils.InMemoryData}; only the
+ * user repository changes with the storage. The file of the {@code file} storage is written once per trial and
+ * deleted afterwards.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class UserDataset {
+    private static final long SEED = 42;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"memory", "compact", "file"})
+    public String storage;
+
+    public StarMatchService service;
+    public Repository<User> userRepository;
+
+    /**
+     * A user from the middle of the data set, with friends, used as the current user of the benchmarks.
+     */
+    public User probe;
+    public String probeFriendEmail;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(SEED, size);
+        if (storage.equals("file")) {
+            file = Files.createTempFile("starmatch-users", ".txt");
+            generator.writeCsv(file);
+            userRepository = new InFileRepository<>(file.toString(), User.class);
+        } else {
+            userRepository = storage.equals("compact") ? new CompactUserRepository() : new InMemoryRepository<>();
+            generator.writeTo(userRepository);
+        }
+        service = new StarMatchService(userRepository, createInMemoryAdminRepository(), createInMemoryStarSignRepository(),
+                createInMemoryQuoteRepository(), createInMemoryTraitRepository());
+        int probeId = size / 2 + 1;
+        while (generator.user(probeId).getRawFriendEmails().isEmpty()) {
+            probeId = probeId % size + 1;
+        }
+        probe = userRepository.get(probeId);
+        probeFriendEmail = probe.getRawFriendEmails().getFirst();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.starmatch.src;
+
+import org.starmatch.src.analytics.UserStatistics;
+import org.starmatch.src.model.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous facade of {@link StarMatchService}: every operation runs on an executor and returns a
+ * {@link CompletableFuture} instead of blocking the caller on the repositories.
+ * <p>
+ * Every task calls a public method of the service, so an {@link InstrumentedStarMatchService} times the asynchronous
+ * calls like the others. {@link #calculateCompatibility(User, String)} computes the user's chart while the friend is
+ * looked up and their chart computed, and {@link #getInsights} picks the traits and the quote in parallel once the
+ * chart is computed.
+ * </p>
+ * <p>
+ * The tasks only overlap as far as the repositories let them. A database repository runs all its statements on one
+ * JDBC connection, so the lookups of concurrent tasks still wait for each other there, and the facade mostly frees
+ * the caller rather than speeding the lookups up.
+ * </p>
+ * <p>
+ * By default every task runs on its own virtual thread, which suits operations blocked on JDBC most of the time.
+ * Failures of the service complete the futures exceptionally with the original exception wrapped in a
+ * {@link java.util.concurrent.CompletionException}.
+ * </p>
+ */
+public class AsyncStarMatchService implements AutoCloseable {
+    private final StarMatchService starMatchService;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * The natal chart of a user, with the traits and a quote computed from it.
+     */
+    public record Insights(NatalChart natalChart, List<String> traits, String quote) {}
+
+    /**
+     * Creates a facade running every operation on a new virtual thread.
+     * @param starMatchService the service doing the work
+     */
+    public AsyncStarMatchService(StarMatchService starMatchService) {
+        this(starMatchService, Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
+
+    /**
+     * Creates a facade running the operations on an executor, which the caller keeps ownership of.
+     * @param starMatchService the service doing the work
+     * @param executor the executor of the operations
+     */
+    public AsyncStarMatchService(StarMatchService starMatchService, Executor executor) {
+        this(starMatchService, executor, false);
+    }
+
+    private AsyncStarMatchService(StarMatchService starMatchService, Executor executor, boolean owned) {
+        this.starMatchService = starMatchService;
+        this.executor = executor;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * Logs a user in.
+     * @return the future user, or null if the credentials are invalid
+     */
+    public CompletableFuture<User> logInUser(String email, String password) {
+        return async(() -> starMatchService.logInUser(email, password));
+    }
+
+    /**
+     * Validates admin credentials.
+     * @return the future result of the check
+     */
+    public CompletableFuture<Boolean> validateAdminLogin(String email, String password) {
+        return async(() -> starMatchService.validateAdminLogin(email, password));
+    }
+
+    /**
+     * Creates a user.
+     * @return a future completed once the user is stored
+     */
+    public CompletableFuture<Void> createUser(String name, LocalDate birthDate, LocalTime birthTime, String birthPlace, String email, String password) {
+        return run(() -> starMatchService.createUser(name, birthDate, birthTime, birthPlace, email, password));
+    }
+
+    /**
+     * Updates a user's information, keeping the values passed blank or null.
+     * @return the future updated user
+     */
+    public CompletableFuture<User> updateUser(User user, String name, String email, String password, LocalDate birthDate, LocalTime birthTime, String birthPlace) {
+        return async(() -> starMatchService.updateUser(user, name, email, password, birthDate, birthTime, birthPlace));
+    }
+
+    /**
+     * Looks a user up by email.
+     * @return the future user, or null if none has the email
+     */
+    public CompletableFuture<User> getUserByEmail(String email) {
+        return async(() -> starMatchService.getUserByEmail(email));
+    }
+
+    /**
+     * Retrieves all users.
+     * @return the future list of users
+     */
+    public CompletableFuture<List<User>> getUsers() {
+        return async(starMatchService::getUsers);
+    }
+
+    /**
+     * Retrieves all users except one.
+     * @return the future list of the other users
+     */
+    public CompletableFuture<List<User>> getAllUsersExcept(User currentUser) {
+        return async(() -> starMatchService.getAllUsersExcept(currentUser));
+    }
+
+    /**
+     * Retrieves users by their IDs.
+     * @return the future list of the users found
+     */
+    public CompletableFuture<List<User>> getUsersByIds(List<Integer> ids) {
+        return async(() -> starMatchService.getUsersByIds(ids));
+    }
+
+    /**
+     * Computes the natal chart of a user.
+     * @return the future natal chart
+     */
+    public CompletableFuture<NatalChart> getNatalChart(User user) {
+        return async(() -> starMatchService.getNatalChart(user));
+    }
+
+    /**
+     * Retrieves the personality traits of a natal chart.
+     * @return the future trait names
+     */
+    public CompletableFuture<List<String>> getPersonalityTraits(NatalChart chart) {
+        return async(() -> starMatchService.getPersonalityTraits(chart));
+    }
+
+    /**
+     * Picks a quote for a natal chart.
+     * @return the future quote
+     */
+    public CompletableFuture<String> getPersonalizedQuote(NatalChart chart) {
+        return async(() -> starMatchService.getPersonalizedQuote(chart));
+    }
+
+    /**
+     * Computes the natal chart of a user with its traits and a quote, the traits and the quote being derived from the
+     * chart in parallel.
+     * @return the future insights
+     */
+    public CompletableFuture<Insights> getInsights(User user) {
+        CompletableFuture<NatalChart> chart = getNatalChart(user);
+        CompletableFuture<List<String>> traits = chart.thenApplyAsync(starMatchService::getPersonalityTraits, executor);
+        CompletableFuture<String> quote = chart.thenApplyAsync(starMatchService::getPersonalizedQuote, executor);
+        return CompletableFuture.allOf(traits, quote)
+                .thenApply(done -> new Insights(chart.join(), traits.join(), quote.join()));
+    }
+
+    /**
+     * Calculates the compatibility between a user and a friend, the user's chart being computed while the friend is
+     * looked up and their chart computed.
+     * @return the future compatibility, failing with an
+     * {@link org.starmatch.src.exceptions.EntityNotFoundException} if the email is not of a friend
+     */
+    public CompletableFuture<Compatibility> calculateCompatibility(User user, String friendEmail) {
+        CompletableFuture<NatalChart> chartUser = getNatalChart(user);
+        CompletableFuture<User> friend = getUserByEmail(friendEmail);
+        CompletableFuture<NatalChart> chartFriend = friend.thenCompose(found -> found == null ? CompletableFuture.completedFuture(null) : getNatalChart(found));
+        return CompletableFuture.allOf(chartUser, chartFriend).thenApplyAsync(
+                done -> starMatchService.calculateCompatibility(user, chartUser.join(), friend.join(), chartFriend.join()), executor);
+    }
+
+    /**
+     * Calculates the compatibility between a user whose chart is already known and a friend.
+     * @return the future compatibility
+     */
+    public CompletableFuture<Compatibility> calculateCompatibility(User user, NatalChart chartUser, String friendEmail) {
+        return async(() -> starMatchService.calculateCompatibility(user, chartUser, friendEmail));
+    }
+
+    /**
+     * Adds a friend to a user's friend list.
+     * @return a future of the user as stored, completed once the friend list is stored
+     */
+    public CompletableFuture<User> addFriend(User user, String friendEmail) {
+        return async(() -> starMatchService.addFriend(user, friendEmail));
+    }
+
+    /**
+     * Removes a friend from a user's friend list.
+     * @return a future of the user as stored, completed once the friend list is stored
+     */
+    public CompletableFuture<User> removeFriend(User user, String friendEmail) {
+        return async(() -> starMatchService.removeFriend(user, friendEmail));
+    }
+
+    /**
+     * Retrieves the friends of a user.
+     * @return the future list of friends
+     */
+    public CompletableFuture<List<User>> getFriends(User user) {
+        return async(() -> starMatchService.getFriends(user));
+    }
+
+    /**
+     * Retrieves the users born in the same place as a user.
+     * @return the future list of users
+     */
+    public CompletableFuture<List<User>> getFriendsNearMe(User user) {
+        return async(() -> starMatchService.getFriendsNearMe(user));
+    }
+
+    /**
+     * Retrieves all admins.
+     * @return the future list of admins
+     */
+    public CompletableFuture<List<Admin>> getAdmins() {
+        return async(starMatchService::getAdmins);
+    }
+
+    /**
+     * Retrieves all quotes.
+     * @return the future list of quotes
+     */
+    public CompletableFuture<List<Quote>> getQuotes() {
+        return async(starMatchService::getQuotes);
+    }
+
+    /**
+     * Retrieves all traits, sorted by element.
+     * @return the future list of traits
+     */
+    public CompletableFuture<List<Trait>> getTraits() {
+        return async(starMatchService::getTraits);
+    }
+
+    /**
+     * Computes the statistics of all users.
+     * @return the future statistics
+     */
+    public CompletableFuture<UserStatistics> getUserStatistics() {
+        return async(starMatchService::getUserStatistics);
+    }
+
+    /**
+     * Shuts the default virtual-thread executor down after the running operations. An executor passed by the caller
+     * is left running.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.close();
+        }
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, executor);
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return CompletableFuture.runAsync(operation, executor);
+    }
+}
@@ -0,0 +1,389 @@
+package org.starmatch.src;
+
+import org.starmatch.src.analytics.UserStatistics;
+import org.starmatch.src.exceptions.*;
+import org.starmatch.src.model.*;
+import org.starmatch.src.utils.Json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Runs StarMatch commands from a script instead of the interactive menus of {@link ConsoleApp}, to replay recorded
+ * command traces and measure their throughput.
+ * <p>
+ * A script has one command per line. In a plain script the command name is followed by its arguments, separated by
+ * spaces, with double quotes around arguments containing spaces; blank lines and lines starting with {@code #} are
+ * skipped. In a JSONL script, recognized by its {@code .jsonl} extension, every line is an object such as
+ * {@code {"command": "add-friend", "args": ["ana@gmail.com"]}}.
+ * </p>
+ * <p>
+ * The output of all commands, including what the controller prints itself, goes through one buffer that is written
+ * out in large blocks. Every command is timed, and a summary of the counts, errors and latencies per command and of
+ * the overall throughput is printed at the end of the run. A failing command is reported and the run continues.
+ * The friend commands call the service rather than the controller, which only prints their errors, so that an
+ * unknown friend counts as an error of the command.
+ * </p>
+ * <p>
+ * Commands: {@code login <email> <password>}, {@code logout}, {@code signup <name> <birthDate> <birthTime>
+ * <birthPlace> <email> <password>}, {@code admin-login <email> <password>}, {@code profile},
+ * {@code update-profile <name> <email> <password> <birthDate> <birthTime> <birthPlace>} (empty to keep a value),
+ * {@code natal-chart}, {@code traits}, {@code quote}, {@code users}, {@code friends}, {@code add-friend <email>},
+ * {@code remove-friend <email>}, {@code compatibility <email>}, {@code friends-near-me}, {@code popular-elements},
+ * and for admins {@code view-users}, {@code view-quotes}, {@code view-traits}, {@code view-admins},
+ * {@code filter-users <year>}, {@code filter-quotes <element>}, {@code statistics}, {@code import-users <file>},
+ * {@code export-snapshot <file>} and {@code restore-snapshot <file>}.
+ * </p>
+ */
+public class BatchApp {
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final StarMatchService starMatchService;
+    private final StarMatchController starMatchController;
+    private final OutputStream out;
+
+    private UserSession session;
+    private boolean admin;
+
+    /**
+     * Creates a batch runner writing to the standard output.
+     * @param starMatchService the service running the commands
+     */
+    public BatchApp(StarMatchService starMatchService) {
+        this(starMatchService, System.out);
+    }
+
+    /**
+     * Creates a batch runner.
+     * @param starMatchService the service running the commands
+     * @param out the stream receiving the output of the commands and the summary
+     */
+    public BatchApp(StarMatchService starMatchService, OutputStream out) {
+        this.starMatchService = starMatchService;
+        this.starMatchController = new StarMatchController(starMatchService);
+        this.out = out;
+    }
+
+    /**
+     * A command of a script, with its arguments.
+     */
+    public record Command(String name, List<String> args) {
+        String arg(int index) {
+            if (index >= args.size()) {
+                throw new ValidationException("Missing argument " + (index + 1) + " of " + name);
+            }
+            return args.get(index);
+        }
+    }
+
+    /**
+     * Runs a script file, as JSONL if its name ends with {@code .jsonl} and as a plain script otherwise.
+     * @param script the script to run
+     * @return the summary of the run
+     * @throws UncheckedIOException if the script cannot be read
+     */
+    public Summary run(Path script) {
+        boolean jsonl = script.getFileName().toString().endsWith(".jsonl");
+        try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            return run(reader, jsonl);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + script, e);
+        }
+    }
+
+    /**
+     * Runs the commands read from a reader.
+     * @param reader the source of the commands, one per line
+     * @param jsonl whether the lines are JSON objects rather than plain commands
+     * @return the summary of the run
+     * @throws IOException if the commands cannot be read
+     */
+    public Summary run(BufferedReader reader, boolean jsonl) throws IOException {
+        PrintStream stdout = System.out;
+        PrintStream buffered = new PrintStream(new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE), false, StandardCharsets.UTF_8);
+        Map<String, CommandStats> stats = new TreeMap<>();
+        long start = System.nanoTime();
+        System.setOut(buffered);
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.strip();
+                if (trimmed.isEmpty() || (!jsonl && trimmed.startsWith("#"))) {
+                    continue;
+                }
+
+                Command command;
+                try {
+                    command = jsonl ? parseJsonLine(trimmed) : parseScriptLine(trimmed);
+                } catch (ValidationException e) {
+                    buffered.println("ERROR line " + lineNumber + ": " + e.getMessage());
+                    stats.computeIfAbsent("<invalid>", name -> new CommandStats()).record(0, true);
+                    continue;
+                }
+
+                long commandStart = System.nanoTime();
+                boolean failed = false;
+                try {
+                    execute(command, buffered);
+                } catch (RuntimeException e) {
+                    failed = true;
+                    buffered.println("ERROR line " + lineNumber + " (" + command.name() + "): " + e.getMessage());
+                }
+                stats.computeIfAbsent(command.name(), name -> new CommandStats()).record(System.nanoTime() - commandStart, failed);
+            }
+
+            Summary summary = new Summary(stats, System.nanoTime() - start);
+            buffered.print(summary.report());
+            return summary;
+        } finally {
+            System.setOut(stdout);
+            buffered.flush();
+        }
+    }
+
+    /**
+     * Parses a line of a plain script.
+     * @param line the line, holding the command name and its arguments
+     * @return the command
+     * @throws ValidationException if a quoted argument is not closed
+     */
+    public static Command parseScriptLine(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        boolean hasToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                hasToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (hasToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    hasToken = false;
+                }
+            } else {
+                token.append(c);
+                hasToken = true;
+            }
+        }
+        if (quoted) {
+            throw new ValidationException("Unclosed quote in: " + line);
+        }
+        if (hasToken) {
+            tokens.add(token.toString());
+        }
+        return new Command(tokens.getFirst(), List.copyOf(tokens.subList(1, tokens.size())));
+    }
+
+    /**
+     * Parses a line of a JSONL script.
+     * @param line a JSON object with a {@code command} string and an optional {@code args} array
+     * @return the command
+     * @throws ValidationException if the line is not such an object
+     */
+    public static Command parseJsonLine(String line) {
+        Map<String, Object> object = Json.parseObject(line);
+        if (!(object.get("command") instanceof String name)) {
+            throw new ValidationException("Missing command in: " + line);
+        }
+        Object args = object.getOrDefault("args", List.of());
+        if (!(args instanceof List<?> list)) {
+            throw new ValidationException("The args of a command must be an array: " + line);
+        }
+        return new Command(name, list.stream().map(arg -> arg == null ? "" : String.valueOf(arg)).toList());
+    }
+
+    private void execute(Command command, PrintStream output) {
+        switch (command.name()) {
+            case "login" -> {
+                session = starMatchController.logInUser(command.arg(0), command.arg(1));
+                if (session == null) {
+                    throw new ValidationException("Invalid credentials for " + command.arg(0));
+                }
+                output.println("Logged in as " + session.getEmail());
+            }
+            case "logout" -> {
+                session = null;
+                admin = false;
+                output.println("Logged out");
+            }
+            case "signup" -> {
+                starMatchController.signUpNewUser(command.arg(0), LocalDate.parse(command.arg(1)), LocalTime.parse(command.arg(2)),
+                        command.arg(3), command.arg(4), command.arg(5));
+                session = starMatchController.startUserSession(command.arg(4));
+                output.println("Signed up as " + session.getEmail());
+            }
+            case "admin-login" -> {
+                admin = starMatchController.handleAdminLogin(command.arg(0), command.arg(1));
+                if (!admin) {
+                    throw new ValidationException("Invalid admin credentials for " + command.arg(0));
+                }
+                output.println("Logged in as admin " + command.arg(0));
+            }
+            case "profile" -> output.println(starMatchController.viewUserProfile(session()));
+            case "update-profile" -> {
+                starMatchController.updateUser(session(), command.arg(0), command.arg(1), command.arg(2),
+                        command.arg(3).isBlank() ? null : LocalDate.parse(command.arg(3)),
+                        command.arg(4).isBlank() ? null : LocalTime.parse(command.arg(4)), command.arg(5));
+                output.println("User updated");
+            }
+            case "natal-chart" -> starMatchController.viewNatalChart(session()).getPlanets()
+                    .forEach(planet -> output.println(planet.getPlanetName() + ": " + planet.getSign().getStarName()));
+            case "traits" -> starMatchController.viewPersonalityTraits(session()).forEach(output::println);
+            case "quote" -> output.println(starMatchController.getPersonalizedQuote(session()));
+            case "users" -> starMatchController.getAllUsersExcept(session())
+                    .forEach(user -> output.println(user.getName() + " (" + user.getEmail() + ")"));
+            case "friends" -> starMatchController.viewFriends(session())
+                    .forEach(friend -> output.println(friend.getName() + " (" + friend.getEmail() + ")"));
+            case "add-friend" -> {
+                session.refresh(starMatchService.addFriend(session().getUser(), command.arg(0)));
+                output.println("Added friend " + command.arg(0));
+            }
+            case "remove-friend" -> {
+                session.refresh(starMatchService.removeFriend(session().getUser(), command.arg(0)));
+                output.println("Removed friend " + command.arg(0));
+            }
+            case "compatibility" -> output.println(
+                    starMatchController.getCompatibility(session(), command.arg(0)).getCompatibilityScore() + "% compatible");
+            case "friends-near-me" -> starMatchController.getFriendsNearMe(session())
+                    .forEach(friend -> output.println(friend.getName() + " is also born in " + friend.getBirthPlace()));
+            case "popular-elements" -> starMatchController.mostPopularElement()
+                    .forEach((element, count) -> output.println(element + ": " + count + " users"));
+            case "view-users" -> admin(starMatchController::viewUsers);
+            case "view-quotes" -> admin(starMatchController::viewQuotes);
+            case "view-traits" -> admin(starMatchController::viewTraits);
+            case "view-admins" -> admin(starMatchController::viewAdmins);
+            case "filter-users" -> admin(() -> starMatchController.filterUsers(Integer.parseInt(command.arg(0))).forEach(output::println));
+            case "filter-quotes" -> admin(() -> starMatchController.filterQuotes(Element.valueOf(command.arg(0))).forEach(output::println));
+            case "statistics" -> admin(() -> {
+                UserStatistics statistics = starMatchController.getUserStatistics();
+                output.println("Users: " + statistics.getUserCount());
+                output.println("Elements: " + statistics.getElementCounts());
+            });
+            case "import-users" -> admin(() -> starMatchController.importUsers(command.arg(0)));
+            case "export-snapshot" -> admin(() -> starMatchController.exportSnapshot(command.arg(0)));
+            case "restore-snapshot" -> admin(() -> starMatchController.restoreSnapshot(command.arg(0)));
+            default -> throw new ValidationException("Unknown command " + command.name());
+        }
+    }
+
+    private UserSession session() {
+        if (session == null) {
+            throw new BusinessLogicException("No user is logged in");
+        }
+        return session;
+    }
+
+    private void admin(Runnable action) {
+        if (!admin) {
+            throw new BusinessLogicException("No admin is logged in");
+        }
+        action.run();
+    }
+
+    /**
+     * Timings of all runs of one command.
+     */
+    private static final class CommandStats {
+        private long[] durations = new long[16];
+        private int count;
+        private int errors;
+        private long totalNanos;
+
+        void record(long nanos, boolean failed) {
+            if (count == durations.length) {
+                durations = Arrays.copyOf(durations, count * 2);
+            }
+            durations[count++] = nanos;
+            totalNanos += nanos;
+            if (failed) {
+                errors++;
+            }
+        }
+
+        long percentile(double fraction) {
+            long[] sorted = Arrays.copyOf(durations, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(fraction * count) - 1)];
+        }
+    }
+
+    /**
+     * Counts, errors and latencies of a batch run.
+     */
+    public static final class Summary {
+        private final Map<String, CommandStats> stats;
+        private final long elapsedNanos;
+
+        private Summary(Map<String, CommandStats> stats, long elapsedNanos) {
+            this.stats = stats;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the number of commands run, including the failed ones.
+         * @return the number of commands
+         */
+        public long getCommandCount() {
+            return stats.values().stream().mapToLong(command -> command.count).sum();
+        }
+
+        /**
+         * Gets the number of commands that failed or could not be parsed.
+         * @return the number of errors
+         */
+        public long getErrorCount() {
+            return stats.values().stream().mapToLong(command -> command.errors).sum();
+        }
+
+        /**
+         * Gets the number of runs of each command.
+         * @return the number of runs by command name
+         */
+        public Map<String, Integer> getCommandCounts() {
+            Map<String, Integer> counts = new TreeMap<>();
+            stats.forEach((name, command) -> counts.put(name, command.count));
+            return counts;
+        }
+
+        /**
+         * Gets the wall-clock time of the run.
+         * @return the elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the number of commands run per second of wall-clock time.
+         * @return the throughput of the run
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : getCommandCount() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Formats the summary as a table with one row per command, latencies in microseconds.
+         * @return the report
+         */
+        public String report() {
+            StringBuilder report = new StringBuilder("-- Batch Summary --\n");
+            report.append(String.format("%-20s %8s %7s %10s %10s %10s %10s%n", "command", "count", "errors", "mean us", "p50 us", "p99 us", "max us"));
+            stats.forEach((name, command) -> report.append(String.format("%-20s %8d %7d %10.1f %10.1f %10.1f %10.1f%n",
+                    name, command.count, command.errors, command.totalNanos / 1e3 / command.count,
+                    command.percentile(0.5) / 1e3, command.percentile(0.99) / 1e3, command.percentile(1.0) / 1e3)));
+            report.append(String.format("%d commands, %d errors in %.3f s (%.1f commands/s)%n",
+                    getCommandCount(), getErrorCount(), elapsedNanos / 1e9, getThroughput()));
+            return report.toString();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.starmatch.src;
 
 import org.starmatch.src.StarMatchController;
+import org.starmatch.src.analytics.UserStatistics;
 import org.starmatch.src.model.*;
 import org.starmatch.src.exceptions.*;
 
@@ -65,9 +66,10 @@ public class ConsoleApp {
         String password = scanner.nextLine();
 
         try {
-            if (starMatchController.handleUserLogin(email, password)) {
+            UserSession session = starMatchController.logInUser(email, password);
+            if (session != null) {
                 System.out.println("Login successful! Welcome, " + email);
-                userMenu(scanner, email);
+                userMenu(scanner, session);
             } else {
                 throw new ValidationException("Invalid credentials. Please try again.");
             }
@@ -118,21 +120,24 @@ public class ConsoleApp {
         System.out.print("City of birth: ");
         String placeOfBirth = scanner.nextLine();
 
+        UserSession session;
         try{
             starMatchController.signUpNewUser(name, LocalDate.parse(dateOfBirth), LocalTime.parse(timeOfBirth), placeOfBirth, email, password);
-            System.out.println("Sign-up successful! Welcome, " + name);}
+            System.out.println("Sign-up successful! Welcome, " + name);
+            session = starMatchController.startUserSession(email);}
         catch (EntityNotFoundException e) {
             System.out.println(e.getMessage());
+            return;
         }
-        userMenu(scanner, email);
+        userMenu(scanner, session);
     }
 
     /**
      * Displays the user dashboard with options for using the application.
      * @param scanner The scanner instance to get user input.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    private void userMenu(Scanner scanner, String userEmail) {
+    private void userMenu(Scanner scanner, UserSession session) {
         boolean userLoop = true;
         while (userLoop) {
             System.out.print("""
@@ -156,13 +161,13 @@ public class ConsoleApp {
                     System.out.println("Logging out...");
                     userLoop = false;
                 }
-                case "1" -> viewUserProfile(userEmail);
-                case "2" -> updateUserProfile(scanner, userEmail);
-                case "3" -> viewNatalChart(userEmail);
-                case "4" -> viewPersonalityTraits(userEmail);
-                case "5" -> viewPersonalizedQuote(userEmail);
-                case "6" -> manageFriendsMenu(scanner,userEmail);
-                case "7" -> viewCompatibility(scanner,userEmail);
+                case "1" -> viewUserProfile(session);
+                case "2" -> updateUserProfile(scanner, session);
+                case "3" -> viewNatalChart(session);
+                case "4" -> viewPersonalityTraits(session);
+                case "5" -> viewPersonalizedQuote(session);
+                case "6" -> manageFriendsMenu(scanner,session);
+                case "7" -> viewCompatibility(scanner,session);
                 case "8" -> viewMostPopularElement();
                 default -> System.out.println("Invalid option. Please try again.");
             }
@@ -182,6 +187,9 @@ public class ConsoleApp {
                     2. Manage Traits
                     3. Manage Quotes
                     4. Manage Admins
+                    5. Export Data Snapshot
+                    6. Restore Data Snapshot
+                    7. Performance Metrics
                     
                     0. Log Out
                     """);
@@ -197,11 +205,65 @@ public class ConsoleApp {
                 case "2" -> adminManageTraitsMenu(scanner);
                 case "3" -> adminManageQuotesMenu(scanner);
                 case "4" -> adminManageAdminMenu(scanner);
+                case "5" -> exportSnapshot(scanner);
+                case "6" -> restoreSnapshot(scanner);
+                case "7" -> adminMetricsMenu(scanner);
+                default -> System.out.println("Invalid option. Please try again.");
+            }
+        }
+    }
+
+    /**
+     * Provides the admin with the calls, errors and latencies of every operation, to find which path is slow.
+     * @param scanner The scanner instance to get admin input.
+     */
+    private void adminMetricsMenu(Scanner scanner) {
+        boolean adminLoop = true;
+        while (adminLoop) {
+            System.out.print("""
+                    -- Performance Metrics --
+                    1. View operation metrics
+                    2. Export metrics in Prometheus format
+                    3. Reset metrics
+                    
+                    0. Go back to admin menu
+                    """);
+
+            String adminOption = scanner.nextLine();
+
+            switch (adminOption) {
+                case "0" -> adminLoop = false;
+                case "1" -> starMatchController.viewMetrics();
+                case "2" -> {
+                    System.out.print("Path of the metrics file: ");
+                    starMatchController.exportMetrics(scanner.nextLine());
+                }
+                case "3" -> starMatchController.resetMetrics();
                 default -> System.out.println("Invalid option. Please try again.");
             }
         }
     }
 
+    /**
+     * The admin can export all the data of the app into a snapshot file
+     * @param scanner The scanner instance to get admin input.
+     */
+    private void exportSnapshot(Scanner scanner) {
+        System.out.println("-- Export Data Snapshot --");
+        System.out.print("Path of the snapshot file: ");
+        starMatchController.exportSnapshot(scanner.nextLine());
+    }
+
+    /**
+     * The admin can restore the data of the app from a snapshot file, e.g. to move it to another storage type
+     * @param scanner The scanner instance to get admin input.
+     */
+    private void restoreSnapshot(Scanner scanner) {
+        System.out.println("-- Restore Data Snapshot --");
+        System.out.print("Path of the snapshot file: ");
+        starMatchController.restoreSnapshot(scanner.nextLine());
+    }
+
     /**
      * Provides the admin with options for managing user accounts, viewing and deleting.
      * @param scanner The scanner instance to get admin input.
@@ -214,6 +276,8 @@ public class ConsoleApp {
                     1. View all users
                     2. Delete users
                     3. Filter Users by Year
+                    4. View User Statistics
+                    5. Import Users from CSV
                     
                     0. Go back to admin menu
                     """);
@@ -225,6 +289,8 @@ public class ConsoleApp {
                 case "1" -> starMatchController.viewUsers();
                 case "2" -> removeUsers(scanner);
                 case "3" -> filterUsers(scanner);
+                case "4" -> viewUserStatistics();
+                case "5" -> importUsers(scanner);
                 default -> System.out.println("Invalid option. Please try again.");
             }
         }
@@ -258,6 +324,32 @@ public class ConsoleApp {
         starMatchController.filterUsers(year).forEach(System.out::println);
     }
 
+    /**
+     * The admin can import many users at once from a CSV file
+     * @param scanner The scanner instance to get admin input.
+     */
+    private void importUsers(Scanner scanner) {
+        System.out.println("-- Import Users --");
+        System.out.print("Path of the CSV file: ");
+        String filePath = scanner.nextLine();
+        starMatchController.importUsers(filePath);
+    }
+
+    /**
+     * The admin can view the element distribution per birth year and city and the most common sign combinations
+     */
+    private void viewUserStatistics() {
+        UserStatistics statistics = starMatchController.getUserStatistics();
+        System.out.println("-- User Statistics (" + statistics.getUserCount() + " users) --");
+        System.out.println("Elements: " + statistics.getElementCounts());
+        System.out.println("Elements per birth year:");
+        statistics.getElementCountsByBirthYear().forEach((year, counts) -> System.out.println(year + ": " + counts));
+        System.out.println("Elements per city of birth:");
+        statistics.getElementCountsByBirthPlace().forEach((place, counts) -> System.out.println(place + ": " + counts));
+        System.out.println("Most common Sun/Moon/Rising combinations:");
+        statistics.getTopSignTriples(10).forEach((triple, count) -> System.out.println(triple + ": " + count + " users"));
+    }
+
     /**
      * Provides the admin with options for managing quotes.
      * @param scanner The scanner instance to get admin input.
@@ -554,10 +646,10 @@ public class ConsoleApp {
 
     /**
      * A user views its profile information.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    private void viewUserProfile(String userEmail) {
-        User user=starMatchController.viewUserProfile(userEmail);
+    private void viewUserProfile(UserSession session) {
+        User user=starMatchController.viewUserProfile(session);
         if(user == null){
             throw new EntityNotFoundException("Error: No user found with this email");
         }
@@ -584,11 +676,10 @@ public class ConsoleApp {
     /**
      * A user updates its information.
      * @param scanner The scanner instance to get user input.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    private void updateUserProfile(Scanner scanner, String userEmail){
+    private void updateUserProfile(Scanner scanner, UserSession session){
         System.out.println("-- Update User Profile --");
-        User user=starMatchController.viewUserProfile(userEmail);
 
         System.out.print("New Name (leave blank to keep current): ");
         String name = scanner.nextLine();
@@ -611,7 +702,7 @@ public class ConsoleApp {
         String birthPlace = scanner.nextLine();
 
         try{
-            starMatchController.updateUser(user,name,email,password,birthDate,birthTime,birthPlace);
+            starMatchController.updateUser(session,name,email,password,birthDate,birthTime,birthPlace);
             System.out.println("User updated");
         }
         catch (EntityNotFoundException e){
@@ -621,11 +712,11 @@ public class ConsoleApp {
 
     /**
      * A user views its Natalchart.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    private void viewNatalChart(String userEmail) {
+    private void viewNatalChart(UserSession session) {
         try{
-            NatalChart natalChart = starMatchController.viewNatalChart(userEmail);
+            NatalChart natalChart = starMatchController.viewNatalChart(session);
             if (natalChart != null) {
                 System.out.println("Natal Chart:");
                 natalChart.getPlanets().forEach(planet ->
@@ -642,29 +733,29 @@ public class ConsoleApp {
 
     /**
      * A user views a list of the personality traits based on its Natalchart.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    private void viewPersonalityTraits(String userEmail){
-        List<String> traits=starMatchController.viewPersonalityTraits(userEmail);
+    private void viewPersonalityTraits(UserSession session){
+        List<String> traits=starMatchController.viewPersonalityTraits(session);
         System.out.println("Your personality traits:");
         traits.forEach(System.out::println);
     }
 
     /**
      * A user views a personalized quote based on its Natalchart.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    private void viewPersonalizedQuote(String userEmail) {
+    private void viewPersonalizedQuote(UserSession session) {
         System.out.println("Your personalized quote:");
-        System.out.println(starMatchController.getPersonalizedQuote(userEmail));
+        System.out.println(starMatchController.getPersonalizedQuote(session));
     }
 
     /**
      * Provides the user with options for managing friends.
      * @param scanner The scanner instance to get user input.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    private void manageFriendsMenu(Scanner scanner, String userEmail) {
+    private void manageFriendsMenu(Scanner scanner, UserSession session) {
         boolean friendLoop=true;
         while (friendLoop) {
             System.out.println("-- Manage Friends Menu --");
@@ -681,43 +772,43 @@ public class ConsoleApp {
 
             switch (friendOption) {
                 case "0" -> friendLoop = false;
-                case "1" -> viewAllUsers(userEmail);
-                case "2" -> addFriend(scanner,userEmail);
-                case "3" -> viewFriends(userEmail);
-                case "4" -> removeFriend(scanner,userEmail);
-                case "5" -> viewFriendsNearMe(userEmail);
+                case "1" -> viewAllUsers(session);
+                case "2" -> addFriend(scanner,session);
+                case "3" -> viewFriends(session);
+                case "4" -> removeFriend(scanner,session);
+                case "5" -> viewFriendsNearMe(session);
                 default -> System.out.println("Invalid option. Please try again.");
             }
         }
     }
 
-    private void viewFriendsNearMe(String userEmail) {
+    private void viewFriendsNearMe(UserSession session) {
         System.out.println("-- Users from the city I was born in --");
-        List<User> friendsNear = starMatchController.getFriendsNearMe(userEmail);
+        List<User> friendsNear = starMatchController.getFriendsNearMe(session);
         friendsNear.forEach(friend -> System.out.println(friend.getName() + " is also born in " + friend.getBirthPlace()));
     }
 
     /**
      * A user views all users except for itself.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    private void viewAllUsers(String userEmail) {
+    private void viewAllUsers(UserSession session) {
         System.out.println("-- All Users --");
-        List<User> allUsers = starMatchController.getAllUsersExcept(userEmail);
+        List<User> allUsers = starMatchController.getAllUsersExcept(session);
         allUsers.forEach(user -> System.out.println(user.getName() + " (" + user.getEmail() + ")"));
     }
 
     /**
      * A user adds a friend to its friend list.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      * @param scanner The scanner instance to get user input.
      */
-    public void addFriend(Scanner scanner, String userEmail) {
-        viewAllUsers(userEmail);
+    public void addFriend(Scanner scanner, UserSession session) {
+        viewAllUsers(session);
         System.out.println("Enter the email of the user you want to add as friend:");
         String friendEmail = scanner.nextLine();
         try{
-            starMatchController.addFriend(userEmail,friendEmail);
+            starMatchController.addFriend(session,friendEmail);
             System.out.println("Friend added!");}
         catch (BusinessLogicException | EntityNotFoundException f){
             System.out.println(f.getMessage());
@@ -726,12 +817,12 @@ public class ConsoleApp {
 
     /**
      * A user views its friend list.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      */
-    public void viewFriends(String userEmail) {
+    public void viewFriends(UserSession session) {
         try {
             System.out.println("Your friends:");
-            List<User> friends = starMatchController.viewFriends(userEmail);
+            List<User> friends = starMatchController.viewFriends(session);
             if (friends.isEmpty()) {
                 throw new EntityNotFoundException("No friends found.");
             } else {
@@ -744,15 +835,15 @@ public class ConsoleApp {
 
     /**
      * A user removes another user from its friend list.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      * @param scanner The scanner instance to get user input.
      */
-    public void removeFriend(Scanner scanner, String userEmail) {
-        viewFriends(userEmail);
+    public void removeFriend(Scanner scanner, UserSession session) {
+        viewFriends(session);
         System.out.println("Enter the email of the user you want to remove as friend:");
         String friendEmail = scanner.nextLine();
         try{
-            starMatchController.removeFriend(userEmail,friendEmail);
+            starMatchController.removeFriend(session,friendEmail);
             System.out.println("Friend removed!");}
         catch (EntityNotFoundException e){
             System.out.println(e.getMessage());
@@ -761,16 +852,16 @@ public class ConsoleApp {
 
     /**
      * A user views its compatibility with a certain friend.
-     * @param userEmail The email of the currently logged-in user.
+     * @param session The session of the currently logged-in user.
      * @param scanner The scanner instance to get user input.
      */
-    private void viewCompatibility(Scanner scanner, String userEmail) {
-        viewFriends(userEmail);
+    private void viewCompatibility(Scanner scanner, UserSession session) {
+        viewFriends(session);
         System.out.println("Enter the email of the friend that you want to calculate your astrological compatibility with:");
         String friendEmail = scanner.nextLine();
         System.out.println("Your compatibility is:");
         try{
-            Compatibility compatibility = starMatchController.getCompatibility(userEmail,friendEmail);
+            Compatibility compatibility = starMatchController.getCompatibility(session,friendEmail);
             System.out.println(compatibility.getCompatibilityScore() + "% compatible");}
         catch (EntityNotFoundException e){
             System.out.println(e.getMessage());
@@ -0,0 +1,376 @@
+package org.starmatch.src;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.starmatch.src.exceptions.*;
+import org.starmatch.src.model.*;
+import org.starmatch.src.repository.ReplicaRouter;
+import org.starmatch.src.utils.Json;
+import org.starmatch.src.utils.JsonWriter;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Serves the user features of {@link StarMatchController} as a JSON API over HTTP, on the server built into the JDK.
+ * <p>
+ * Every request runs on its own virtual thread, so a request blocked on the repositories costs no platform thread.
+ * The repositories do not scale with the threads, though. A database repository runs all its statements on one
+ * JDBC connection: a request running a transaction or streaming through a cursor holds that connection until it
+ * ends, and the statements of the other requests wait for it rather than run inside its transaction. A plain file
+ * repository rewrites its file without locking, so the file storage only suits one client at a time unless
+ * write-behind is on. Responses are encoded with {@link JsonWriter} straight into the chunked response body.
+ * </p>
+ * <p>
+ * {@code POST /login} with {@code {"email": ..., "password": ...}} starts a {@link UserSession} and returns its token,
+ * which the other requests send as {@code Authorization: Bearer <token>}:
+ * </p>
+ * <ul>
+ *     <li>{@code POST /logout}</li>
+ *     <li>{@code GET /profile}, {@code GET /natal-chart}, {@code GET /traits}, {@code GET /quote}</li>
+ *     <li>{@code GET /users}, {@code GET /friends}, {@code GET /friends-near-me}</li>
+ *     <li>{@code POST /friends} with {@code {"email": ...}} and {@code DELETE /friends?email=...}, both returning the
+ *     updated friend list</li>
+ *     <li>{@code GET /compatibility?email=...}</li>
+ *     <li>{@code GET /popular-elements}, which needs no session</li>
+ * </ul>
+ * <p>
+ * Errors are returned as {@code {"error": ...}} with status 400 for invalid input, 401 without a valid session,
+ * 404 for unknown entities or routes, 409 for rejected operations and 500 otherwise. A session expires when it has
+ * not been used for {@link #DEFAULT_SESSION_IDLE_TIMEOUT}, or the timeout given to the server.
+ * </p>
+ */
+public class HttpApp implements AutoCloseable {
+    /**
+     * How long a session lasts without requests, by default.
+     */
+    public static final Duration DEFAULT_SESSION_IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    private static final int BACKLOG = 1024;
+    private static final String BEARER = "Bearer ";
+
+    private final StarMatchService starMatchService;
+    private final StarMatchController starMatchController;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long idleTimeoutNanos;
+    private volatile long lastSweepNanos = System.nanoTime();
+
+    /**
+     * Creates the server, without starting it, with sessions expiring after {@link #DEFAULT_SESSION_IDLE_TIMEOUT}.
+     * @param starMatchService the service serving the requests
+     * @param port the port to listen on, or 0 for any free port
+     * @throws UncheckedIOException if the port cannot be bound
+     */
+    public HttpApp(StarMatchService starMatchService, int port) {
+        this(starMatchService, port, DEFAULT_SESSION_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Creates the server, without starting it.
+     * @param starMatchService the service serving the requests
+     * @param port the port to listen on, or 0 for any free port
+     * @param sessionIdleTimeout how long a session lasts without requests
+     * @throws UncheckedIOException if the port cannot be bound
+     */
+    public HttpApp(StarMatchService starMatchService, int port, Duration sessionIdleTimeout) {
+        this.starMatchService = starMatchService;
+        this.starMatchController = new StarMatchController(starMatchService);
+        this.idleTimeoutNanos = sessionIdleTimeout.toNanos();
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not listen on port " + port, e);
+        }
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+        System.out.println("StarMatch API listening on port " + getPort());
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return the bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server, letting the requests in progress finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (ValidationException | IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (EntityNotFoundException e) {
+                sendError(exchange, 404, e.getMessage());
+            } catch (BusinessLogicException e) {
+                sendError(exchange, 409, e.getMessage());
+            } catch (UnauthorizedException e) {
+                sendError(exchange, 401, e.getMessage());
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, e.getMessage());
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // The client went away, there is nobody left to answer.
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.equals("/login") && method.equals("POST")) {
+            login(exchange);
+            return;
+        }
+        if (path.equals("/popular-elements") && method.equals("GET")) {
+            Map<Element, Long> elements = starMatchController.mostPopularElement();
+            send(exchange, json -> {
+                json.beginObject();
+                elements.forEach((element, count) -> json.name(element.name()).value(count));
+                json.endObject();
+            });
+            return;
+        }
+
+        String token = token(exchange);
+        Session session = token == null ? null : activeSession(token);
+        if (session == null) {
+            throw new UnauthorizedException("Log in first");
+        }
+        // A session caches its chart and friends, so the requests of one user are served one at a time. The lock is
+        // not a synchronized block, which would pin the carrier thread while the request waits on the repositories.
+        session.lock.lock();
+        try {
+            // Reads after a write of the user go to the primary database, whichever thread serves them
+            ReplicaRouter.callInSession(session.userSession, () -> {
+                serve(exchange, method, path, token, session.userSession);
+                return null;
+            });
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the session of a token and marks it as used, unless it has been idle for too long.
+     */
+    private Session activeSession(String token) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - session.lastUsedNanos > idleTimeoutNanos) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastUsedNanos = now;
+        return session;
+    }
+
+    /**
+     * Drops the idle sessions whose clients never came back, at most once per idle timeout.
+     */
+    private void removeIdleSessions() {
+        long now = System.nanoTime();
+        if (now - lastSweepNanos < idleTimeoutNanos) {
+            return;
+        }
+        lastSweepNanos = now;
+        sessions.values().removeIf(session -> now - session.lastUsedNanos > idleTimeoutNanos);
+    }
+
+    private void serve(HttpExchange exchange, String method, String path, String token, UserSession session) throws IOException {
+        switch (method + " " + path) {
+            case "POST /logout" -> {
+                sessions.remove(token);
+                exchange.sendResponseHeaders(204, -1);
+            }
+            case "GET /profile" -> sendUser(exchange, starMatchController.viewUserProfile(session));
+            case "GET /natal-chart" -> {
+                NatalChart chart = starMatchController.viewNatalChart(session);
+                send(exchange, json -> {
+                    json.beginArray();
+                    chart.getPlanets().forEach(planet -> json.beginObject()
+                            .name("planet").value(planet.getPlanetName())
+                            .name("sign").value(planet.getSign().getStarName())
+                            .endObject());
+                    json.endArray();
+                });
+            }
+            case "GET /traits" -> {
+                List<String> traits = starMatchController.viewPersonalityTraits(session);
+                send(exchange, json -> {
+                    json.beginArray();
+                    traits.forEach(json::value);
+                    json.endArray();
+                });
+            }
+            case "GET /quote" -> {
+                String quote = starMatchController.getPersonalizedQuote(session);
+                send(exchange, json -> json.beginObject().name("quote").value(quote).endObject());
+            }
+            case "GET /users" -> sendUsers(exchange, starMatchController.getAllUsersExcept(session));
+            case "GET /friends" -> sendUsers(exchange, starMatchController.viewFriends(session));
+            // The controller only prints the errors of the friend changes, so they go to the service to return them
+            case "POST /friends" -> {
+                session.refresh(starMatchService.addFriend(session.getUser(), requiredString(readBody(exchange), "email")));
+                sendUsers(exchange, starMatchController.viewFriends(session));
+            }
+            case "DELETE /friends" -> {
+                session.refresh(starMatchService.removeFriend(session.getUser(), requiredQuery(exchange, "email")));
+                sendUsers(exchange, starMatchController.viewFriends(session));
+            }
+            case "GET /compatibility" -> {
+                String email = requiredQuery(exchange, "email");
+                Compatibility compatibility = starMatchController.getCompatibility(session, email);
+                send(exchange, json -> json.beginObject()
+                        .name("email").value(email)
+                        .name("score").value(compatibility.getCompatibilityScore())
+                        .endObject());
+            }
+            case "GET /friends-near-me" -> sendUsers(exchange, starMatchController.getFriendsNearMe(session));
+            default -> throw new EntityNotFoundException("No route for " + method + " " + path);
+        }
+    }
+
+    private void login(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        UserSession session = starMatchController.logInUser(requiredString(body, "email"), requiredString(body, "password"));
+        if (session == null) {
+            throw new UnauthorizedException("Invalid credentials");
+        }
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        removeIdleSessions();
+        sessions.put(token, new Session(session));
+        User user = session.getUser();
+        send(exchange, json -> {
+            json.beginObject().name("token").value(token).name("user");
+            writeUser(json, user);
+            json.endObject();
+        });
+    }
+
+    private static String token(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return authorization != null && authorization.startsWith(BEARER) ? authorization.substring(BEARER.length()) : null;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        return Json.parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static String requiredString(Map<String, Object> body, String name) {
+        if (!(body.get(name) instanceof String value)) {
+            throw new ValidationException("Missing " + name);
+        }
+        return value;
+    }
+
+    private static String requiredQuery(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0 && URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8).equals(name)) {
+                    return URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        throw new ValidationException("Missing query parameter " + name);
+    }
+
+    private static void sendUser(HttpExchange exchange, User user) throws IOException {
+        send(exchange, json -> writeUser(json, user));
+    }
+
+    private static void sendUsers(HttpExchange exchange, List<User> users) throws IOException {
+        send(exchange, json -> {
+            json.beginArray();
+            users.forEach(user -> writeUser(json, user));
+            json.endArray();
+        });
+    }
+
+    private static void writeUser(JsonWriter json, User user) {
+        json.beginObject()
+                .name("id").value(user.getId())
+                .name("name").value(user.getName())
+                .name("email").value(user.getEmail())
+                .name("birthDate").valueOf(user.getBirthDate())
+                .name("birthTime").valueOf(user.getBirthTime())
+                .name("birthPlace").value(user.getBirthPlace())
+                .endObject();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, json -> json.beginObject().name("error").value(message).endObject());
+    }
+
+    private static void send(HttpExchange exchange, Consumer<JsonWriter> body) throws IOException {
+        send(exchange, 200, body);
+    }
+
+    private static void send(HttpExchange exchange, int status, Consumer<JsonWriter> body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        body.accept(new JsonWriter(writer));
+        writer.flush();
+    }
+
+    /**
+     * A logged-in session, with the lock serving its requests one at a time and the time of its last request.
+     */
+    private static final class Session {
+        private final UserSession userSession;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        Session(UserSession userSession) {
+            this.userSession = userSession;
+        }
+    }
+
+    /**
+     * Thrown when a request needs a session it does not have.
+     */
+    private static class UnauthorizedException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        UnauthorizedException(String message) {
+            super(message);
+        }
+    }
+}
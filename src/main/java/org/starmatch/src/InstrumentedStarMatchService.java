@@ -0,0 +1,240 @@
+package org.starmatch.src;
+
+import org.starmatch.src.analytics.UserStatistics;
+import org.starmatch.src.metrics.InstrumentedRepository;
+import org.starmatch.src.metrics.MetricsRegistry;
+import org.starmatch.src.metrics.OperationMetrics;
+import org.starmatch.src.model.*;
+import org.starmatch.src.repository.Repository;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link StarMatchService} recording the calls, errors and latencies of its operations in a {@link MetricsRegistry},
+ * along with those of its repositories, which it decorates with {@link InstrumentedRepository}.
+ * <p>
+ * The operations record under the {@code service} layer and the given backend, such as the storage type, so the
+ * metrics of several deployments can be told apart. An operation calling another one, like
+ * {@link #calculateCompatibility(User, NatalChart, String)} computing the friend's natal chart, is recorded under
+ * both. The overloads taking a user only compute its natal chart and call the overload taking the chart, so they
+ * are recorded as those two calls. The plain list helpers, such as sorting and filtering, are not recorded.
+ * </p>
+ */
+public class InstrumentedStarMatchService extends StarMatchService {
+    private final MetricsRegistry metrics;
+    private final String backend;
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an instrumented service.
+     * @param metrics the registry to record into
+     * @param backend the name of the storage of the repositories, such as {@code memory} or {@code database}
+     */
+    public InstrumentedStarMatchService(Repository<User> userRepository, Repository<Admin> adminRepository, Repository<StarSign> signRepository,
+                                        Repository<Quote> quoteRepository, Repository<Trait> traitRepository, MetricsRegistry metrics, String backend) {
+        super(InstrumentedRepository.instrument(userRepository, metrics, "User"),
+                InstrumentedRepository.instrument(adminRepository, metrics, "Admin"),
+                InstrumentedRepository.instrument(signRepository, metrics, "StarSign"),
+                InstrumentedRepository.instrument(quoteRepository, metrics, "Quote"),
+                InstrumentedRepository.instrument(traitRepository, metrics, "Trait"));
+        this.metrics = metrics;
+        this.backend = backend;
+    }
+
+    /**
+     * Gets the registry the service and its repositories record into.
+     * @return the metrics registry
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    private OperationMetrics operation(String method) {
+        return operations.computeIfAbsent(method, name -> metrics.operation("service", "StarMatchService", backend, name));
+    }
+
+    @Override
+    public boolean validateUserLogin(String email, String password) {
+        return operation("validateUserLogin").call(() -> super.validateUserLogin(email, password));
+    }
+
+    @Override
+    public User logInUser(String email, String password) {
+        return operation("logInUser").call(() -> super.logInUser(email, password));
+    }
+
+    @Override
+    public boolean validateAdminLogin(String email, String password) {
+        return operation("validateAdminLogin").call(() -> super.validateAdminLogin(email, password));
+    }
+
+    @Override
+    public void createUser(String name, LocalDate birthDate, LocalTime birthTime, String birthPlace, String email, String password) {
+        operation("createUser").run(() -> super.createUser(name, birthDate, birthTime, birthPlace, email, password));
+    }
+
+    @Override
+    public int importUsers(Path csvFile) {
+        return operation("importUsers").call(() -> super.importUsers(csvFile));
+    }
+
+    @Override
+    public long exportSnapshot(Path snapshotFile) {
+        return operation("exportSnapshot").call(() -> super.exportSnapshot(snapshotFile));
+    }
+
+    @Override
+    public long restoreSnapshot(Path snapshotFile) {
+        return operation("restoreSnapshot").call(() -> super.restoreSnapshot(snapshotFile));
+    }
+
+    @Override
+    public void removeUser(Integer userId) {
+        operation("removeUser").run(() -> super.removeUser(userId));
+    }
+
+    @Override
+    public void createAdmin(String name, String email, String password) {
+        operation("createAdmin").run(() -> super.createAdmin(name, email, password));
+    }
+
+    @Override
+    public void removeAdmin(Integer adminId) {
+        operation("removeAdmin").run(() -> super.removeAdmin(adminId));
+    }
+
+    @Override
+    public void updateAdmin(Integer adminId, String name, String email, String password) {
+        operation("updateAdmin").run(() -> super.updateAdmin(adminId, name, email, password));
+    }
+
+    @Override
+    public void createQuote(String newQuoteText, String element) {
+        operation("createQuote").run(() -> super.createQuote(newQuoteText, element));
+    }
+
+    @Override
+    public void removeQuote(Integer quoteId) {
+        operation("removeQuote").run(() -> super.removeQuote(quoteId));
+    }
+
+    @Override
+    public void updateQuote(Integer quoteId, String newQuoteText) {
+        operation("updateQuote").run(() -> super.updateQuote(quoteId, newQuoteText));
+    }
+
+    @Override
+    public void createTrait(String traitName, Element element) {
+        operation("createTrait").run(() -> super.createTrait(traitName, element));
+    }
+
+    @Override
+    public void removeTrait(Integer traitId) {
+        operation("removeTrait").run(() -> super.removeTrait(traitId));
+    }
+
+    @Override
+    public void updateTrait(Integer traitID, String traitName, Element element) {
+        operation("updateTrait").run(() -> super.updateTrait(traitID, traitName, element));
+    }
+
+    @Override
+    public List<Admin> getAdmins() {
+        return operation("getAdmins").call(super::getAdmins);
+    }
+
+    @Override
+    public List<User> getUsers() {
+        return operation("getUsers").call(super::getUsers);
+    }
+
+    @Override
+    public List<Quote> getQuotes() {
+        return operation("getQuotes").call(super::getQuotes);
+    }
+
+    @Override
+    public List<Trait> getTraits() {
+        return operation("getTraits").call(super::getTraits);
+    }
+
+    @Override
+    public User getUserByEmail(String email) {
+        return operation("getUserByEmail").call(() -> super.getUserByEmail(email));
+    }
+
+    @Override
+    public NatalChart getNatalChart(User user) {
+        return operation("getNatalChart").call(() -> super.getNatalChart(user));
+    }
+
+    @Override
+    public List<String> getPersonalityTraits(NatalChart chart) {
+        return operation("getPersonalityTraits").call(() -> super.getPersonalityTraits(chart));
+    }
+
+    @Override
+    public String getPersonalizedQuote(NatalChart chart) {
+        return operation("getPersonalizedQuote").call(() -> super.getPersonalizedQuote(chart));
+    }
+
+    @Override
+    public User updateUser(User user, String name, String email, String password, LocalDate birthDate, LocalTime birthTime, String birthPlace) {
+        return operation("updateUser").call(() -> super.updateUser(user, name, email, password, birthDate, birthTime, birthPlace));
+    }
+
+    @Override
+    public List<User> getAllUsersExcept(User currentUser) {
+        return operation("getAllUsersExcept").call(() -> super.getAllUsersExcept(currentUser));
+    }
+
+    @Override
+    public User addFriend(User user, String friendEmail) {
+        return operation("addFriend").call(() -> super.addFriend(user, friendEmail));
+    }
+
+    @Override
+    public List<User> getFriends(User user) {
+        return operation("getFriends").call(() -> super.getFriends(user));
+    }
+
+    @Override
+    public List<User> getUsersByIds(List<Integer> ids) {
+        return operation("getUsersByIds").call(() -> super.getUsersByIds(ids));
+    }
+
+    @Override
+    public User removeFriend(User user, String friendEmail) {
+        return operation("removeFriend").call(() -> super.removeFriend(user, friendEmail));
+    }
+
+    @Override
+    public Compatibility calculateCompatibility(User user, NatalChart chartUser, String friendEmail) {
+        return operation("calculateCompatibility").call(() -> super.calculateCompatibility(user, chartUser, friendEmail));
+    }
+
+    @Override
+    public Compatibility calculateCompatibility(User user, NatalChart chartUser, User friend, NatalChart chartFriend) {
+        return operation("calculateCompatibility").call(() -> super.calculateCompatibility(user, chartUser, friend, chartFriend));
+    }
+
+    @Override
+    public Map<Element, Long> mostPopularElements(List<User> users) {
+        return operation("mostPopularElements").call(() -> super.mostPopularElements(users));
+    }
+
+    @Override
+    public UserStatistics getUserStatistics() {
+        return operation("getUserStatistics").call(super::getUserStatistics);
+    }
+
+    @Override
+    public List<User> getFriendsNearMe(User user) {
+        return operation("getFriendsNearMe").call(() -> super.getFriendsNearMe(user));
+    }
+}
@@ -0,0 +1,343 @@
+package org.starmatch.src;
+
+import org.starmatch.src.metrics.LatencyHistogram;
+import org.starmatch.src.model.User;
+import org.starmatch.src.repository.CompactUserRepository;
+import org.starmatch.src.repository.InFileRepository;
+import org.starmatch.src.repository.InMemoryRepository;
+import org.starmatch.src.repository.Repository;
+import org.starmatch.src.repository.WriteBehindFileRepository;
+import org.starmatch.src.utils.SyntheticDataGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static org.starmatch.src.utils.InMemoryData.*;
+
+/**
+ * Load test simulating many concurrent users of {@link StarMatchController}, each on its own virtual thread. The
+ * friend changes go to the service, since the controller only prints their errors, and a failed change counts as
+ * an error of the operation.
+ * <p>
+ * Virtual user {@code i} logs in as the generated user with ID {@code i + 1} of a {@link SyntheticDataGenerator}
+ * data set, then runs operations picked at random with the weights of the operation mix until the test ends.
+ * The latencies are recorded per operation, and the report gives the throughput and the p50, p99 and p99.9
+ * latencies of each operation.
+ * </p>
+ * <p>
+ * From the command line:
+ * {@code LoadTestApp [--users 100] [--duration 30] [--mix login=1,chart=3,quote=3,add-friend=1,remove-friend=1,compatibility=2]
+ * [--storage memory|compact|file|database] [--dataset 10000] [--seed 42]}. The memory, compact and file storages are filled with
+ * the generated users; the database must already hold the same data set, written with
+ * {@code SyntheticDataGenerator database} and the same seed and size.
+ * </p>
+ */
+public class LoadTestApp {
+    /**
+     * The operations of a virtual user, with their names in the operation mix.
+     */
+    public enum Operation {
+        LOGIN("login"),
+        NATAL_CHART("chart"),
+        QUOTE("quote"),
+        ADD_FRIEND("add-friend"),
+        REMOVE_FRIEND("remove-friend"),
+        COMPATIBILITY("compatibility");
+
+        private final String mixName;
+
+        Operation(String mixName) {
+            this.mixName = mixName;
+        }
+
+        /**
+         * Finds an operation by its name in the operation mix.
+         * @throws IllegalArgumentException if no operation has the name
+         */
+        public static Operation fromMixName(String mixName) {
+            return Arrays.stream(values()).filter(operation -> operation.mixName.equals(mixName)).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown operation " + mixName));
+        }
+    }
+
+    public static final String DEFAULT_MIX = "login=1,chart=3,quote=3,add-friend=1,remove-friend=1,compatibility=2";
+
+    private final StarMatchService starMatchService;
+    private final StarMatchController starMatchController;
+    private final SyntheticDataGenerator generator;
+    private final Operation[] weightedOperations;
+
+    /**
+     * Creates a load test.
+     * @param starMatchService the service under test, over a repository holding the generator's users
+     * @param generator the generator of the data set, giving the credentials and emails of the users
+     * @param mix the weight of each operation; operations left out are not run
+     */
+    public LoadTestApp(StarMatchService starMatchService, SyntheticDataGenerator generator, Map<Operation, Integer> mix) {
+        this.starMatchService = starMatchService;
+        this.starMatchController = new StarMatchController(starMatchService);
+        this.generator = generator;
+        List<Operation> operations = new ArrayList<>();
+        mix.forEach((operation, weight) -> operations.addAll(Collections.nCopies(weight, operation)));
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty");
+        }
+        this.weightedOperations = operations.toArray(Operation[]::new);
+    }
+
+    /**
+     * Parses an operation mix such as {@code login=1,chart=3}.
+     * @throws IllegalArgumentException if an operation or weight is invalid
+     */
+    public static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.strip().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid operation weight " + entry);
+            }
+            weights.put(Operation.fromMixName(parts[0].strip()), Integer.parseInt(parts[1].strip()));
+        }
+        return weights;
+    }
+
+    /**
+     * Runs the load test.
+     * @param virtualUsers the number of concurrent users, at most the size of the data set
+     * @param duration how long the users keep running operations after logging in
+     * @return the latencies and errors of every operation
+     */
+    public Report run(int virtualUsers, Duration duration) {
+        if (virtualUsers > generator.getUserCount() || generator.getUserCount() < 2) {
+            throw new IllegalArgumentException("The data set needs at least two users and one per virtual user");
+        }
+        Report report = new Report();
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < virtualUsers; i++) {
+                int userId = i + 1;
+                executor.submit(() -> runVirtualUser(userId, deadline, report));
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private void runVirtualUser(int userId, long deadline, Report report) {
+        SplittableRandom random = new SplittableRandom(userId);
+        User generated = generator.user(userId);
+        UserSession session = timed(report, Operation.LOGIN,
+                () -> starMatchController.logInUser(generated.getEmail(), generated.getPassword()));
+        if (session == null) {
+            return;
+        }
+        while (System.nanoTime() < deadline) {
+            // The operations on memory storage never block, so without a yield a user woken up by the friend lock
+            // would wait for a carrier thread until the other users are done
+            Thread.yield();
+            Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+            UserSession current = session;
+            switch (operation) {
+                case LOGIN -> {
+                    UserSession next = timed(report, operation,
+                            () -> starMatchController.logInUser(generated.getEmail(), generated.getPassword()));
+                    if (next != null) {
+                        session = next;
+                    }
+                }
+                case NATAL_CHART -> timed(report, operation, () -> starMatchController.viewNatalChart(current));
+                case QUOTE -> timed(report, operation, () -> starMatchController.getPersonalizedQuote(current));
+                case ADD_FRIEND -> {
+                    int friendId = 1 + random.nextInt(generator.getUserCount() - 1);
+                    String email = generator.email(friendId >= userId ? friendId + 1 : friendId);
+                    timed(report, operation, () -> {
+                        current.refresh(starMatchService.addFriend(current.getUser(), email));
+                        return null;
+                    });
+                }
+                case REMOVE_FRIEND -> {
+                    String email = randomFriend(current, random);
+                    if (email != null) {
+                        timed(report, operation, () -> {
+                            current.refresh(starMatchService.removeFriend(current.getUser(), email));
+                            return null;
+                        });
+                    }
+                }
+                case COMPATIBILITY -> {
+                    String email = randomFriend(current, random);
+                    if (email != null) {
+                        timed(report, operation, () -> starMatchController.getCompatibility(current, email));
+                    }
+                }
+            }
+        }
+    }
+
+    private static String randomFriend(UserSession session, SplittableRandom random) {
+        List<String> friends = session.getUser().getRawFriendEmails();
+        return friends.isEmpty() ? null : friends.get(random.nextInt(friends.size()));
+    }
+
+    private static <T> T timed(Report report, Operation operation, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            T result = action.get();
+            report.histograms.get(operation).record(System.nanoTime() - start);
+            if (operation == Operation.LOGIN && result == null) {
+                report.errors.get(operation).increment();
+            }
+            return result;
+        } catch (RuntimeException e) {
+            report.histograms.get(operation).record(System.nanoTime() - start);
+            report.errors.get(operation).increment();
+            return null;
+        }
+    }
+
+    /**
+     * Latencies and errors of every operation of a load test.
+     */
+    public static final class Report {
+        private final Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+        private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+        private long elapsedNanos;
+
+        private Report() {
+            for (Operation operation : Operation.values()) {
+                histograms.put(operation, new LatencyHistogram());
+                errors.put(operation, new LongAdder());
+            }
+        }
+
+        /**
+         * Gets the latencies of an operation, including the failed runs.
+         * @return the histogram of the operation
+         */
+        public LatencyHistogram getLatencies(Operation operation) {
+            return histograms.get(operation);
+        }
+
+        /**
+         * Gets the number of failed runs of an operation.
+         * @return the number of errors
+         */
+        public long getErrors(Operation operation) {
+            return errors.get(operation).sum();
+        }
+
+        /**
+         * Gets the number of operations run by all users.
+         * @return the number of operations
+         */
+        public long getOperationCount() {
+            return histograms.values().stream().mapToLong(LatencyHistogram::getCount).sum();
+        }
+
+        /**
+         * Gets the wall-clock time of the test.
+         * @return the elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Formats the report as a table with one row per operation, latencies in milliseconds.
+         * @return the report
+         */
+        public String format() {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder report = new StringBuilder("-- Load Test Report --\n");
+            report.append(String.format("%-15s %10s %8s %10s %9s %9s %9s %9s%n",
+                    "operation", "count", "errors", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+            histograms.forEach((operation, histogram) -> {
+                if (histogram.getCount() > 0) {
+                    report.append(String.format("%-15s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f%n",
+                            operation.mixName, histogram.getCount(), getErrors(operation), histogram.getCount() / seconds,
+                            histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                            histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMax() / 1e6));
+                }
+            });
+            report.append(String.format("%d operations in %.1f s (%.1f ops/s)%n",
+                    getOperationCount(), seconds, getOperationCount() / seconds));
+            return report.toString();
+        }
+    }
+
+    /**
+     * Runs a load test from the command line, see the class documentation for the options.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "--users", "100", "--duration", "30", "--mix", DEFAULT_MIX,
+                "--storage", "memory", "--dataset", "10000", "--seed", "42"));
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!options.containsKey(args[i])) {
+                System.out.println("Unknown option " + args[i]);
+                return;
+            }
+            options.put(args[i], args[i + 1]);
+        }
+
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(
+                Long.parseLong(options.get("--seed")), Integer.parseInt(options.get("--dataset")));
+        Path directory = null;
+        StarMatchService service;
+        WriteBehindFileRepository<User> fileRepository = null;
+        switch (options.get("--storage")) {
+            case "memory" -> {
+                Repository<User> userRepository = new InMemoryRepository<>();
+                generator.writeTo(userRepository);
+                service = serviceWithUsers(userRepository);
+            }
+            case "compact" -> {
+                Repository<User> userRepository = new CompactUserRepository();
+                generator.writeTo(userRepository);
+                service = serviceWithUsers(userRepository);
+            }
+            case "file" -> {
+                directory = Files.createTempDirectory("starmatch-load");
+                Path users = directory.resolve("users.txt");
+                generator.writeCsv(users);
+                fileRepository = new WriteBehindFileRepository<>(new InFileRepository<>(users.toString(), User.class));
+                service = serviceWithUsers(fileRepository);
+            }
+            case "database" -> service = Main.setupServiceByName("database");
+            default -> {
+                System.out.println("Unknown storage " + options.get("--storage"));
+                return;
+            }
+        }
+
+        LoadTestApp loadTest = new LoadTestApp(service, generator, parseMix(options.get("--mix")));
+        Report report = loadTest.run(Integer.parseInt(options.get("--users")),
+                Duration.ofSeconds(Long.parseLong(options.get("--duration"))));
+        System.out.print(report.format());
+
+        if (fileRepository != null) {
+            fileRepository.close();
+        }
+        if (directory != null) {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static StarMatchService serviceWithUsers(Repository<User> userRepository) {
+        return new StarMatchService(userRepository, createInMemoryAdminRepository(), createInMemoryStarSignRepository(),
+                createInMemoryQuoteRepository(), createInMemoryTraitRepository());
+    }
+}
@@ -1,22 +1,53 @@
 package org.starmatch.src;
 
+import org.starmatch.src.metrics.FlightRecording;
+import org.starmatch.src.metrics.MetricsRegistry;
 import org.starmatch.src.model.*;
 import org.starmatch.src.repository.*;
 import org.starmatch.src.repository.DBRepo.*;
 import org.starmatch.src.repository.Repository;
+import org.starmatch.src.utils.CsvToBinaryConverter;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.stream.IntStream;
 import static org.starmatch.src.utils.InMemoryData.*;
 
 public class Main {
     /**
      * Main function which serves as the starting point of the application.
+     * With {@code --batch <script> [memory|compact|database]} it runs the script with {@link BatchApp} instead of the menus,
+     * and with {@code --http <port> [memory|compact|database]} it serves the API of {@link HttpApp}.
+     * A leading {@code --jfr <file>} records the run with the flight recorder into the file, see {@link FlightRecording}.
      */
     public static void main(String[] args) {
+        if (args.length >= 2 && args[0].equals("--jfr")) {
+            FlightRecording.start(Path.of(args[1]));
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            StarMatchService batchService = setupServiceByName(args.length > 2 ? args[2] : "memory");
+            new BatchApp(batchService).run(Path.of(args[1]));
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--http")) {
+            StarMatchService httpService = setupServiceByName(args.length > 2 ? args[2] : "memory");
+            HttpApp httpApp = new HttpApp(httpService, Integer.parseInt(args[1]));
+            Runtime.getRuntime().addShutdownHook(new Thread(httpApp::close));
+            httpApp.start();
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         System.out.println("Select the storage type:");
         System.out.println("1: In-Memory Storage");
         System.out.println("2: File-based Storage");
         System.out.println("3: Database Storage");
+        System.out.println("4: Binary File-based Storage");
+        System.out.println("5: Sharded Database Storage");
         System.out.print("Your choice: ");
         int choice = scanner.nextInt();
         scanner.nextLine();
@@ -37,6 +68,19 @@ public class Main {
                 System.out.println("Using Database Storage...");
                 starMatchService = setupDatabaseService();
             }
+            case 4 -> {
+                System.out.println("Using Binary File-based Storage...");
+                System.out.print("Enter user (Cristina/Ioana): ");
+                String user = scanner.nextLine();
+                starMatchService = setupBinaryFileBasedService(user);
+            }
+            case 5 -> {
+                System.out.println("Using Sharded Database Storage...");
+                System.out.print("Enter number of user shards: ");
+                int shardCount = scanner.nextInt();
+                scanner.nextLine();
+                starMatchService = setupShardedDatabaseService(shardCount);
+            }
             default -> {
                 System.out.println("Invalid choice. Exiting.");
                 return;
@@ -48,6 +92,20 @@ public class Main {
         consoleApp.start();
     }
 
+    /**
+     * Sets up the service of a non-interactive front end.
+     * @param storage "database" for the database storage, "compact" for the in-memory one with the users stored in
+     *                {@link CompactUserRepository}, anything else for the in-memory one
+     * @return new StarMatchService
+     */
+    static StarMatchService setupServiceByName(String storage) {
+        return switch (storage) {
+            case "database" -> setupDatabaseService();
+            case "compact" -> setupCompactInMemoryService();
+            default -> setupInMemoryService();
+        };
+    }
+
     /**
      * Function to set up the In Memory Service
      * @return new StarMatchService
@@ -58,7 +116,21 @@ public class Main {
         Repository<StarSign> signRepository = createInMemoryStarSignRepository();
         Repository<Quote> quoteRepository = createInMemoryQuoteRepository();
         Repository<Trait> traitRepository = createInMemoryTraitRepository();
-        return new StarMatchService(userRepository, adminRepository, signRepository, quoteRepository, traitRepository);
+        return new InstrumentedStarMatchService(userRepository, adminRepository, signRepository, quoteRepository, traitRepository, new MetricsRegistry(), "memory");
+    }
+
+    /**
+     * Function to set up the In Memory Service with the users stored compactly, for large numbers of users
+     * @return new StarMatchService
+     */
+    private static StarMatchService setupCompactInMemoryService() {
+        CompactUserRepository userRepository = new CompactUserRepository();
+        userRepository.createAll(createInMemoryUserRepository().getAll());
+        Repository<Admin> adminRepository = createInMemoryAdminRepository();
+        Repository<StarSign> signRepository = createInMemoryStarSignRepository();
+        Repository<Quote> quoteRepository = createInMemoryQuoteRepository();
+        Repository<Trait> traitRepository = createInMemoryTraitRepository();
+        return new InstrumentedStarMatchService(userRepository, adminRepository, signRepository, quoteRepository, traitRepository, new MetricsRegistry(), "compact-memory");
     }
 
     /**
@@ -66,17 +138,54 @@ public class Main {
      * @return new StarMatchServie
      */
     private static StarMatchService setupFileBasedService(String user) {
-        String basePath = "C:\\Users\\" + user + "\\IdeaProjects\\StarMatchDBPostgres\\src\\main\\java\\org\\starmatch\\src\\files\\";
-        Repository<User> userFileRepo = new InFileRepository<>(basePath + "users.txt", User.class);
-        Repository<Admin> adminFileRepo = new InFileRepository<>(basePath + "admins.txt", Admin.class);
-        Repository<StarSign> starSignFileRepo = new InFileRepository<>(basePath + "starsigns.txt", StarSign.class);
-        Repository<Quote> quoteFileRepo = new InFileRepository<>(basePath + "quotes.txt", Quote.class);
-        Repository<Trait> traitFileRepo = new InFileRepository<>(basePath + "traits.txt", Trait.class);
-        return new StarMatchService(userFileRepo, adminFileRepo, starSignFileRepo, quoteFileRepo, traitFileRepo);
+        String basePath = filesPath(user);
+        Repository<User> userFileRepo = writeBehind(new InFileRepository<>(basePath + "users.txt", User.class));
+        Repository<Admin> adminFileRepo = writeBehind(new InFileRepository<>(basePath + "admins.txt", Admin.class));
+        Repository<StarSign> starSignFileRepo = writeBehind(new InFileRepository<>(basePath + "starsigns.txt", StarSign.class));
+        Repository<Quote> quoteFileRepo = writeBehind(new InFileRepository<>(basePath + "quotes.txt", Quote.class));
+        Repository<Trait> traitFileRepo = writeBehind(new InFileRepository<>(basePath + "traits.txt", Trait.class));
+        return new InstrumentedStarMatchService(userFileRepo, adminFileRepo, starSignFileRepo, quoteFileRepo, traitFileRepo, new MetricsRegistry(), "file");
     }
 
     /**
-     * Function to set up the Database Service
+     * Function to set up the Binary FileBased Service.
+     * The binary files are converted from the CSV files the first time.
+     * @return new StarMatchService
+     */
+    private static StarMatchService setupBinaryFileBasedService(String user) {
+        String basePath = filesPath(user);
+        if (!new File(basePath + "users.bin").exists()) {
+            CsvToBinaryConverter.convertDirectory(basePath);
+        }
+        Repository<User> userFileRepo = writeBehind(new BinaryFileRepository<>(basePath + "users.bin", User.class));
+        Repository<Admin> adminFileRepo = writeBehind(new BinaryFileRepository<>(basePath + "admins.bin", Admin.class));
+        Repository<StarSign> starSignFileRepo = writeBehind(new BinaryFileRepository<>(basePath + "starsigns.bin", StarSign.class));
+        Repository<Quote> quoteFileRepo = writeBehind(new BinaryFileRepository<>(basePath + "quotes.bin", Quote.class));
+        Repository<Trait> traitFileRepo = writeBehind(new BinaryFileRepository<>(basePath + "traits.bin", Trait.class));
+        return new InstrumentedStarMatchService(userFileRepo, adminFileRepo, starSignFileRepo, quoteFileRepo, traitFileRepo, new MetricsRegistry(), "binary-file");
+    }
+
+    /**
+     * Puts a write-behind cache in front of a file repository, flushing it when the application exits, if the
+     * STARMATCH_WRITE_BEHIND environment variable is "true". Otherwise every mutation is written to the file
+     * before it returns.
+     */
+    private static <T extends HasId> Repository<T> writeBehind(InFileRepository<T> file) {
+        if (!Boolean.parseBoolean(System.getenv("STARMATCH_WRITE_BEHIND"))) {
+            return file;
+        }
+        WriteBehindFileRepository<T> repository = new WriteBehindFileRepository<>(file);
+        Runtime.getRuntime().addShutdownHook(new Thread(repository::close));
+        return repository;
+    }
+
+    private static String filesPath(String user) {
+        return "C:\\Users\\" + user + "\\IdeaProjects\\StarMatchDBPostgres\\src\\main\\java\\org\\starmatch\\src\\files\\";
+    }
+
+    /**
+     * Function to set up the Database Service.
+     * Reads go to the replicas listed, comma-separated, in the STARMATCH_REPLICA_URLS environment variable, if any.
      * @return new StarMatchService
      */
     private static StarMatchService setupDatabaseService() {
@@ -84,12 +193,35 @@ public class Main {
         String user = "postgres";
         String password = "1234";
 
-        Repository<User> userDBRepo = new UserDBRepository(url, user, password);
+        String replicaUrls = System.getenv("STARMATCH_REPLICA_URLS");
+        ReplicaRouter router = replicaUrls == null || replicaUrls.isBlank() ? null
+                : new ReplicaRouter(List.of(replicaUrls.split(",")), user, password, ReplicaRouter.DEFAULT_MAX_LAG);
+
+        Repository<User> userDBRepo = new UserDBRepository(url, user, password, router);
+        Repository<Admin> adminDBRepo = new AdminDBRepository(url, user, password, router);
+        Repository<Quote> quoteDBRepo = new QuoteDBRepository(url, user, password, router);
+        Repository<Trait> traitDBRepo = new TraitDBRepository(url, user, password, router);
+        Repository<StarSign> starSignDBRepo = new StarSignDBRepository(url, user, password, router);
+        return new InstrumentedStarMatchService(userDBRepo, adminDBRepo, starSignDBRepo, quoteDBRepo, traitDBRepo, new MetricsRegistry(), "database");
+    }
+
+    /**
+     * Function to set up the Database Service with the users spread over several databases,
+     * named StarMatch_0, StarMatch_1, ... The other entities stay in the StarMatch database.
+     * @return new StarMatchService
+     */
+    private static StarMatchService setupShardedDatabaseService(int shardCount) {
+        String url = "jdbc:postgresql://localhost:5432/StarMatch";
+        String user = "postgres";
+        String password = "1234";
+
+        List<String> shardUrls = IntStream.range(0, shardCount).mapToObj(i -> url + "_" + i).toList();
+        ShardedUserDBRepository userDBRepo = new ShardedUserDBRepository(shardUrls, user, password);
         Repository<Admin> adminDBRepo = new AdminDBRepository(url, user, password);
         Repository<Quote> quoteDBRepo = new QuoteDBRepository(url, user, password);
         Repository<Trait> traitDBRepo = new TraitDBRepository(url, user, password);
         Repository<StarSign> starSignDBRepo = new StarSignDBRepository(url, user, password);
-        return new StarMatchService(userDBRepo, adminDBRepo, starSignDBRepo, quoteDBRepo, traitDBRepo);
+        return new InstrumentedStarMatchService(userDBRepo, adminDBRepo, starSignDBRepo, quoteDBRepo, traitDBRepo, new MetricsRegistry(), "sharded-database");
     }
 
 }
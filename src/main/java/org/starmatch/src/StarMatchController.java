@@ -1,9 +1,13 @@
 package org.starmatch.src;
 
 import org.starmatch.src.StarMatchService;
+import org.starmatch.src.analytics.UserStatistics;
+import org.starmatch.src.metrics.MetricsRegistry;
 import org.starmatch.src.model.*;
 import org.starmatch.src.exceptions.*;
 
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.List;
@@ -30,6 +34,15 @@ public class StarMatchController {
         return starMatchService.validateUserLogin(email, password);
     }
 
+    /**
+     * Logs a user in and starts its session.
+     * @return the session of the user, or null if the credentials are invalid
+     */
+    public UserSession logInUser(String email, String password) {
+        User user = starMatchService.logInUser(email, password);
+        return user == null ? null : new UserSession(user);
+    }
+
     /**
      * Validates admin Login using function in service.
      */
@@ -174,6 +187,87 @@ public class StarMatchController {
         System.out.println(output);
     }
 
+    /**
+     * Imports users in bulk from a CSV file.
+     */
+    public void importUsers(String filePath){
+        try{
+            int imported = starMatchService.importUsers(Path.of(filePath));
+            System.out.println("Imported " + imported + " users.");}
+        catch(ValidationException | UncheckedIOException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Exports all data of the app into a snapshot file.
+     */
+    public void exportSnapshot(String filePath){
+        try{
+            long exported = starMatchService.exportSnapshot(Path.of(filePath));
+            System.out.println("Exported " + exported + " records.");}
+        catch(UncheckedIOException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Restores all data of the app from a snapshot file.
+     */
+    public void restoreSnapshot(String filePath){
+        try{
+            long restored = starMatchService.restoreSnapshot(Path.of(filePath));
+            System.out.println("Restored " + restored + " records.");}
+        catch(ValidationException | UncheckedIOException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the calls, errors and latencies of the operations of the service and its repositories.
+     */
+    public void viewMetrics(){
+        MetricsRegistry metrics = metrics();
+        if (metrics != null) {
+            System.out.print(metrics.format());
+        }
+    }
+
+    /**
+     * Writes the metrics of the service and its repositories to a file in the Prometheus text format.
+     */
+    public void exportMetrics(String filePath){
+        MetricsRegistry metrics = metrics();
+        if (metrics == null) {
+            return;
+        }
+        try{
+            metrics.writePrometheus(Path.of(filePath));
+            System.out.println("Metrics written to " + filePath + ".");}
+        catch(UncheckedIOException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets the metrics recorded so far, e.g. before measuring one scenario.
+     */
+    public void resetMetrics(){
+        MetricsRegistry metrics = metrics();
+        if (metrics != null) {
+            metrics.reset();
+            System.out.println("Metrics reset.");
+        }
+    }
+
+    private MetricsRegistry metrics() {
+        if (starMatchService instanceof InstrumentedStarMatchService instrumented) {
+            return instrumented.getMetrics();
+        }
+        System.out.println("Metrics are not recorded for this storage.");
+        return null;
+    }
+
     /**
      * Removes a user by its ID.
      */
@@ -187,92 +281,93 @@ public class StarMatchController {
     }
 
     /**
-     * Retrieves and returns a user's natal chart.
+     * Starts a session for a user who just signed up or otherwise needs one without a password check.
+     * @throws EntityNotFoundException if no user has the email
      */
-    public NatalChart viewNatalChart(String userEmail){
+    public UserSession startUserSession(String userEmail){
         User user = starMatchService.getUserByEmail(userEmail);
-        if (user != null) {
-            return starMatchService.getNatalChart(user);
-        } else {
+        if (user == null) {
             throw new EntityNotFoundException("User not found.");
         }
+        return new UserSession(user);
+    }
+
+    /**
+     * Retrieves and returns a user's natal chart, computed once per session.
+     */
+    public NatalChart viewNatalChart(UserSession session){
+        return natalChart(session);
     }
 
     /**
-     * Retrieves and returns a user's profile by email.
+     * Retrieves and returns a user's profile.
      */
-    public User viewUserProfile(String userEmail){
-        return starMatchService.getUserByEmail(userEmail);
+    public User viewUserProfile(UserSession session){
+        return session.getUser();
     }
 
     /**
      * Retrieves and returns a user's personality traits.
      */
-    public List<String> viewPersonalityTraits(String userEmail){
-        User user = starMatchService.getUserByEmail(userEmail);
-        return starMatchService.getPersonalityTraits(user);
+    public List<String> viewPersonalityTraits(UserSession session){
+        return starMatchService.getPersonalityTraits(natalChart(session));
     }
 
     /**
      * Retrieves and returns a user's personalized quote.
      */
-    public String getPersonalizedQuote(String userEmail){
-        User user = starMatchService.getUserByEmail(userEmail);
-        return starMatchService.getPersonalizedQuote(user);
+    public String getPersonalizedQuote(UserSession session){
+        return starMatchService.getPersonalizedQuote(natalChart(session));
     }
 
     /**
      * Updates a user's profile information with new details
+     * and refreshes the session with the updated user.
      * throws exception if the email is invalid
      */
-    public void updateUser(User user, String name, String email, String password, LocalDate birthDate, LocalTime birthTime, String birthPlace){
-        if(email!=null && !email.isEmpty()){
-            if(starMatchService.validateEmail(email)){
-                User user1=starMatchService.getUserByEmail(user.getEmail());
-                starMatchService.updateUser(user1,name,email,password,birthDate,birthTime,birthPlace);}
-            else
-                throw new EntityNotFoundException("Invalid email");}
-        else {
-            User user1=starMatchService.getUserByEmail(user.getEmail());
-            starMatchService.updateUser(user1,name,email,password,birthDate,birthTime,birthPlace);
-        }
+    public void updateUser(UserSession session, String name, String email, String password, LocalDate birthDate, LocalTime birthTime, String birthPlace){
+        if(email!=null && !email.isEmpty() && !starMatchService.validateEmail(email))
+            throw new EntityNotFoundException("Invalid email");
+        session.refresh(starMatchService.updateUser(session.getUser(),name,email,password,birthDate,birthTime,birthPlace));
     }
 
     /**
-     * Retrieves all users except the specified user.
+     * Retrieves all users except the user of the session.
      */
-    public List<User> getAllUsersExcept(String userEmail){
-        User currentUser = starMatchService.getUserByEmail(userEmail);
-        return starMatchService.getAllUsersExcept(currentUser);
+    public List<User> getAllUsersExcept(UserSession session){
+        return starMatchService.getAllUsersExcept(session.getUser());
     }
 
     /**
      * Adds a friend to the user's friend list by email.
      */
-    public void addFriend(String userEmail, String friendEmail){
+    public void addFriend(UserSession session, String friendEmail){
         try{
-            User user = starMatchService.getUserByEmail(userEmail);
-            starMatchService.addFriend(user,friendEmail);}
+            session.refresh(starMatchService.addFriend(session.getUser(),friendEmail));}
         catch(EntityNotFoundException | BusinessLogicException e){
             System.out.println(e.getMessage());
         }
     }
 
     /**
-     * Retrieves a user's friend list.
+     * Retrieves a user's friend list. The friends are resolved by email the first time,
+     * and then fetched by their IDs, which the session keeps.
      */
-    public List<User> viewFriends(String userEmail){
-        User user = starMatchService.getUserByEmail(userEmail);
-        return starMatchService.getFriends(user);
+    public List<User> viewFriends(UserSession session){
+        if (session.getFriendIds() != null) {
+            return starMatchService.getUsersByIds(session.getFriendIds());
+        }
+        List<User> friends = starMatchService.getFriends(session.getUser());
+        session.setFriendIds(friends.stream().map(User::getId).toList());
+        return friends;
     }
 
     /**
      * Removes a friend from the user's friend list.
      */
-    public void removeFriend(String userEmail, String friendEmail){
+    public void removeFriend(UserSession session, String friendEmail){
         try {
-            User user = starMatchService.getUserByEmail(userEmail);
-            starMatchService.removeFriend(user,friendEmail);
+            session.refresh(starMatchService.removeFriend(session.getUser(),friendEmail));
         }
         catch(EntityNotFoundException e){
             System.out.println(e.getMessage());
@@ -284,9 +379,8 @@ public class StarMatchController {
      * Calculates compatibility between the user and a friend.
      * @return a Compatibility object
      */
-    public Compatibility getCompatibility(String userEmail, String friendEmail){
-        User user = starMatchService.getUserByEmail(userEmail);
-        return starMatchService.calculateCompatibility(user, friendEmail);
+    public Compatibility getCompatibility(UserSession session, String friendEmail){
+        return starMatchService.calculateCompatibility(session.getUser(), natalChart(session), friendEmail);
     }
 
     /**
@@ -316,8 +410,23 @@ public class StarMatchController {
         return starMatchService.mostPopularElements(starMatchService.getUsers());
     }
 
-    public List<User> getFriendsNearMe(String userEmail) {
-        User user = starMatchService.getUserByEmail(userEmail);
-        return starMatchService.getFriendsNearMe(user);
+    /**
+     *
+     * Uses the analytics function from the service
+     * @return the element and sign statistics of all users
+     */
+    public UserStatistics getUserStatistics(){
+        return starMatchService.getUserStatistics();
+    }
+
+    public List<User> getFriendsNearMe(UserSession session) {
+        return starMatchService.getFriendsNearMe(session.getUser());
+    }
+
+    private NatalChart natalChart(UserSession session) {
+        if (session.getNatalChart() == null) {
+            session.setNatalChart(starMatchService.getNatalChart(session.getUser()));
+        }
+        return session.getNatalChart();
     }
 }
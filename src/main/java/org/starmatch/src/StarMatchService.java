@@ -1,13 +1,24 @@
 package org.starmatch.src;
 
+import org.starmatch.src.analytics.UserAnalytics;
+import org.starmatch.src.analytics.UserStatistics;
+import org.starmatch.src.bulk.RepositorySnapshot;
+import org.starmatch.src.bulk.UserCsvImporter;
+import org.starmatch.src.metrics.CompatibilityEvent;
+import org.starmatch.src.metrics.NatalChartEvent;
 import org.starmatch.src.model.*;
 import org.starmatch.src.repository.Repository;
 import org.starmatch.src.exceptions.*;
 
+
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * StarMatchService provides methods for managing users, admins, quotes, traits, and compatibility calculations
@@ -20,6 +31,25 @@ public class StarMatchService {
     private final Repository<Quote> quoteRepository;
     private final Repository<Trait> traitRepository;
 
+    /**
+     * Serializes the changes to friend lists, which update the lists of two users. The lists are replaced by updated
+     * copies rather than changed in place, since the in-memory repositories share the users with every caller.
+     */
+    private final ReentrantLock friendsLock = new ReentrantLock();
+
+    /**
+     * Epoch day of 2000-01-01, the reference date of the lunar cycle used for moon signs.
+     */
+    private static final long FIXED_MOON_EPOCH_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+
+    /**
+     * The names of the zodiac signs, in the order of the zodiac cycle starting with Aries.
+     */
+    private static final String[] ZODIAC_SIGNS = {
+            "Aries", "Taurus", "Gemini", "Cancer", "Leo", "Virgo",
+            "Libra", "Scorpio", "Sagittarius", "Capricorn", "Aquarius", "Pisces"
+    };
+
     /**
      * Initializes StarMatchService with the given repositories.
      */
@@ -39,8 +69,19 @@ public class StarMatchService {
      * @return true if login is valid, false otherwise
      */
     public boolean validateUserLogin(String email, String password) {
-        return userRepository.getAll().stream()
-                .anyMatch(user -> user.getEmail().equals(email) && user.getPassword().equals(password));
+        return logInUser(email, password) != null;
+    }
+
+    /**
+     * Logs a user in, resolving the user in the same pass as the credential check.
+     *
+     * @param email    the user's email
+     * @param password the user's password
+     * @return the logged-in user if the credentials are valid, null otherwise
+     */
+    public User logInUser(String email, String password) {
+        User user = userRepository.findByEmail(email);
+        return user != null && user.getPassword().equals(password) ? user : null;
     }
 
     /**
@@ -51,8 +92,8 @@ public class StarMatchService {
      * @return true if login is valid, false otherwise
      */
     public boolean validateAdminLogin(String email, String password) {
-        return adminRepository.getAll().stream()
-                .anyMatch(admin -> admin.getEmail().equals(email) && admin.getPassword().equals(password));
+        Admin admin = adminRepository.findByEmail(email);
+        return admin != null && admin.getPassword().equals(password);
     }
 
     /**
@@ -63,14 +104,42 @@ public class StarMatchService {
         userRepository.create(newUser);
     }
 
+    /**
+     * Imports users in bulk from a CSV file in the user line format of the file storage.
+     * The IDs and friend emails of the file are kept.
+     *
+     * @param csvFile the file to import
+     * @return the number of imported users
+     */
+    public int importUsers(Path csvFile) {
+        return new UserCsvImporter(userRepository).importFile(csvFile);
+    }
+
+    /**
+     * Exports users, admins, star signs, quotes and traits into a snapshot file.
+     *
+     * @param snapshotFile the file to write
+     * @return the number of exported records
+     */
+    public long exportSnapshot(Path snapshotFile) {
+        return new RepositorySnapshot(userRepository, adminRepository, signRepository, quoteRepository, traitRepository).export(snapshotFile);
+    }
+
+    /**
+     * Restores a snapshot file into the repositories, which should be empty.
+     *
+     * @param snapshotFile the file to read
+     * @return the number of restored records
+     */
+    public long restoreSnapshot(Path snapshotFile) {
+        return new RepositorySnapshot(userRepository, adminRepository, signRepository, quoteRepository, traitRepository).restore(snapshotFile);
+    }
+
     /**
      * Removes a user by ID from the user repository.
      */
     public void removeUser(Integer userId) {
-        boolean userExists = userRepository.getAll().stream()
-                .anyMatch(user -> user.getId().equals(userId));
-
-        if (!userExists) {
+        if (userId == null || userRepository.get(userId) == null) {
             throw new EntityNotFoundException("User not found");
         }
 
@@ -204,10 +273,7 @@ public class StarMatchService {
      * @return the maximum ID found in the repository, or 0 if empty
      */
     public <T extends HasId> int getMaxId(Repository<T> repository) {
-        return repository.getAll().stream()
-                .mapToInt(T::getId)
-                .max()
-                .orElse(0);
+        return repository.getMaxId();
     }
 
     /**
@@ -252,10 +318,7 @@ public class StarMatchService {
      * @return the User object if found, or null if not found
      */
     public User getUserByEmail(String email) {
-        return userRepository.getAll().stream()
-                .filter(user -> user.getEmail().equals(email))
-                .findFirst()
-                .orElse(null);
+        return userRepository.findByEmail(email);
     }
 
     /**
@@ -265,78 +328,130 @@ public class StarMatchService {
      * @return a NatalChart object with the calculated planetary positions of the user
      */
     public NatalChart getNatalChart(User user) {
+        NatalChartEvent event = new NatalChartEvent();
+        event.begin();
 
-        List<Planet> planets = new ArrayList<>();
+        List<Planet> planets = new ArrayList<>(3);
         LocalDate birthDate = user.getBirthDate();
         LocalTime birthTime = user.getBirthTime();
 
-        StarSign sunSign = calculateSunSign(birthDate);
-        StarSign moonSign = calculateMoonSign(birthDate);
-        StarSign risingSign = calculateRisingSign(birthTime);
+        List<StarSign> signs = signRepository.getAll();
+        StarSign sunSign = calculateSunSign(signs, birthDate);
+        StarSign moonSign = calculateMoonSign(signs, birthDate);
+        StarSign risingSign = calculateRisingSign(signs, birthTime);
 
         planets.add(new Planet("Sun", sunSign, 1));
         planets.add(new Planet("Moon", moonSign, 2));
         planets.add(new Planet("Rising", risingSign, 3));
 
+        event.end();
+        if (event.shouldCommit()) {
+            event.userId = user.getId();
+            event.sunSign = sunSign == null ? null : sunSign.getStarName();
+            event.moonSign = moonSign == null ? null : moonSign.getStarName();
+            event.risingSign = risingSign == null ? null : risingSign.getStarName();
+            event.commit();
+        }
         return new NatalChart(planets);
     }
 
     /**
      * Calculates the sun sign based on the user's birth date.
      *
+     * @param signs all the star signs of the app
      * @param birthDate the user's birth date
      * @return the user's sun sign as a StarSign object
      */
-    private StarSign calculateSunSign(LocalDate birthDate) {
-        int day = birthDate.getDayOfMonth();
-        String sunSignName;
-
-        switch (birthDate.getMonth()) {
-            case MARCH -> sunSignName = (day < 21) ? "Pisces" : "Aries";
-            case APRIL -> sunSignName = (day < 20) ? "Aries" : "Taurus";
-            case MAY -> sunSignName = (day < 21) ? "Taurus" : "Gemini";
-            case JUNE -> sunSignName = (day < 21) ? "Gemini" : "Cancer";
-            case JULY -> sunSignName = (day < 23) ? "Cancer" : "Leo";
-            case AUGUST -> sunSignName = (day < 23) ? "Leo" : "Virgo";
-            case SEPTEMBER -> sunSignName = (day < 23) ? "Virgo" : "Libra";
-            case OCTOBER -> sunSignName = (day < 23) ? "Libra" : "Scorpio";
-            case NOVEMBER -> sunSignName = (day < 22) ? "Scorpio" : "Sagittarius";
-            case DECEMBER -> sunSignName = (day < 22) ? "Sagittarius" : "Capricorn";
-            case JANUARY -> sunSignName = (day < 20) ? "Capricorn" : "Aquarius";
-            case FEBRUARY -> sunSignName = (day < 19) ? "Aquarius" : "Pisces";
-            default -> sunSignName = "Unknown";
-        }
-
-        return signRepository.getAll().stream().filter(starSign -> starSign.getStarName().equals(sunSignName)).findFirst().orElse(null);
+    private StarSign calculateSunSign(List<StarSign> signs, LocalDate birthDate) {
+        return findSign(signs, getZodiacSignFromIndex(sunSignIndex(birthDate)));
     }
 
     /**
      * Calculates the moon sign based on the user's birth date.
      *
+     * @param signs all the star signs of the app
      * @param birthDate the user's birth date
      * @return the user's moon sign as a StarSign object
      */
-    private StarSign calculateMoonSign(LocalDate birthDate){
-        long daysSinceFixedDate = java.time.temporal.ChronoUnit.DAYS.between(
-                LocalDate.of(2000, 1, 1), birthDate);
-        int moonIndex = (int) ((daysSinceFixedDate / 2.5) % 12);
-        if(moonIndex<0)
-            moonIndex+=12;
-        String moonSignName = getZodiacSignFromIndex(moonIndex);
-        return signRepository.getAll().stream().filter(starSign -> starSign.getStarName().equals(moonSignName)).findFirst().orElse(null);
+    private StarSign calculateMoonSign(List<StarSign> signs, LocalDate birthDate) {
+        return findSign(signs, getZodiacSignFromIndex(moonSignIndex(birthDate)));
     }
 
     /**
      * Calculates the rising sign based on the user's birth time.
      *
+     * @param signs all the star signs of the app
      * @param birthTime the user's birth time
      * @return the user's rising sign as a StarSign object
      */
-    private StarSign calculateRisingSign(LocalTime birthTime) {
-        int hour = birthTime.getHour();
-        int risingIndex = (hour / 2) % 12;
-        String risingSign= getZodiacSignFromIndex(risingIndex);
-        return signRepository.getAll().stream().filter(starSign -> starSign.getStarName().equals(risingSign)).findFirst().orElse(null);
+    private StarSign calculateRisingSign(List<StarSign> signs, LocalTime birthTime) {
+        return findSign(signs, getZodiacSignFromIndex(risingSignIndex(birthTime)));
+    }
+
+    /**
+     * Finds a star sign by name.
+     *
+     * @param signs all the star signs of the app
+     * @param starName the name of the star sign
+     * @return the star sign, or null if there is none with that name
+     */
+    private static StarSign findSign(List<StarSign> signs, String starName) {
+        for (int i = 0; i < signs.size(); i++) {
+            if (signs.get(i).getStarName().equals(starName))
+                return signs.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Calculates the zodiac index (0 = Aries ... 11 = Pisces) of the sun sign for a birth date,
+     * using the traditional astrological date ranges.
+     *
+     * @param birthDate the birth date
+     * @return the index of the sun sign in the zodiac cycle
+     */
+    public static int sunSignIndex(LocalDate birthDate) {
+        int day = birthDate.getDayOfMonth();
+        return switch (birthDate.getMonth()) {
+            case MARCH -> (day < 21) ? 11 : 0;
+            case APRIL -> (day < 20) ? 0 : 1;
+            case MAY -> (day < 21) ? 1 : 2;
+            case JUNE -> (day < 21) ? 2 : 3;
+            case JULY -> (day < 23) ? 3 : 4;
+            case AUGUST -> (day < 23) ? 4 : 5;
+            case SEPTEMBER -> (day < 23) ? 5 : 6;
+            case OCTOBER -> (day < 23) ? 6 : 7;
+            case NOVEMBER -> (day < 22) ? 7 : 8;
+            case DECEMBER -> (day < 22) ? 8 : 9;
+            case JANUARY -> (day < 20) ? 9 : 10;
+            case FEBRUARY -> (day < 19) ? 10 : 11;
+        };
+    }
+
+    /**
+     * Calculates the zodiac index of the moon sign for a birth date, using a 2.5-day lunar cycle
+     * starting on 2000-01-01.
+     *
+     * @param birthDate the birth date
+     * @return the index of the moon sign in the zodiac cycle
+     */
+    public static int moonSignIndex(LocalDate birthDate) {
+        long daysSinceFixedDate = birthDate.toEpochDay() - FIXED_MOON_EPOCH_DAY;
+        int moonIndex = (int) ((daysSinceFixedDate / 2.5) % 12);
+        if(moonIndex<0)
+            moonIndex+=12;
+        return moonIndex;
+    }
+
+    /**
+     * Calculates the zodiac index of the rising sign for a birth time,
+     * each sign lasting for two hours of the day.
+     *
+     * @param birthTime the birth time
+     * @return the index of the rising sign in the zodiac cycle
+     */
+    public static int risingSignIndex(LocalTime birthTime) {
+        return (birthTime.getHour() / 2) % 12;
     }
 
     /**
@@ -345,15 +460,11 @@ public class StarMatchService {
      * @param index the index corresponding to a zodiac sign
      * @return the name of the zodiac sign at the specified index
      */
-    private String getZodiacSignFromIndex(int index) {
-        String[] zodiacSigns = {
-                "Aries", "Taurus", "Gemini", "Cancer", "Leo", "Virgo",
-                "Libra", "Scorpio", "Sagittarius", "Capricorn", "Aquarius", "Pisces"
-        };
+    public static String getZodiacSignFromIndex(int index) {
         int checkIndex=index%12;
         if(checkIndex<0)
             checkIndex+=12;
-        return zodiacSigns[index];
+        return ZODIAC_SIGNS[checkIndex];
     }
 
     /**
@@ -363,7 +474,16 @@ public class StarMatchService {
      * @return a list of personality trait names
      */
     public List<String> getPersonalityTraits(User user){
-        NatalChart chart=getNatalChart(user);
+        return getPersonalityTraits(getNatalChart(user));
+    }
+
+    /**
+     * Retrieves a list of personality traits from an already computed natal chart.
+     *
+     * @param chart the natal chart of the user
+     * @return a list of personality trait names
+     */
+    public List<String> getPersonalityTraits(NatalChart chart){
         StarSign sunSign=chart.getPlanets().getFirst().getSign();
         return sunSign.getTraits().stream()
                 .map(Trait::getTraitName)
@@ -377,17 +497,47 @@ public class StarMatchService {
      * @return a random quote matching the user's element
      */
     public String getPersonalizedQuote(User user){
-        NatalChart chart=getNatalChart(user);
+        return getPersonalizedQuote(getNatalChart(user));
+    }
+
+    /**
+     * Generates a personalized quote from an already computed natal chart.
+     *
+     * @param chart the natal chart of the user
+     * @return a random quote matching the user's element
+     */
+    public String getPersonalizedQuote(NatalChart chart){
+        return pickQuote(chart, quoteRepository.getAll());
+    }
+
+    /**
+     * Picks a random quote matching the element of a natal chart's sun sign. The matching quotes are counted and
+     * the chosen one found in a second pass, rather than copied to a list.
+     *
+     * @param chart the natal chart of the user
+     * @param allQuotes all the quotes of the app
+     * @return a random quote matching the user's element
+     */
+    private String pickQuote(NatalChart chart, List<Quote> allQuotes){
         Element element=chart.getPlanets().getFirst().getSign().getElement();
-        List<String> quotes=quoteRepository.getAll().stream().filter(quote -> quote.getElement().equals(element)).map(Quote::getQuoteText).toList();
-        Random random=new Random();
-        return quotes.get(random.nextInt(quotes.size()));
+        int matching=0;
+        for (int i = 0; i < allQuotes.size(); i++) {
+            if (allQuotes.get(i).getElement().equals(element))
+                matching++;
+        }
+        int chosen=ThreadLocalRandom.current().nextInt(matching);
+        for (int i = 0; ; i++) {
+            Quote quote=allQuotes.get(i);
+            if (quote.getElement().equals(element) && chosen-- == 0)
+                return quote.getQuoteText();
+        }
     }
 
     /**
      * Updates a user's information with new details
+     * @return the updated user
      */
-    public void updateUser(User user,String name, String email, String password, LocalDate birthDate, LocalTime birthTime, String birthPlace){
+    public User updateUser(User user,String name, String email, String password, LocalDate birthDate, LocalTime birthTime, String birthPlace){
         User user1 = userRepository.get(user.getId());
         if (!name.isBlank()) user1.setName(name);
         if (!email.isBlank()) user1.setEmail(email);
@@ -396,6 +546,7 @@ public class StarMatchService {
         if (birthTime!=null) user1.setBirthTime(birthTime);
         if (!birthPlace.isBlank()) user1.setBirthPlace(birthPlace);
         userRepository.update(user1);
+        return user1;
     }
 
     /**
@@ -405,29 +556,43 @@ public class StarMatchService {
      * @return a list of users excluding the specified user
      */
     public List<User> getAllUsersExcept(User currentUser){
-        return userRepository.getAll().stream().filter(user -> !user.equals(currentUser)).collect(Collectors.toList());
+        try (Stream<User> users = userRepository.stream()) {
+            return users.filter(user -> !user.equals(currentUser)).collect(Collectors.toList());
+        }
     }
 
     /**
-     * Adds a friend to the user's friend list by email.
+     * Adds a friend to the user's friend list by email. The user is read again from the repository before the change,
+     * so that friends added or removed since the given user was read are kept.
      *
      * @param user the user adding a friend
      * @param friendEmail the email of the friend to add
-     * @throws NoSuchElementException if a user with the specified email does not exist
+     * @return the user as stored after the change
+     * @throws EntityNotFoundException if the user or a user with the specified email does not exist
      */
-    public void addFriend(User user, String friendEmail) {
+    public User addFriend(User user, String friendEmail) {
         if(user.getEmail().equals(friendEmail))
             throw new BusinessLogicException("You cannot add yourself as your friend");
-        User friend = userRepository.getAll().stream()
-                .filter(user1 -> user1.getEmail().equals(friendEmail))
-                .findFirst()
-                .orElseThrow(() -> new EntityNotFoundException("User with that email does not exist"));
-
-        if (!user.getRawFriendEmails().contains(friendEmail)) {
-            user.getRawFriendEmails().add(friendEmail);
-            user.getFriends().add(friend);
-
-            userRepository.update(user);
+        User friend = userRepository.findByEmail(friendEmail);
+        if (friend == null)
+            throw new EntityNotFoundException("User with that email does not exist");
+
+        friendsLock.lock();
+        try {
+            User stored = storedUser(user);
+            if (!stored.getRawFriendEmails().contains(friendEmail)) {
+                List<User> friends = new ArrayList<>(stored.getFriends());
+                friends.add(friend);
+                List<String> friendEmails = new ArrayList<>(stored.getRawFriendEmails());
+                friendEmails.add(friendEmail);
+                stored.setFriends(friends);
+                stored.setRawFriendEmails(friendEmails);
+
+                userRepository.update(stored);
+            }
+            return stored;
+        } finally {
+            friendsLock.unlock();
         }
     }
 
@@ -443,12 +608,23 @@ public class StarMatchService {
         return user.getFriends();
     }
 
+    /**
+     * Retrieves users by their IDs, such as the friends of a user whose IDs are already known.
+     * IDs of users that no longer exist are skipped.
+     *
+     * @param ids the IDs of the users
+     * @return the users that were found, in the order of the IDs
+     */
+    public List<User> getUsersByIds(List<Integer> ids) {
+        return ids.stream()
+                .map(userRepository::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
     private void refreshFriendsList(User user) {
         List<User> resolvedFriends = user.getRawFriendEmails().stream()
-                .map(email -> userRepository.getAll().stream()
-                        .filter(u -> u.getEmail().equals(email))
-                        .findFirst()
-                        .orElse(null))
+                .map(userRepository::findByEmail)
                 .filter(Objects::nonNull)
                 .toList();
         user.setFriends(resolvedFriends);
@@ -456,25 +632,52 @@ public class StarMatchService {
 
 
     /**
-     * Removes a friend from the user's friend list by email.
+     * Removes a friend from the user's friend list by email. The user and the friend are read again from the
+     * repository before the change, so that friends added or removed since they were read are kept.
      *
      * @param user the user removing a friend
      * @param friendEmail the email of the friend to remove
-     * @throws NoSuchElementException if a user with the specified email does not exist
-     */
-    public void removeFriend(User user, String friendEmail) {
-        User friend = userRepository.getAll().stream()
-                .filter(u -> u.getEmail().equals(friendEmail))
-                .findFirst()
-                .orElseThrow(() -> new EntityNotFoundException("User with that email does not exist"));
+     * @return the user as stored after the change
+     * @throws EntityNotFoundException if the user or a user with the specified email does not exist
+     */
+    public User removeFriend(User user, String friendEmail) {
+        friendsLock.lock();
+        try {
+            User friend = userRepository.findByEmail(friendEmail);
+            if (friend == null)
+                throw new EntityNotFoundException("User with that email does not exist");
+            User stored = storedUser(user);
+            if (stored.getRawFriendEmails().contains(friendEmail)) {
+                stored.setRawFriendEmails(without(stored.getRawFriendEmails(), friendEmail));
+                friend.setRawFriendEmails(without(friend.getRawFriendEmails(), stored.getEmail()));
+
+                userRepository.update(stored);
+                userRepository.update(friend);
+            }
+            return stored;
+        } finally {
+            friendsLock.unlock();
+        }
+    }
 
-        if (user.getRawFriendEmails().contains(friendEmail)) {
-            user.getRawFriendEmails().remove(friendEmail);
-            friend.getRawFriendEmails().remove(user.getEmail());
+    /**
+     * Reads a user again from the repository, by ID.
+     *
+     * @param user the user as read earlier
+     * @return the user as stored now
+     * @throws EntityNotFoundException if the user no longer exists
+     */
+    private User storedUser(User user) {
+        User stored = userRepository.get(user.getId());
+        if (stored == null)
+            throw new EntityNotFoundException("User not found");
+        return stored;
+    }
 
-            userRepository.update(user);
-            userRepository.update(friend);
-        }
+    private static List<String> without(List<String> emails, String email) {
+        List<String> remaining = new ArrayList<>(emails);
+        remaining.remove(email);
+        return remaining;
     }
 
 
@@ -487,13 +690,80 @@ public class StarMatchService {
      * @throws NoSuchElementException if the specified friend is not found or not in the user's friend list
      */
     public Compatibility calculateCompatibility(User user, String friendEmail){
-        User friend=userRepository.getAll().stream().filter(user1 -> user1.getEmail().equals(friendEmail)).findFirst().orElseThrow(() -> new EntityNotFoundException("User with that email does not exist"));
+        return calculateCompatibility(user, getNatalChart(user), friendEmail);
+    }
+
+    /**
+     * Calculates compatibility between a user, whose natal chart is already computed, and a friend.
+     *
+     * @param user the user for whom compatibility is calculated
+     * @param chartUser the natal chart of the user
+     * @param friendEmail the email of the friend to calculate compatibility with
+     * @return a Compatibility object with the calculated compatibility score
+     * @throws NoSuchElementException if the specified friend is not found or not in the user's friend list
+     */
+    public Compatibility calculateCompatibility(User user, NatalChart chartUser, String friendEmail){
+        User friend=getFriendByEmail(user, friendEmail);
+        return computeCompatibility(user, chartUser, friend, getNatalChart(friend));
+    }
+
+    /**
+     * Calculates compatibility between a user and a friend looked up beforehand, whose natal charts are both already
+     * computed.
+     *
+     * @param user the user for whom compatibility is calculated
+     * @param chartUser the natal chart of the user
+     * @param friend the friend found by email, or null if none has the email
+     * @param chartFriend the natal chart of the friend, or null if the friend was not found
+     * @return a Compatibility object with the calculated compatibility score
+     * @throws EntityNotFoundException if the friend was not found or is not in the user's friend list
+     */
+    public Compatibility calculateCompatibility(User user, NatalChart chartUser, User friend, NatalChart chartFriend){
+        checkFriend(user, friend, friend==null ? null : friend.getEmail());
+        return computeCompatibility(user, chartUser, friend, chartFriend);
+    }
+
+    /**
+     * Finds a friend of a user by email.
+     *
+     * @param user the user whose friend is searched
+     * @param friendEmail the email of the friend
+     * @return the friend
+     * @throws EntityNotFoundException if no user has the email or that user is not a friend
+     */
+    private User getFriendByEmail(User user, String friendEmail){
+        User friend=userRepository.findByEmail(friendEmail);
+        checkFriend(user, friend, friendEmail);
+        return friend;
+    }
+
+    /**
+     * Checks that a user found by email is a friend of another user.
+     *
+     * @param user the user whose friend is checked
+     * @param friend the user found, or null if none has the email
+     * @param friendEmail the email the friend was looked up by
+     * @throws EntityNotFoundException if no user has the email or that user is not a friend
+     */
+    private void checkFriend(User user, User friend, String friendEmail){
+        if(friend==null)
+            throw new EntityNotFoundException("User with that email does not exist");
         if(!user.getFriends().contains(friend) && !user.getRawFriendEmails().contains(friendEmail))
             throw new EntityNotFoundException("That User is not your friend");
+    }
 
-        NatalChart chartUser=getNatalChart(user);
-        NatalChart chartFriend=getNatalChart(friend);
-
+    /**
+     * Calculates compatibility between a user and a friend whose natal charts are both already computed.
+     *
+     * @param user the user for whom compatibility is calculated
+     * @param chartUser the natal chart of the user
+     * @param friend the friend to calculate compatibility with
+     * @param chartFriend the natal chart of the friend
+     * @return a Compatibility object with the calculated compatibility score
+     */
+    private Compatibility computeCompatibility(User user, NatalChart chartUser, User friend, NatalChart chartFriend){
+        CompatibilityEvent event = new CompatibilityEvent();
+        event.begin();
         StarSign userSunSign=chartUser.getPlanets().getFirst().getSign();
         StarSign friendSunSign=chartFriend.getPlanets().getFirst().getSign();
         StarSign userMoonSign=chartUser.getPlanets().get(1).getSign();
@@ -509,6 +779,14 @@ public class StarMatchService {
         actualCompatibility=actualCompatibility/500000;
         if(actualCompatibility>100)
             actualCompatibility=100;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.userId = user.getId();
+            event.friendId = friend.getId();
+            event.score = actualCompatibility;
+            event.commit();
+        }
         return new Compatibility(actualCompatibility,friend.getId(),user.getId());
     }
 
@@ -532,15 +810,22 @@ public class StarMatchService {
     }
 
     /**
-     * Converts the name of a star sign into a binary representation.
+     * Converts the name of a star sign into a binary representation: the sum, over its characters, of the
+     * binary digits of the character read as a decimal number (e.g. 'A', 1000001 in binary, counts as 1000001).
      *
      * @param starName the name of the star sign
      * @return the binary representation of the star sign's name as a long
      */
-    private long convertNameToBinary(String starName){
+    public static long convertNameToBinary(String starName){
         long binary=0;
-        for(char c:starName.toCharArray()){
-            binary+=Integer.parseInt(Integer.toBinaryString(c));
+        for (int i = 0; i < starName.length(); i++) {
+            int c=starName.charAt(i);
+            long place=1;
+            while (c != 0) {
+                binary+=(c & 1)*place;
+                place*=10;
+                c>>>=1;
+            }
         }
         return binary;
     }
@@ -648,15 +933,29 @@ public class StarMatchService {
     public Map<Element,Long> mostPopularElements(List<User> users){
         if(users == null || users.isEmpty())
             return Collections.emptyMap();
-        return users.stream().map(user -> calculateSunSign(user.getBirthDate())).filter(Objects::nonNull).map(StarSign::getElement).
+        List<StarSign> signs = signRepository.getAll();
+        return users.stream().map(user -> calculateSunSign(signs, user.getBirthDate())).filter(Objects::nonNull).map(StarSign::getElement).
                 collect(Collectors.groupingBy(element -> element,Collectors.counting())).entrySet().
                 stream().sorted(Map.Entry.<Element, Long>comparingByValue().reversed()).
                 collect(Collectors.toMap(Map.Entry::getKey,Map.Entry::getValue,(e1,e2)->e1,LinkedHashMap::new));
 
     }
 
+    /**
+     * Computes element and sign statistics over the whole user base.
+     * The users are streamed from the repository and processed in parallel.
+     *
+     * @return the statistics of all users
+     */
+    public UserStatistics getUserStatistics() {
+        return new UserAnalytics(signRepository).compute(userRepository);
+    }
+
     public List<User> getFriendsNearMe(User user) {
-        ArrayList<User> usersNearMe = new ArrayList<>( userRepository.getAll().stream().filter(user1 -> user1.getBirthPlace().equals(user.getBirthPlace())).toList());
+        ArrayList<User> usersNearMe;
+        try (Stream<User> users = userRepository.stream()) {
+            usersNearMe = new ArrayList<>(users.filter(user1 -> user1.getBirthPlace().equals(user.getBirthPlace())).toList());
+        }
         usersNearMe.removeIf(u -> u.getEmail().equals(user.getEmail()));
         return usersNearMe;
     }
@@ -0,0 +1,111 @@
+package org.starmatch.src;
+
+import org.starmatch.src.model.NatalChart;
+import org.starmatch.src.model.User;
+
+import java.util.List;
+
+/**
+ * Holds the state of a logged-in user for the length of a session: the user resolved at login, and the natal chart
+ * and friend IDs once they have been computed. The controller works on the session instead of looking the user up
+ * by email for every action.
+ * <p>
+ * The cached chart depends on the birth data of the user and the friend IDs on its friend list, so the controller
+ * invalidates them when the profile or the friend list changes.
+ * </p>
+ */
+public class UserSession {
+    private User user;
+    private NatalChart natalChart;
+    private List<Integer> friendIds;
+
+    /**
+     * Starts a session for a user.
+     *
+     * @param user the logged-in user
+     */
+    public UserSession(User user) {
+        this.user = user;
+    }
+
+    /**
+     * Gets the logged-in user.
+     *
+     * @return the user of the session
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the ID of the logged-in user.
+     *
+     * @return the ID of the user
+     */
+    public Integer getUserId() {
+        return user.getId();
+    }
+
+    /**
+     * Gets the email of the logged-in user.
+     *
+     * @return the email of the user
+     */
+    public String getEmail() {
+        return user.getEmail();
+    }
+
+    /**
+     * Gets the natal chart of the user, if it was computed since the last invalidation.
+     *
+     * @return the cached natal chart, or null
+     */
+    public NatalChart getNatalChart() {
+        return natalChart;
+    }
+
+    /**
+     * Caches the natal chart of the user.
+     *
+     * @param natalChart the natal chart of the user
+     */
+    public void setNatalChart(NatalChart natalChart) {
+        this.natalChart = natalChart;
+    }
+
+    /**
+     * Gets the IDs of the user's friends, if they were resolved since the last invalidation.
+     *
+     * @return the cached friend IDs, or null
+     */
+    public List<Integer> getFriendIds() {
+        return friendIds;
+    }
+
+    /**
+     * Caches the IDs of the user's friends.
+     *
+     * @param friendIds the IDs of the user's friends
+     */
+    public void setFriendIds(List<Integer> friendIds) {
+        this.friendIds = friendIds;
+    }
+
+    /**
+     * Replaces the user of the session after its profile was updated, dropping everything computed from the old one.
+     *
+     * @param user the updated user
+     */
+    public void refresh(User user) {
+        this.user = user;
+        invalidate();
+    }
+
+    /**
+     * Drops the cached natal chart and friend IDs, so that they are computed again when next needed.
+     */
+    public void invalidate() {
+        natalChart = null;
+        friendIds = null;
+    }
+}
@@ -0,0 +1,76 @@
+package org.starmatch.src.analytics;
+
+import org.starmatch.src.StarMatchService;
+import org.starmatch.src.model.StarSign;
+import org.starmatch.src.model.User;
+import org.starmatch.src.repository.Repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Computes {@link UserStatistics} over the user base.
+ * <p>
+ * Users are processed on the common fork-join pool through parallel streams; every task fills its own
+ * {@link UserStatistics} and the partial results are merged at the end. Only the birth data of a user is
+ * needed, so the computation can run directly off {@link Repository#stream()} without loading every user
+ * in memory first.
+ * </p>
+ */
+public class UserAnalytics {
+    private final int[] elementBySign = new int[12];
+
+    /**
+     * Creates the analytics engine, resolving the element of every zodiac sign from the star sign repository.
+     *
+     * @param signRepository the repository containing the star signs
+     */
+    public UserAnalytics(Repository<StarSign> signRepository) {
+        Arrays.fill(elementBySign, -1);
+        for (StarSign sign : signRepository.getAll()) {
+            for (int i = 0; i < elementBySign.length; i++) {
+                if (StarMatchService.getZodiacSignFromIndex(i).equals(sign.getStarName())) {
+                    elementBySign[i] = sign.getElement().ordinal();
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the statistics over all users of a repository, streaming them from the backend.
+     *
+     * @param userRepository the repository containing the users
+     * @return the statistics of the user base
+     */
+    public UserStatistics compute(Repository<User> userRepository) {
+        try (Stream<User> users = userRepository.stream()) {
+            return compute(users);
+        }
+    }
+
+    /**
+     * Computes the statistics over a collection of users.
+     *
+     * @param users the users to analyze
+     * @return the statistics of the given users
+     */
+    public UserStatistics compute(Collection<User> users) {
+        return compute(users.stream());
+    }
+
+    private UserStatistics compute(Stream<User> users) {
+        return users.parallel().collect(UserStatistics::new, this::record, UserStatistics::merge);
+    }
+
+    private void record(UserStatistics statistics, User user) {
+        int sunIndex = StarMatchService.sunSignIndex(user.getBirthDate());
+        statistics.record(
+                user.getBirthDate().getYear(),
+                user.getBirthPlace(),
+                sunIndex,
+                StarMatchService.moonSignIndex(user.getBirthDate()),
+                StarMatchService.risingSignIndex(user.getBirthTime()),
+                elementBySign[sunIndex]);
+    }
+}
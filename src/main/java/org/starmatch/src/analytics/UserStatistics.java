@@ -0,0 +1,154 @@
+package org.starmatch.src.analytics;
+
+import org.starmatch.src.StarMatchService;
+import org.starmatch.src.model.Element;
+
+import java.util.*;
+
+/**
+ * Aggregated astrological statistics over a set of users.
+ * <p>
+ * All counters are primitive arrays indexed by {@link Element#ordinal()} or by the zodiac index
+ * (0 = Aries ... 11 = Pisces), so that one instance can be filled per fork-join task and the partial
+ * results merged cheaply.
+ * </p>
+ */
+public class UserStatistics {
+    private static final int ELEMENT_COUNT = Element.values().length;
+    private static final int SIGN_COUNT = 12;
+
+    private final long[] elementCounts = new long[ELEMENT_COUNT];
+    private final long[] signTripleCounts = new long[SIGN_COUNT * SIGN_COUNT * SIGN_COUNT];
+    private final Map<Integer, long[]> elementCountsByYear = new HashMap<>();
+    private final Map<String, long[]> elementCountsByPlace = new HashMap<>();
+    private long userCount;
+
+    /**
+     * Records one user.
+     *
+     * @param birthYear    the birth year of the user
+     * @param birthPlace   the birth place of the user
+     * @param sunIndex     the zodiac index of the sun sign
+     * @param moonIndex    the zodiac index of the moon sign
+     * @param risingIndex  the zodiac index of the rising sign
+     * @param sunElement   the ordinal of the sun sign's element, or -1 if unknown
+     */
+    void record(int birthYear, String birthPlace, int sunIndex, int moonIndex, int risingIndex, int sunElement) {
+        userCount++;
+        signTripleCounts[(sunIndex * SIGN_COUNT + moonIndex) * SIGN_COUNT + risingIndex]++;
+        if (sunElement < 0) {
+            return;
+        }
+        elementCounts[sunElement]++;
+        elementCountsByYear.computeIfAbsent(birthYear, year -> new long[ELEMENT_COUNT])[sunElement]++;
+        if (birthPlace != null) {
+            elementCountsByPlace.computeIfAbsent(birthPlace, place -> new long[ELEMENT_COUNT])[sunElement]++;
+        }
+    }
+
+    /**
+     * Adds the counts of another partial result to this one.
+     *
+     * @param other the partial result to merge
+     */
+    void merge(UserStatistics other) {
+        userCount += other.userCount;
+        addInto(elementCounts, other.elementCounts);
+        addInto(signTripleCounts, other.signTripleCounts);
+        other.elementCountsByYear.forEach((year, counts) ->
+                addInto(elementCountsByYear.computeIfAbsent(year, y -> new long[ELEMENT_COUNT]), counts));
+        other.elementCountsByPlace.forEach((place, counts) ->
+                addInto(elementCountsByPlace.computeIfAbsent(place, p -> new long[ELEMENT_COUNT]), counts));
+    }
+
+    /**
+     * Gets the number of users included in these statistics.
+     *
+     * @return the number of users
+     */
+    public long getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * Gets the distribution of sun sign elements, sorted by the most popular element.
+     *
+     * @return a map of elements with their count
+     */
+    public Map<Element, Long> getElementCounts() {
+        return toSortedMap(elementCounts);
+    }
+
+    /**
+     * Gets the distribution of sun sign elements for every birth year.
+     *
+     * @return a map of birth years, in ascending order, to their element distribution
+     */
+    public Map<Integer, Map<Element, Long>> getElementCountsByBirthYear() {
+        Map<Integer, Map<Element, Long>> result = new TreeMap<>();
+        elementCountsByYear.forEach((year, counts) -> result.put(year, toSortedMap(counts)));
+        return result;
+    }
+
+    /**
+     * Gets the distribution of sun sign elements for every birth place.
+     *
+     * @return a map of birth places, in alphabetical order, to their element distribution
+     */
+    public Map<String, Map<Element, Long>> getElementCountsByBirthPlace() {
+        Map<String, Map<Element, Long>> result = new TreeMap<>();
+        elementCountsByPlace.forEach((place, counts) -> result.put(place, toSortedMap(counts)));
+        return result;
+    }
+
+    /**
+     * Gets the number of users with the given sun, moon and rising sign combination.
+     *
+     * @param sunIndex    the zodiac index of the sun sign
+     * @param moonIndex   the zodiac index of the moon sign
+     * @param risingIndex the zodiac index of the rising sign
+     * @return the number of users with that sign triple
+     */
+    public long getSignTripleCount(int sunIndex, int moonIndex, int risingIndex) {
+        return signTripleCounts[(sunIndex * SIGN_COUNT + moonIndex) * SIGN_COUNT + risingIndex];
+    }
+
+    /**
+     * Gets the most common sun/moon/rising sign combinations.
+     *
+     * @param limit the maximum number of combinations to return
+     * @return a map of "Sun/Moon/Rising" sign names to their count, sorted by the most common combination
+     */
+    public Map<String, Long> getTopSignTriples(int limit) {
+        Integer[] triples = new Integer[signTripleCounts.length];
+        for (int i = 0; i < triples.length; i++) {
+            triples[i] = i;
+        }
+        Arrays.sort(triples, (a, b) -> Long.compare(signTripleCounts[b], signTripleCounts[a]));
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < triples.length && result.size() < limit && signTripleCounts[triples[i]] > 0; i++) {
+            int triple = triples[i];
+            String name = StarMatchService.getZodiacSignFromIndex(triple / (SIGN_COUNT * SIGN_COUNT)) + "/" +
+                    StarMatchService.getZodiacSignFromIndex(triple / SIGN_COUNT % SIGN_COUNT) + "/" +
+                    StarMatchService.getZodiacSignFromIndex(triple % SIGN_COUNT);
+            result.put(name, signTripleCounts[triple]);
+        }
+        return result;
+    }
+
+    private static void addInto(long[] target, long[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
+    }
+
+    private static Map<Element, Long> toSortedMap(long[] counts) {
+        Map<Element, Long> result = new LinkedHashMap<>();
+        Arrays.stream(Element.values())
+                .filter(element -> counts[element.ordinal()] > 0)
+                .sorted(Comparator.comparingLong((Element element) -> counts[element.ordinal()]).reversed())
+                .forEach(element -> result.put(element, counts[element.ordinal()]));
+        return result;
+    }
+}
@@ -0,0 +1,234 @@
+package org.starmatch.src.bulk;
+
+import org.starmatch.src.exceptions.ValidationException;
+import org.starmatch.src.model.*;
+import org.starmatch.src.repository.FriendshipCopier;
+import org.starmatch.src.repository.RecordCodec;
+import org.starmatch.src.repository.Repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Exports every entity of a set of repositories into a binary snapshot file and restores it into any backend.
+ * <p>
+ * The snapshot starts with a header (magic number and format version), followed by one section per entity type
+ * in the order traits, star signs, quotes, admins, users. Each section starts with the entity class name and holds
+ * length-prefixed records encoded with {@link RecordCodec}, terminated by a length of -1.
+ * </p>
+ * <p>
+ * Export walks each repository through {@link Repository#stream()}: a cursor or {@code COPY TO} for the database,
+ * a line-by-line read for files and the map itself in memory. Restore reads one record at a time and hands the
+ * records to {@link Repository#createAll(Iterator, int)}, which stores batches of {@link #BATCH_SIZE}, so both take
+ * constant memory regardless of the data size. File repositories, which rewrite their file on every batch, take
+ * all the records of a section in a single write instead. Snapshots should be restored into empty stores.
+ * </p>
+ */
+public class RepositorySnapshot {
+    /**
+     * Number of records stored per call to {@link Repository#createAll(Collection)} during restore.
+     */
+    public static final int BATCH_SIZE = 10_000;
+
+    private static final int MAGIC = 0x534D534E; // "SMSN"
+    private static final short VERSION = 1;
+    private static final int END_OF_SECTION = -1;
+
+    private final Repository<User> userRepository;
+    private final Repository<Admin> adminRepository;
+    private final Repository<StarSign> signRepository;
+    private final Repository<Quote> quoteRepository;
+    private final Repository<Trait> traitRepository;
+
+    /**
+     * Creates a snapshot handler for the given repositories.
+     */
+    public RepositorySnapshot(Repository<User> userRepository, Repository<Admin> adminRepository, Repository<StarSign> signRepository,
+                              Repository<Quote> quoteRepository, Repository<Trait> traitRepository) {
+        this.userRepository = userRepository;
+        this.adminRepository = adminRepository;
+        this.signRepository = signRepository;
+        this.quoteRepository = quoteRepository;
+        this.traitRepository = traitRepository;
+    }
+
+    /**
+     * Writes a snapshot of all repositories.
+     *
+     * @param target the snapshot file to write
+     * @return the number of exported records
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public long export(Path target) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+
+            long exported = exportSection(out, Trait.class, traitRepository);
+            exported += exportSection(out, StarSign.class, signRepository);
+            exported += exportSection(out, Quote.class, quoteRepository);
+            exported += exportSection(out, Admin.class, adminRepository);
+            exported += exportSection(out, User.class, userRepository);
+            return exported;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write snapshot " + target, e);
+        }
+    }
+
+    /**
+     * Restores a snapshot into the repositories.
+     * Star signs are linked to the restored traits by name, since backends may assign new trait IDs.
+     * For the database, the friendships of the users are copied in a second pass over the snapshot.
+     *
+     * @param source the snapshot file to read
+     * @return the number of restored records
+     * @throws ValidationException if the file is not a snapshot
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public long restore(Path source) {
+        long restored;
+        try (DataInputStream in = open(source)) {
+            restored = restoreSection(in, Trait.class, traitRepository, UnaryOperator.identity());
+
+            Map<String, Trait> traitsByName = new HashMap<>();
+            traitRepository.getAll().forEach(trait -> traitsByName.putIfAbsent(trait.getTraitName(), trait));
+            restored += restoreSection(in, StarSign.class, signRepository, sign -> {
+                sign.setTraits(sign.getTraits().stream()
+                        .map(trait -> traitsByName.getOrDefault(trait.getTraitName(), trait))
+                        .toList());
+                return sign;
+            });
+
+            restored += restoreSection(in, Quote.class, quoteRepository, UnaryOperator.identity());
+            restored += restoreSection(in, Admin.class, adminRepository, UnaryOperator.identity());
+            restored += restoreSection(in, User.class, userRepository, UnaryOperator.identity());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read snapshot " + source, e);
+        }
+
+        if (userRepository instanceof FriendshipCopier friendshipCopier) {
+            try (DataInputStream in = open(source)) {
+                for (Class<?> skipped : List.of(Trait.class, StarSign.class, Quote.class, Admin.class)) {
+                    skipSection(in, skipped);
+                }
+                friendshipCopier.copyFriendships(readSection(in, User.class));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read snapshot " + source, e);
+            }
+        }
+        return restored;
+    }
+
+    private <T extends HasId> long exportSection(DataOutputStream out, Class<T> entityClass, Repository<T> repository) throws IOException {
+        RecordCodec<T> codec = RecordCodec.forClass(entityClass);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        long exported = 0;
+
+        out.writeUTF(entityClass.getSimpleName());
+        try (Stream<T> objs = repository.stream()) {
+            for (Iterator<T> it = objs.iterator(); it.hasNext(); ) {
+                record.reset();
+                codec.write(it.next(), recordOut);
+                out.writeInt(record.size());
+                record.writeTo(out);
+                exported++;
+            }
+        }
+        out.writeInt(END_OF_SECTION);
+        return exported;
+    }
+
+    private <T extends HasId> long restoreSection(DataInputStream in, Class<T> entityClass, Repository<T> repository,
+                                                  UnaryOperator<T> fixup) {
+        Iterator<T> records = readSection(in, entityClass);
+        return repository.createAll(new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return fixup.apply(records.next());
+            }
+        }, BATCH_SIZE);
+    }
+
+    /**
+     * Reads the records of the next section lazily, one record at a time.
+     */
+    private <T extends HasId> Iterator<T> readSection(DataInputStream in, Class<T> entityClass) {
+        readSectionHeader(in, entityClass);
+        RecordCodec<T> codec = RecordCodec.forClass(entityClass);
+
+        return new Iterator<>() {
+            private byte[] buffer = new byte[256];
+            private int length = nextLength();
+
+            @Override
+            public boolean hasNext() {
+                return length != END_OF_SECTION;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    if (buffer.length < length) {
+                        buffer = new byte[Math.max(length, buffer.length * 2)];
+                    }
+                    in.readFully(buffer, 0, length);
+                    T obj = codec.read(ByteBuffer.wrap(buffer, 0, length));
+                    length = nextLength();
+                    return obj;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            private int nextLength() {
+                try {
+                    return in.readInt();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private void skipSection(DataInputStream in, Class<?> entityClass) throws IOException {
+        readSectionHeader(in, entityClass);
+        int length;
+        while ((length = in.readInt()) != END_OF_SECTION) {
+            in.skipNBytes(length);
+        }
+    }
+
+    private void readSectionHeader(DataInputStream in, Class<?> entityClass) {
+        try {
+            String section = in.readUTF();
+            if (!section.equals(entityClass.getSimpleName())) {
+                throw new ValidationException("Expected " + entityClass.getSimpleName() + " section in snapshot, found " + section);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DataInputStream open(Path source) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 1 << 16));
+        if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+            in.close();
+            throw new ValidationException(source + " is not a StarMatch snapshot");
+        }
+        return in;
+    }
+}
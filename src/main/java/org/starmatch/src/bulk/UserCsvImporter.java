@@ -0,0 +1,102 @@
+package org.starmatch.src.bulk;
+
+import org.starmatch.src.exceptions.ValidationException;
+import org.starmatch.src.model.User;
+import org.starmatch.src.repository.FriendshipCopier;
+import org.starmatch.src.repository.Repository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Imports users in bulk from a CSV file in the format written by {@link User#convertObjectToLine()}.
+ * <p>
+ * The first pass stores the users in batches through {@link Repository#createAll}, which the database backend
+ * implements with {@code COPY FROM STDIN} and the file backend with a single rewrite per batch. The in-memory and
+ * file stores keep friendships as raw friend emails, so they are complete after that pass. For the database, a
+ * second pass reads the file again and turns the raw friend emails into "User_Friends" rows, once every user
+ * of the file exists and has an ID.
+ * </p>
+ */
+public class UserCsvImporter {
+    /**
+     * Number of users stored per call to {@link Repository#createAll}.
+     */
+    public static final int BATCH_SIZE = 10_000;
+
+    private final Repository<User> userRepository;
+
+    /**
+     * Creates an importer writing into the given repository.
+     *
+     * @param userRepository the repository receiving the imported users
+     */
+    public UserCsvImporter(Repository<User> userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Imports every user of a CSV file.
+     *
+     * @param csvFile the file to import
+     * @return the number of imported users
+     * @throws ValidationException if a line cannot be parsed as a user
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public int importFile(Path csvFile) {
+        int imported = 0;
+        List<User> batch = new ArrayList<>(BATCH_SIZE);
+
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                batch.add(parseUser(line, lineNumber));
+                if (batch.size() == BATCH_SIZE) {
+                    userRepository.createAll(batch);
+                    imported += batch.size();
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + csvFile, e);
+        }
+
+        if (!batch.isEmpty()) {
+            userRepository.createAll(batch);
+            imported += batch.size();
+        }
+
+        if (userRepository instanceof FriendshipCopier friendshipCopier) {
+            try (Stream<String> lines = Files.lines(csvFile, StandardCharsets.UTF_8)) {
+                friendshipCopier.copyFriendships(lines
+                        .filter(line -> !line.isBlank())
+                        .map(line -> User.createObjectFromFields(line.split(",")))
+                        .iterator());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + csvFile, e);
+            }
+        }
+
+        return imported;
+    }
+
+    private static User parseUser(String line, int lineNumber) {
+        try {
+            return User.createObjectFromFields(line.split(","));
+        } catch (RuntimeException e) {
+            throw new ValidationException("Invalid user on line " + lineNumber + ": " + line);
+        }
+    }
+}
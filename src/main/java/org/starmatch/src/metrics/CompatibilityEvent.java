@@ -0,0 +1,25 @@
+package org.starmatch.src.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the scoring of the compatibility between a user and a friend, once both natal charts
+ * are known. The charts themselves are recorded as {@link NatalChartEvent}s.
+ */
+@Name("org.starmatch.Compatibility")
+@Label("Compatibility")
+@Category({"StarMatch", "Astrology"})
+@Description("The scoring of the compatibility between two natal charts")
+public class CompatibilityEvent extends jdk.jfr.Event {
+    @Label("User ID")
+    public int userId;
+
+    @Label("Friend ID")
+    public int friendId;
+
+    @Label("Score")
+    public long score;
+}
@@ -0,0 +1,51 @@
+package org.starmatch.src.metrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * Starts a Java Flight Recorder recording of the app, to be opened with JDK Mission Control.
+ * <p>
+ * The recording uses the JDK's {@code default} settings, made for production with an overhead around 1%, and turns
+ * on the StarMatch events: {@link RepositoryEvent}, {@link NatalChartEvent}, {@link CompatibilityEvent} and
+ * {@link org.starmatch.src.repository.SqlStatementEvent}. It is written to its file when the JVM exits.
+ * </p>
+ */
+public final class FlightRecording {
+    private static final String[] EVENTS = {
+            "org.starmatch.Repository", "org.starmatch.SqlStatement", "org.starmatch.NatalChart", "org.starmatch.Compatibility"};
+
+    private FlightRecording() {
+    }
+
+    /**
+     * Starts a recording written to a file when the JVM exits.
+     *
+     * @param file the {@code .jfr} file to write
+     * @return the running recording
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public static Recording start(Path file) {
+        try {
+            Recording recording = new Recording(Configuration.getConfiguration("default"));
+            for (String event : EVENTS) {
+                recording.enable(event).withoutThreshold();
+            }
+            recording.setName("StarMatch");
+            recording.setToDisk(true);
+            recording.setDumpOnExit(true);
+            recording.setDestination(file);
+            recording.start();
+            return recording;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record to " + file, e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("The default recording settings of the JDK are invalid", e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.starmatch.src.metrics;
+
+import org.starmatch.src.model.HasId;
+import org.starmatch.src.model.User;
+import org.starmatch.src.repository.FriendshipCopier;
+import org.starmatch.src.repository.Repository;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Repository decorator recording the calls, errors and latencies of every method of another repository in a
+ * {@link MetricsRegistry}, under the {@code repository} layer, the entity name and the class of the repository.
+ * Every call is also emitted as a {@link RepositoryEvent} with the number of rows read or written, while a recording
+ * enables it.
+ * <p>
+ * {@link #stream()} records the time to open the stream, not to consume it. Use {@link #instrument} to create one,
+ * so that a repository copying friendships in bulk keeps doing so once decorated.
+ * </p>
+ *
+ * @param <T> the type of entities handled by the repository
+ */
+public class InstrumentedRepository<T extends HasId> implements Repository<T>, AutoCloseable {
+    private final Repository<T> delegate;
+    private final String entity;
+    private final String backend;
+    private final OperationMetrics create;
+    private final OperationMetrics createAll;
+    private final OperationMetrics get;
+    private final OperationMetrics update;
+    private final OperationMetrics delete;
+    private final OperationMetrics getAll;
+    private final OperationMetrics stream;
+    private final OperationMetrics findByEmail;
+    private final OperationMetrics getMaxId;
+
+    private InstrumentedRepository(Repository<T> delegate, MetricsRegistry registry, String entity) {
+        this.delegate = delegate;
+        this.entity = entity;
+        this.backend = delegate.getClass().getSimpleName();
+        this.create = registry.operation("repository", entity, backend, "create");
+        this.createAll = registry.operation("repository", entity, backend, "createAll");
+        this.get = registry.operation("repository", entity, backend, "get");
+        this.update = registry.operation("repository", entity, backend, "update");
+        this.delete = registry.operation("repository", entity, backend, "delete");
+        this.getAll = registry.operation("repository", entity, backend, "getAll");
+        this.stream = registry.operation("repository", entity, backend, "stream");
+        this.findByEmail = registry.operation("repository", entity, backend, "findByEmail");
+        this.getMaxId = registry.operation("repository", entity, backend, "getMaxId");
+    }
+
+    /**
+     * Decorates a repository with metrics.
+     *
+     * @param delegate the repository to decorate
+     * @param registry the registry to record into
+     * @param entity   the name of the entities of the repository, such as {@code User}
+     * @return the decorated repository, a {@link FriendshipCopier} as well if the repository is one
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends HasId> InstrumentedRepository<T> instrument(Repository<T> delegate, MetricsRegistry registry, String entity) {
+        if (delegate instanceof FriendshipCopier) {
+            return (InstrumentedRepository<T>) new InstrumentedFriendshipCopier((Repository<User>) delegate, registry, entity);
+        }
+        return new InstrumentedRepository<>(delegate, registry, entity);
+    }
+
+    @Override
+    public void create(T obj) {
+        observe(create, "create", () -> {
+            delegate.create(obj);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        observe(createAll, "createAll", () -> {
+            delegate.createAll(objs);
+            return null;
+        }, result -> objs.size());
+    }
+
+    @Override
+    public long createAll(Iterator<? extends T> objs, int batchSize) {
+        return observe(createAll, "createAll", () -> delegate.createAll(objs, batchSize), Long::longValue);
+    }
+
+    @Override
+    public T get(Integer id) {
+        return observe(get, "get", () -> delegate.get(id), result -> result == null ? 0 : 1);
+    }
+
+    @Override
+    public void update(T obj) {
+        observe(update, "update", () -> {
+            delegate.update(obj);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public void delete(Integer id) {
+        observe(delete, "delete", () -> {
+            delegate.delete(id);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public List<T> getAll() {
+        return observe(getAll, "getAll", delegate::getAll, List::size);
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return observe(stream, "stream", delegate::stream, result -> -1);
+    }
+
+    @Override
+    public T findByEmail(String email) {
+        return observe(findByEmail, "findByEmail", () -> delegate.findByEmail(email), result -> result == null ? 0 : 1);
+    }
+
+    @Override
+    public int getMaxId() {
+        return observe(getMaxId, "getMaxId", delegate::getMaxId, result -> 1);
+    }
+
+    /**
+     * Runs a call of the decorated repository, recording it in the metrics and as a {@link RepositoryEvent}.
+     */
+    <R> R observe(OperationMetrics metrics, String operation, Supplier<R> call, ToLongFunction<R> rows) {
+        RepositoryEvent event = new RepositoryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            R result = call.get();
+            failed = false;
+            if (event.shouldCommit()) {
+                event.rows = rows.applyAsLong(result);
+            }
+            return result;
+        } finally {
+            metrics.record(System.nanoTime() - start, failed);
+            commit(event, operation, failed);
+        }
+    }
+
+    /**
+     * Ends a repository event and commits it, if the flight recorder records it.
+     */
+    private void commit(RepositoryEvent event, String operation, boolean failed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.entity = entity;
+            event.backend = backend;
+            event.operation = operation;
+            event.failed = failed;
+            if (failed) {
+                event.rows = -1;
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * Closes the decorated repository, if it can be closed.
+     *
+     * @throws IllegalStateException if the decorated repository fails to close with a checked exception
+     */
+    @Override
+    public void close() {
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("Could not close the " + entity + " repository", e);
+            }
+        }
+    }
+
+    /**
+     * A decorated user repository that copies friendships in bulk.
+     */
+    private static final class InstrumentedFriendshipCopier extends InstrumentedRepository<User> implements FriendshipCopier {
+        private final FriendshipCopier copier;
+        private final OperationMetrics copyFriendships;
+
+        private InstrumentedFriendshipCopier(Repository<User> delegate, MetricsRegistry registry, String entity) {
+            super(delegate, registry, entity);
+            this.copier = (FriendshipCopier) delegate;
+            this.copyFriendships = registry.operation("repository", entity, delegate.getClass().getSimpleName(), "copyFriendships");
+        }
+
+        @Override
+        public long copyFriendships(Iterator<User> users) {
+            return observe(copyFriendships, "copyFriendships", () -> copier.copyFriendships(users), count -> count);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.starmatch.src.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metrics of every instrumented operation of the app, keyed by layer, target, backend and method.
+ * <p>
+ * The repositories record under the {@code repository} layer, with the entity as target and the repository class
+ * as backend, e.g. {@code repository/User/UserDBRepository/getAll}. The service records under the {@code service}
+ * layer, with the storage it runs on as backend. The metrics can be read as a table with {@link #format()}, or
+ * written in the Prometheus text exposition format with {@link #writePrometheus(Path)}.
+ * </p>
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * Identifies an instrumented operation.
+     *
+     * @param layer   the layer of the app, {@code repository} or {@code service}
+     * @param target  what the operation works on, such as the entity of a repository
+     * @param backend the implementation or storage behind the operation
+     * @param method  the name of the method
+     */
+    public record OperationKey(String layer, String target, String backend, String method) {
+    }
+
+    private static final Comparator<OperationKey> KEY_ORDER = Comparator.comparing(OperationKey::layer)
+            .thenComparing(OperationKey::target).thenComparing(OperationKey::backend).thenComparing(OperationKey::method);
+
+    private final Map<OperationKey, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the metrics of an operation, created on first use. Callers on a hot path should keep the result
+     * rather than look it up on every call.
+     *
+     * @return the metrics of the operation
+     */
+    public OperationMetrics operation(String layer, String target, String backend, String method) {
+        return operations.computeIfAbsent(new OperationKey(layer, target, backend, method), key -> new OperationMetrics());
+    }
+
+    /**
+     * Gets the metrics of every operation called at least once, ordered by key.
+     *
+     * @return the metrics, keyed by operation
+     */
+    public Map<OperationKey, OperationMetrics> getOperations() {
+        Map<OperationKey, OperationMetrics> called = new TreeMap<>(KEY_ORDER);
+        operations.forEach((key, metrics) -> {
+            if (metrics.getCallCount() > 0) {
+                called.put(key, metrics);
+            }
+        });
+        return called;
+    }
+
+    /**
+     * Forgets every recorded call, keeping the operations registered.
+     */
+    public void reset() {
+        operations.values().forEach(OperationMetrics::reset);
+    }
+
+    /**
+     * Formats the metrics as a table with one row per operation, latencies in milliseconds.
+     *
+     * @return the table
+     */
+    public String format() {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-58s %9s %7s %9s %9s %9s %9s%n",
+                "operation", "calls", "errors", "mean ms", "p50 ms", "p99 ms", "max ms"));
+        getOperations().forEach((key, metrics) -> {
+            LatencyHistogram latencies = metrics.getLatencies();
+            table.append(String.format(Locale.ROOT, "%-58s %9d %7d %9.3f %9.3f %9.3f %9.3f%n",
+                    key.layer() + "/" + key.target() + "/" + key.backend() + "/" + key.method(),
+                    metrics.getCallCount(), metrics.getErrorCount(), latencies.getMean() / 1e6,
+                    latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(99) / 1e6,
+                    latencies.getMax() / 1e6));
+        });
+        return table.toString();
+    }
+
+    /**
+     * Formats the metrics in the Prometheus text exposition format: a call counter, an error counter and a latency
+     * summary in seconds, labelled by layer, target, backend and method.
+     *
+     * @return the metrics as Prometheus text
+     */
+    public String toPrometheusText() {
+        Map<OperationKey, OperationMetrics> called = getOperations();
+        StringBuilder text = new StringBuilder();
+
+        text.append("# HELP starmatch_operation_calls_total Calls of an operation, failed or not.\n");
+        text.append("# TYPE starmatch_operation_calls_total counter\n");
+        called.forEach((key, metrics) -> text.append("starmatch_operation_calls_total")
+                .append(labels(key, null)).append(' ').append(metrics.getCallCount()).append('\n'));
+
+        text.append("# HELP starmatch_operation_errors_total Calls of an operation that threw an exception.\n");
+        text.append("# TYPE starmatch_operation_errors_total counter\n");
+        called.forEach((key, metrics) -> text.append("starmatch_operation_errors_total")
+                .append(labels(key, null)).append(' ').append(metrics.getErrorCount()).append('\n'));
+
+        text.append("# HELP starmatch_operation_latency_seconds Latency of the calls of an operation.\n");
+        text.append("# TYPE starmatch_operation_latency_seconds summary\n");
+        called.forEach((key, metrics) -> {
+            LatencyHistogram latencies = metrics.getLatencies();
+            for (double quantile : QUANTILES) {
+                text.append("starmatch_operation_latency_seconds").append(labels(key, quantile)).append(' ')
+                        .append(seconds(latencies.getValueAtPercentile(quantile * 100))).append('\n');
+            }
+            text.append("starmatch_operation_latency_seconds_sum").append(labels(key, null)).append(' ')
+                    .append(seconds(latencies.getTotalNanos())).append('\n');
+            text.append("starmatch_operation_latency_seconds_count").append(labels(key, null)).append(' ')
+                    .append(latencies.getCount()).append('\n');
+        });
+        return text.toString();
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format, e.g. for the textfile collector of the node
+     * exporter. The file is replaced atomically, so a scraper never reads it half-written.
+     *
+     * @param file the file to write
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public void writePrometheus(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        try {
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            Files.writeString(temporary, toPrometheusText(), StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the metrics to " + file, e);
+        }
+    }
+
+    private static String labels(OperationKey key, Double quantile) {
+        StringBuilder labels = new StringBuilder()
+                .append("{layer=\"").append(escape(key.layer()))
+                .append("\",target=\"").append(escape(key.target()))
+                .append("\",backend=\"").append(escape(key.backend()))
+                .append("\",method=\"").append(escape(key.method())).append('"');
+        if (quantile != null) {
+            labels.append(",quantile=\"").append(quantile).append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
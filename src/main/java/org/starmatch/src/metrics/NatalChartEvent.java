@@ -0,0 +1,25 @@
+package org.starmatch.src.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the computation of a user's natal chart.
+ */
+@Name("org.starmatch.NatalChart")
+@Label("Natal Chart")
+@Category({"StarMatch", "Astrology"})
+public class NatalChartEvent extends jdk.jfr.Event {
+    @Label("User ID")
+    public int userId;
+
+    @Label("Sun Sign")
+    public String sunSign;
+
+    @Label("Moon Sign")
+    public String moonSign;
+
+    @Label("Rising Sign")
+    public String risingSign;
+}
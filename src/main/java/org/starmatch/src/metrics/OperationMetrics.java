@@ -0,0 +1,91 @@
+package org.starmatch.src.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Call count, error count and latencies of one operation, such as a method of a repository.
+ * Recording is lock-free, so one instance is shared by every thread calling the operation.
+ */
+public class OperationMetrics {
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Runs the operation, recording its latency, and counting it as an error if it throws.
+     *
+     * @param operation the operation to run
+     * @return the result of the operation
+     */
+    public <T> T call(Supplier<T> operation) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = operation.get();
+            failed = false;
+            return result;
+        } finally {
+            record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Runs an operation without a result, recording its latency, and counting it as an error if it throws.
+     *
+     * @param operation the operation to run
+     */
+    public void run(Runnable operation) {
+        call(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * Records one call of the operation.
+     *
+     * @param nanos  the latency of the call in nanoseconds
+     * @param failed whether the call failed
+     */
+    public void record(long nanos, boolean failed) {
+        latencies.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Gets the number of calls, failed or not.
+     *
+     * @return the call count
+     */
+    public long getCallCount() {
+        return latencies.getCount();
+    }
+
+    /**
+     * Gets the number of failed calls.
+     *
+     * @return the error count
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * Gets the latencies of the calls, failed or not.
+     *
+     * @return the histogram of the latencies
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Forgets every recorded call.
+     */
+    public void reset() {
+        latencies.reset();
+        errors.reset();
+    }
+}
@@ -0,0 +1,34 @@
+package org.starmatch.src.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of one call of a repository method, emitted by {@link InstrumentedRepository}.
+ */
+@Name("org.starmatch.Repository")
+@Label("Repository Operation")
+@Category({"StarMatch", "Repository"})
+@Description("A call of a repository method")
+@StackTrace(false)
+public class RepositoryEvent extends jdk.jfr.Event {
+    @Label("Entity")
+    String entity;
+
+    @Label("Backend")
+    @Description("Class of the repository")
+    String backend;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Rows")
+    @Description("Number of entities read or written, -1 if unknown")
+    long rows;
+
+    @Label("Failed")
+    boolean failed;
+}
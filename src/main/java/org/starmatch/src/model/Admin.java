@@ -4,9 +4,7 @@ package org.starmatch.src.model;
  * Represents an Admin with a unique ID, name, email, and password.
  * Extends the {@link Person} abstract class.
  */
-public class Admin extends Person {
-    private int id;
-    private String name;
+public class Admin extends Person implements HasEmail {
     private String password;
     private String email;
 
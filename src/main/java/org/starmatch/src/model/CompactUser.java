@@ -0,0 +1,227 @@
+package org.starmatch.src.model;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * An immutable user laid out to hold millions of users in the heap, with the same getters as {@link User}.
+ * <p>
+ * The friends are kept as the sorted IDs of the friends, instead of a list of users and a list of their emails,
+ * and the birth date and time as the epoch day and the second of the day, instead of {@link LocalDate} and
+ * {@link LocalTime} objects. Callers may pass strings shared with other users, such as a deduplicated birth place.
+ * A compact user takes 48 bytes with compressed oops, plus 16 bytes and 4 per friend for the friend IDs,
+ * and its strings.
+ * </p>
+ * <p>
+ * As a {@link HasId} and a {@link HasEmail}, a compact user can be handled like the other entities without being
+ * turned into a {@link User}, which takes new date, time and friend list objects on top of the shared strings.
+ * </p>
+ */
+public final class CompactUser implements HasId, HasEmail {
+    private static final int[] NO_FRIENDS = {};
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NO_TIME = -1;
+
+    private final int id;
+    private final String name;
+    private final String email;
+    private final String password;
+    private final String birthPlace;
+    private final int birthEpochDay;
+    private final int birthSecondOfDay;
+    private final int[] friendIds;
+
+    /**
+     * Constructs a compact user. The birth time is kept to the second.
+     *
+     * @param id         the unique identifier of the user
+     * @param name       the name of the user
+     * @param birthDate  the birth date of the user, or null
+     * @param birthTime  the birth time of the user, or null
+     * @param birthPlace the birth place of the user
+     * @param email      the email address of the user
+     * @param password   the password of the user
+     * @param friendIds  the IDs of the friends of the user, in any order and possibly repeated
+     * @throws ArithmeticException if the birth date is too far from 1970 for its epoch day to fit in an int
+     */
+    public CompactUser(int id, String name, LocalDate birthDate, LocalTime birthTime, String birthPlace, String email, String password, int[] friendIds) {
+        this(id, name, birthDate == null ? NO_DATE : Math.toIntExact(birthDate.toEpochDay()),
+                birthTime == null ? NO_TIME : birthTime.toSecondOfDay(), birthPlace, email, password, sortedDistinct(friendIds));
+    }
+
+    private CompactUser(int id, String name, int birthEpochDay, int birthSecondOfDay, String birthPlace, String email, String password, int[] friendIds) {
+        this.id = id;
+        this.name = name;
+        this.birthEpochDay = birthEpochDay;
+        this.birthSecondOfDay = birthSecondOfDay;
+        this.birthPlace = birthPlace;
+        this.email = email;
+        this.password = password;
+        this.friendIds = friendIds;
+    }
+
+    private static int[] sortedDistinct(int[] ids) {
+        if (ids.length == 0) {
+            return NO_FRIENDS;
+        }
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int count = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[count - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * Gets a copy of this user with other friends.
+     *
+     * @param friendIds the IDs of the friends, in any order and possibly repeated
+     * @return the user with the given friends
+     */
+    public CompactUser withFriendIds(int[] friendIds) {
+        return new CompactUser(id, name, birthEpochDay, birthSecondOfDay, birthPlace, email, password, sortedDistinct(friendIds));
+    }
+
+    /**
+     * Gets the unique ID of this user.
+     *
+     * @return the ID of the user
+     */
+    @Override
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Gets the name of this user.
+     *
+     * @return the name of the user
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the email of this user.
+     *
+     * @return the email address of the user
+     */
+    @Override
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Gets the password of this user.
+     *
+     * @return the password of the user
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * Gets the birth place of this user.
+     *
+     * @return the birth place of the user
+     */
+    public String getBirthPlace() {
+        return birthPlace;
+    }
+
+    /**
+     * Gets the birth date of this user, created on each call.
+     *
+     * @return the birth date of the user, or null if it is not known
+     */
+    public LocalDate getBirthDate() {
+        return birthEpochDay == NO_DATE ? null : LocalDate.ofEpochDay(birthEpochDay);
+    }
+
+    /**
+     * Gets the birth time of this user, created on each call.
+     *
+     * @return the birth time of the user, or null if it is not known
+     */
+    public LocalTime getBirthTime() {
+        return birthSecondOfDay == NO_TIME ? null : LocalTime.ofSecondOfDay(birthSecondOfDay);
+    }
+
+    /**
+     * Gets the number of friends of this user.
+     *
+     * @return the number of friends
+     */
+    public int getFriendCount() {
+        return friendIds.length;
+    }
+
+    /**
+     * Gets the ID of a friend of this user, the friends being ordered by ID.
+     *
+     * @param index the index of the friend, from 0 to {@link #getFriendCount()} excluded
+     * @return the ID of the friend
+     * @throws ArrayIndexOutOfBoundsException if the index is out of range
+     */
+    public int getFriendId(int index) {
+        return friendIds[index];
+    }
+
+    /**
+     * Gets the IDs of the friends of this user.
+     *
+     * @return a copy of the sorted IDs of the friends
+     */
+    public int[] getFriendIds() {
+        return friendIds.clone();
+    }
+
+    /**
+     * Checks if a user is a friend of this user, with a binary search over the friend IDs.
+     *
+     * @param userId the ID of the other user
+     * @return true if the other user is a friend
+     */
+    public boolean isFriend(int userId) {
+        return Arrays.binarySearch(friendIds, userId) >= 0;
+    }
+
+    /**
+     * Converts the user to a CSV line laid out like the line of a {@link User}, with the IDs of the friends in
+     * place of their emails, which a compact user does not know.
+     *
+     * @return the CSV line of the user
+     */
+    @Override
+    public String convertObjectToLine() {
+        StringBuilder line = new StringBuilder()
+                .append(id).append(',').append(name).append(',').append(email).append(',').append(password).append(',')
+                .append(getBirthDate()).append(',').append(getBirthTime()).append(',').append(birthPlace).append(',');
+        for (int i = 0; i < friendIds.length; i++) {
+            line.append(i == 0 ? "" : ",").append(friendIds[i]);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Returns a string representation of the user, with the IDs of their friends.
+     *
+     * @return a string representation of the user
+     */
+    @Override
+    public String toString() {
+        return "CompactUser{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", email='" + email + '\'' +
+                ", birthDate=" + getBirthDate() +
+                ", birthTime=" + getBirthTime() +
+                ", birthPlace='" + birthPlace + '\'' +
+                ", friendIds=" + Arrays.toString(friendIds) +
+                '}';
+    }
+}
@@ -0,0 +1,13 @@
+package org.starmatch.src.model;
+
+/**
+ * An object identified by an email address as well as by its ID, such as a user or an admin logging in.
+ */
+public interface HasEmail {
+    /**
+     * Gets the email address of the object.
+     *
+     * @return The email address.
+     */
+    String getEmail();
+}
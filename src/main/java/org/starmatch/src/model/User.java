@@ -5,17 +5,22 @@ import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Represents a user with personal details, login information, and a list of friends.
  * Extends the {@link Person} class to include attributes for email and password.
  */
-public class User extends Person {
+public class User extends Person implements HasEmail {
 
     private String email;
     private String password;
-    private List<User> friends;
-    private List<String> rawFriendEmails;
+    // The service replaces the friend lists instead of changing them, so that readers on other threads see whole lists
+    private volatile List<User> friends;
+    private volatile List<String> rawFriendEmails;
+    private transient Function<String, User> friendResolver;
 
     /**
      * Constructs a User with the specified details and initializes an empty friends list.
@@ -74,10 +79,19 @@ public class User extends Person {
 
     /**
      * Gets the list of friends for this user.
+     * If a friend resolver is set, the friends are first resolved from the raw friend emails.
      *
      * @return a list of friends
      */
     public List<User> getFriends() {
+        if (friendResolver != null) {
+            Function<String, User> resolver = friendResolver;
+            friendResolver = null;
+            friends = rawFriendEmails.stream()
+                    .map(resolver)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
         return friends;
     }
 
@@ -88,6 +102,17 @@ public class User extends Person {
      */
     public void setFriends(List<User> friends) {
         this.friends = new ArrayList<>(friends);
+        this.friendResolver = null;
+    }
+
+    /**
+     * Sets the function used to look up a friend by email, so that the friends are resolved
+     * from the raw friend emails only when {@link #getFriends()} is first called.
+     *
+     * @param friendResolver the function returning the user with a given email, or {@code null} if there is none
+     */
+    public void setFriendResolver(Function<String, User> friendResolver) {
+        this.friendResolver = friendResolver;
     }
 
     /**
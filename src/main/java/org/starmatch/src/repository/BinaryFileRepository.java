@@ -0,0 +1,200 @@
+package org.starmatch.src.repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.starmatch.src.model.*;
+
+/**
+ * File-based repository storing its entities as binary records instead of CSV lines.
+ * <p>
+ * The file starts with a fixed header (magic number, format version and record count), followed by the records
+ * encoded with {@link RecordCodec}, each one prefixed with its length. The whole file is read into a
+ * {@link ByteBuffer} and decoded field by field, without any text splitting or parsing. Text containing commas
+ * is stored as is.
+ * </p>
+ *
+ * @param <T> The type of objects stored in the repository.
+ */
+public class BinaryFileRepository<T extends HasId> extends InFileRepository<T> {
+    private static final int MAGIC = 0x534D4246; // "SMBF"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+
+    private final RecordCodec<T> codec;
+
+    /**
+     * Constructs a new BinaryFileRepository with the specified file path.
+     *
+     * @param filePath    The path to the file where data will be stored.
+     * @param entityClass The class type of T, used to select the record codec.
+     */
+    public BinaryFileRepository(String filePath, Class<T> entityClass) {
+        super(filePath, entityClass);
+        this.codec = RecordCodec.forClass(entityClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Records are decoded while the stream is consumed. Friends are not resolved,
+     * only the raw friend emails of users are set.
+     */
+    @Override
+    public Stream<T> stream() {
+        ByteBuffer buffer = readFile();
+        if (buffer == null) return Stream.empty();
+
+        int count = readHeader(buffer);
+        Iterator<T> records = new Iterator<>() {
+            private int remaining = count;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public T next() {
+                if (remaining-- <= 0) {
+                    throw new NoSuchElementException();
+                }
+                return readRecord(buffer);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(records, count, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Reads the data from the binary file.
+     * A file that cannot be read or decoded is reported rather than read as empty, since the next write would
+     * replace it with the empty data.
+     *
+     * @return The data stored in the file, or an empty map if the file is empty or does not exist.
+     * @throws UncheckedIOException if the file cannot be read, is not a binary repository file or is truncated.
+     */
+    @Override
+    protected Map<Integer, T> readDataFromFile() {
+        ByteBuffer buffer = readFile();
+        if (buffer == null) return new HashMap<>();
+
+        int count = readHeader(buffer);
+        Map<Integer, T> data = HashMap.newHashMap(count);
+        Map<String, User> usersByEmail = entityClass == User.class ? HashMap.newHashMap(count) : null;
+        for (int i = 0; i < count; i++) {
+            T obj = readRecord(buffer);
+            data.put(obj.getId(), obj);
+            if (obj instanceof User user) {
+                linkFriends(user, usersByEmail);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Replaces the binary file with the data, header first.
+     *
+     * @param data  The data to write to the file.
+     * @param force Whether the new content is forced to disk before it replaces the file.
+     * @throws IOException if the file cannot be written.
+     */
+    @Override
+    protected void writeSnapshot(Map<Integer, T> data, boolean force) throws IOException {
+        replaceFile(stream -> writeRecords(stream, data.values().iterator(), data.size()), force);
+    }
+
+    /**
+     * Replaces the file with the objects of an iterator, each one encoded as soon as it is read, so that they are
+     * never all held in memory. The objects must have distinct IDs.
+     *
+     * @param objs  The objects to store.
+     * @param count The number of objects the iterator returns, written in the header.
+     * @throws IllegalArgumentException if the iterator does not return {@code count} objects; the file is then left
+     *                                  untouched.
+     * @throws UncheckedIOException     if the file cannot be written.
+     */
+    public void replaceAll(Iterator<? extends T> objs, int count) {
+        try {
+            replaceFile(stream -> writeRecords(stream, objs, count), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + filePath, e);
+        }
+    }
+
+    /**
+     * Writes the header and the records of a file.
+     *
+     * @throws IllegalArgumentException if the iterator does not return {@code count} objects.
+     */
+    private void writeRecords(OutputStream stream, Iterator<? extends T> objs, int count) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(count);
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        int written = 0;
+        while (objs.hasNext()) {
+            record.reset();
+            codec.write(objs.next(), recordOut);
+            out.writeInt(record.size());
+            record.writeTo(out);
+            written++;
+        }
+        if (written != count) {
+            throw new IllegalArgumentException("Expected " + count + " records but got " + written);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the whole file into a buffer.
+     *
+     * @return The content of the file, or {@code null} if the file is empty or does not exist.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    private ByteBuffer readFile() {
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) return null;
+
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + filePath, e);
+        }
+    }
+
+    /**
+     * Checks the header of the file and returns the number of records it announces.
+     *
+     * @throws UncheckedIOException if the file is not a binary repository file.
+     */
+    private int readHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            throw new UncheckedIOException(new IOException(filePath + " is not a binary repository file"));
+        }
+        return buffer.getInt();
+    }
+
+    /**
+     * Decodes the record at the position of the buffer and moves past it, using the length prefix
+     * so that the position stays aligned on record boundaries.
+     *
+     * @throws UncheckedIOException if the file ends within the record or the record cannot be decoded.
+     */
+    private T readRecord(ByteBuffer buffer) {
+        try {
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+            T obj = codec.read(buffer);
+            buffer.position(end);
+            return obj;
+        } catch (RuntimeException e) {
+            throw new UncheckedIOException(new IOException("Corrupted binary file: " + filePath, e));
+        }
+    }
+}
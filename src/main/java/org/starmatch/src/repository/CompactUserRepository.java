@@ -0,0 +1,413 @@
+package org.starmatch.src.repository;
+
+import org.starmatch.src.model.CompactUser;
+import org.starmatch.src.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * An in-memory user repository storing the users as {@link CompactUser}s, to hold millions of users in the heap.
+ * <p>
+ * The users are kept in an array, found by ID and by email through two open-addressing tables of array indexes,
+ * which take 16 bytes per user instead of the entries of a hash map. Birth places are deduplicated. The friendships
+ * are stored as friend IDs, read from and written as the raw friend emails of the users, as in the file storage.
+ * As the emails of the friends are looked up by ID, they follow a friend changing their email.
+ * </p>
+ * <p>
+ * The users read from the repository are copies, built on each read, whose friends are looked up when
+ * {@link User#getFriends()} is first called. Changes to them are stored by {@link #update(User)}.
+ * Building a user takes new date, time and friend email objects, and looks every friend up by ID, so the users are
+ * best read one at a time: by ID, by email, or through {@link #stream()}, which builds each user when it is reached.
+ * {@link #getAll()} builds every user at once, and holds them all in the heap next to their compact forms.
+ * </p>
+ * <p>
+ * Friend emails that do not belong to any user yet are kept by {@link #create(User)} and {@link #update(User)},
+ * and resolved when the user is created. {@link #createAll(Collection)} skips them, as the bulk loaders copy
+ * the friendships in a second pass with {@link #copyFriendships(Iterator)}, once every user exists.
+ * </p>
+ */
+public class CompactUserRepository implements Repository<User>, FriendshipCopier {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private CompactUser[] users = new CompactUser[INITIAL_CAPACITY];
+    private int size;
+    /**
+     * Index + 1 in {@link #users} of the user with an ID, 0 for a free entry, at the position given by the hash of
+     * the ID, or after it with linear probing. Twice as long as {@link #users}.
+     */
+    private int[] indexesById = new int[2 * INITIAL_CAPACITY];
+    /**
+     * Index + 1 in {@link #users} of the user with an email, laid out like {@link #indexesById}.
+     */
+    private int[] indexesByEmail = new int[2 * INITIAL_CAPACITY];
+    private final Map<String, String> birthPlaces = new HashMap<>();
+    private final Map<Integer, List<String>> unresolvedFriendEmails = new HashMap<>();
+
+    /**
+     * Creates a user, unless a user with the same ID exists.
+     *
+     * @param user The user to create.
+     */
+    @Override
+    public synchronized void create(User user) {
+        if (indexOfId(user.getId()) >= 0) {
+            return;
+        }
+        add(compact(user, new int[0]));
+        resolvePending(users[size - 1]);
+        List<String> unresolved = new ArrayList<>();
+        users[size - 1] = users[size - 1].withFriendIds(friendIds(user, unresolved));
+        keepUnresolved(user.getId(), unresolved);
+    }
+
+    /**
+     * Creates several users, skipping those whose ID exists. Their friend emails are resolved against the users
+     * already stored and the users of the batch; the others are skipped, to be copied by
+     * {@link #copyFriendships(Iterator)}.
+     *
+     * @param objs The users to create.
+     */
+    @Override
+    public synchronized void createAll(Collection<User> objs) {
+        List<User> created = new ArrayList<>(objs.size());
+        for (User user : objs) {
+            if (indexOfId(user.getId()) < 0) {
+                add(compact(user, new int[0]));
+                resolvePending(users[size - 1]);
+                created.add(user);
+            }
+        }
+        for (User user : created) {
+            int index = indexOfId(user.getId());
+            users[index] = users[index].withFriendIds(friendIds(user, null));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized User get(Integer id) {
+        int index = id == null ? -1 : indexOfId(id);
+        return index < 0 ? null : toUser(users[index]);
+    }
+
+    /**
+     * Finds a user by email through the email index, rather than by scanning the users.
+     *
+     * @param email the email of the user
+     * @return a copy of the user, or null if no user has the email
+     */
+    public synchronized User getByEmail(String email) {
+        int index = indexOfEmail(email);
+        return index < 0 ? null : toUser(users[index]);
+    }
+
+    /**
+     * Updates a user, if it exists, with the friends given by its raw friend emails.
+     *
+     * @param user The user to update.
+     */
+    @Override
+    public synchronized void update(User user) {
+        int index = indexOfId(user.getId());
+        if (index < 0) {
+            return;
+        }
+        List<String> unresolved = new ArrayList<>();
+        CompactUser updated = compact(user, friendIds(user, unresolved));
+        keepUnresolved(user.getId(), unresolved);
+        if (!updated.getEmail().equals(users[index].getEmail())) {
+            remove(indexesByEmail, index, true);
+            users[index] = updated;
+            insert(indexesByEmail, hash(updated, true), index);
+            resolvePending(updated);
+        } else {
+            users[index] = updated;
+        }
+    }
+
+    /**
+     * Deletes a user, and removes its ID from the friends of the other users, so that a user later created with the
+     * same ID does not become their friend.
+     *
+     * @param id The ID of the user to delete.
+     */
+    @Override
+    public synchronized void delete(Integer id) {
+        int index = id == null ? -1 : indexOfId(id);
+        if (index < 0) {
+            return;
+        }
+        remove(indexesById, index, false);
+        remove(indexesByEmail, index, true);
+        unresolvedFriendEmails.remove(id);
+        int last = --size;
+        if (index != last) {
+            CompactUser moved = users[last];
+            move(indexesById, hash(moved, false), last, index);
+            move(indexesByEmail, hash(moved, true), last, index);
+            users[index] = moved;
+        }
+        users[last] = null;
+        for (int i = 0; i < size; i++) {
+            if (users[i].isFriend(id)) {
+                users[i] = users[i].withFriendIds(without(users[i].getFriendIds(), id));
+            }
+        }
+    }
+
+    /**
+     * Finds a user by email through the email index.
+     *
+     * @param email The email of the user.
+     * @return A copy of the user, or null if no user has the email.
+     */
+    @Override
+    public User findByEmail(String email) {
+        return getByEmail(email);
+    }
+
+    /**
+     * Gets the highest ID from the stored users, without building them.
+     *
+     * @return The highest ID, or 0 if the repository is empty.
+     */
+    @Override
+    public synchronized int getMaxId() {
+        int maxId = 0;
+        for (int i = 0; i < size; i++) {
+            maxId = Math.max(maxId, users[i].getId());
+        }
+        return maxId;
+    }
+
+    /**
+     * Builds all users at once. Prefer {@link #stream()} to go through them.
+     *
+     * @return copies of all users
+     */
+    @Override
+    public synchronized List<User> getAll() {
+        List<User> all = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            all.add(toUser(users[i]));
+        }
+        return all;
+    }
+
+    /**
+     * Streams the users as they were when called, building each user only when it is reached.
+     *
+     * @return a stream over all users
+     */
+    @Override
+    public Stream<User> stream() {
+        CompactUser[] snapshot;
+        synchronized (this) {
+            snapshot = Arrays.copyOf(users, size);
+        }
+        return Arrays.stream(snapshot).map(this::toUser);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long copyFriendships(Iterator<User> users) {
+        long copied = 0;
+        while (users.hasNext()) {
+            User user = users.next();
+            int index = indexOfId(user.getId());
+            if (index < 0) {
+                continue;
+            }
+            CompactUser stored = this.users[index];
+            int[] added = friendIds(user, null);
+            int[] all = Arrays.copyOf(stored.getFriendIds(), stored.getFriendCount() + added.length);
+            System.arraycopy(added, 0, all, stored.getFriendCount(), added.length);
+            this.users[index] = stored.withFriendIds(all);
+            copied += this.users[index].getFriendCount() - stored.getFriendCount();
+        }
+        return copied;
+    }
+
+    private CompactUser compact(User user, int[] friendIds) {
+        String birthPlace = user.getBirthPlace() == null ? null : birthPlaces.computeIfAbsent(user.getBirthPlace(), Function.identity());
+        return new CompactUser(user.getId(), user.getName(), user.getBirthDate(), user.getBirthTime(), birthPlace,
+                user.getEmail(), user.getPassword(), friendIds);
+    }
+
+    /**
+     * Resolves the raw friend emails of a user to IDs.
+     *
+     * @param unresolved the list receiving the emails that do not belong to any user, or null to skip them
+     */
+    private int[] friendIds(User user, List<String> unresolved) {
+        List<String> emails = user.getRawFriendEmails();
+        int[] ids = new int[emails.size()];
+        int count = 0;
+        for (String email : emails) {
+            int index = indexOfEmail(email);
+            if (index >= 0) {
+                ids[count++] = users[index].getId();
+            } else if (unresolved != null) {
+                unresolved.add(email);
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    private void keepUnresolved(int userId, List<String> unresolved) {
+        if (unresolved.isEmpty()) {
+            unresolvedFriendEmails.remove(userId);
+        } else {
+            unresolvedFriendEmails.put(userId, unresolved);
+        }
+    }
+
+    /**
+     * Adds a new user as a friend of the users waiting for its email.
+     */
+    private void resolvePending(CompactUser created) {
+        if (unresolvedFriendEmails.isEmpty()) {
+            return;
+        }
+        Iterator<Map.Entry<Integer, List<String>>> entries = unresolvedFriendEmails.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, List<String>> entry = entries.next();
+            if (entry.getValue().remove(created.getEmail())) {
+                int index = indexOfId(entry.getKey());
+                CompactUser waiting = users[index];
+                int[] friends = Arrays.copyOf(waiting.getFriendIds(), waiting.getFriendCount() + 1);
+                friends[friends.length - 1] = created.getId();
+                users[index] = waiting.withFriendIds(friends);
+                if (entry.getValue().isEmpty()) {
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a user from its compact form, with the emails of the friends that still exist.
+     */
+    private synchronized User toUser(CompactUser compact) {
+        User user = new User(compact.getId(), compact.getName(), compact.getBirthDate(), compact.getBirthTime(),
+                compact.getBirthPlace(), compact.getEmail(), compact.getPassword());
+        List<String> friendEmails = new ArrayList<>(compact.getFriendCount());
+        for (int i = 0; i < compact.getFriendCount(); i++) {
+            int index = indexOfId(compact.getFriendId(i));
+            if (index >= 0) {
+                friendEmails.add(users[index].getEmail());
+            }
+        }
+        friendEmails.addAll(unresolvedFriendEmails.getOrDefault(compact.getId(), List.of()));
+        user.setRawFriendEmails(friendEmails);
+        user.setFriendResolver(this::getByEmail);
+        return user;
+    }
+
+    private void add(CompactUser user) {
+        if (size == users.length) {
+            users = Arrays.copyOf(users, 2 * size);
+            indexesById = new int[2 * users.length];
+            indexesByEmail = new int[2 * users.length];
+            for (int i = 0; i < size; i++) {
+                insert(indexesById, hash(users[i], false), i);
+                insert(indexesByEmail, hash(users[i], true), i);
+            }
+        }
+        users[size] = user;
+        insert(indexesById, hash(user, false), size);
+        insert(indexesByEmail, hash(user, true), size);
+        size++;
+    }
+
+    private int indexOfId(int id) {
+        int mask = indexesById.length - 1;
+        for (int slot = hash(id) & mask; indexesById[slot] != 0; slot = (slot + 1) & mask) {
+            if (users[indexesById[slot] - 1].getId() == id) {
+                return indexesById[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfEmail(String email) {
+        if (email == null) {
+            return -1;
+        }
+        int mask = indexesByEmail.length - 1;
+        for (int slot = hash(email.hashCode()) & mask; indexesByEmail[slot] != 0; slot = (slot + 1) & mask) {
+            if (users[indexesByEmail[slot] - 1].getEmail().equals(email)) {
+                return indexesByEmail[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(CompactUser user, boolean byEmail) {
+        return hash(byEmail ? user.getEmail().hashCode() : user.getId());
+    }
+
+    private static void insert(int[] table, int hash, int index) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private static int[] without(int[] friendIds, int id) {
+        int[] rest = new int[friendIds.length - 1];
+        int index = Arrays.binarySearch(friendIds, id);
+        System.arraycopy(friendIds, 0, rest, 0, index);
+        System.arraycopy(friendIds, index + 1, rest, index, rest.length - index);
+        return rest;
+    }
+
+    private static void move(int[] table, int hash, int from, int to) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != from + 1) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = to + 1;
+    }
+
+    /**
+     * Removes the entry of a user from a table, shifting back the entries probed past it so that no lookup stops
+     * early at the freed entry.
+     */
+    private void remove(int[] table, int index, boolean byEmail) {
+        int mask = table.length - 1;
+        int free = hash(users[index], byEmail) & mask;
+        while (table[free] != index + 1) {
+            free = (free + 1) & mask;
+        }
+        for (int slot = (free + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int home = hash(users[table[slot] - 1], byEmail) & mask;
+            boolean reachable = free <= slot ? (home <= free || home > slot) : (home <= free && home > slot);
+            if (reachable) {
+                table[free] = table[slot];
+                free = slot;
+            }
+        }
+        table[free] = 0;
+    }
+}
@@ -0,0 +1,182 @@
+package org.starmatch.src.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import org.starmatch.src.model.Element;
+
+/**
+ * Reads the comma-separated fields of one line straight from UTF-8 bytes.
+ * <p>
+ * Numbers, dates, times and elements are decoded from the bytes in place; only fields kept as text are turned
+ * into strings. Fields follow the format written by {@code convertObjectToLine}: no quoting, no escaping.
+ * </p>
+ */
+final class CsvTokenizer {
+    private static final Element[] ELEMENTS = Element.values();
+    private static final byte[][] ELEMENT_NAMES = new byte[ELEMENTS.length][];
+
+    static {
+        for (int i = 0; i < ELEMENTS.length; i++) {
+            ELEMENT_NAMES[i] = ELEMENTS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final byte[] bytes;
+    private int position;
+    private int lineEnd;
+    private boolean exhausted;
+
+    /**
+     * Creates a tokenizer over a buffer of lines.
+     *
+     * @param bytes The buffer holding the lines.
+     */
+    CsvTokenizer(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Moves to a line of the buffer.
+     *
+     * @param start The index of the first byte of the line.
+     * @param end   The index after the last byte of the line, excluding the line terminator.
+     */
+    void line(int start, int end) {
+        position = start;
+        lineEnd = end;
+        exhausted = false;
+    }
+
+    /**
+     * Checks whether the line has fields left.
+     */
+    boolean hasNext() {
+        return !exhausted;
+    }
+
+    /**
+     * Reads the next field as text.
+     */
+    String nextString() {
+        int start = position;
+        int end = fieldEnd();
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next field as text without leading and trailing whitespace.
+     */
+    String nextTrimmedString() {
+        int start = position;
+        int end = fieldEnd();
+        while (start < end && bytes[start] <= ' ') start++;
+        while (end > start && bytes[end - 1] <= ' ') end--;
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next field as a decimal integer.
+     *
+     * @throws NumberFormatException if the field is not an integer.
+     */
+    int nextInt() {
+        int start = position;
+        int end = fieldEnd();
+        return parseInt(start, end);
+    }
+
+    /**
+     * Reads the next field as an ISO date ({@code yyyy-MM-dd}).
+     */
+    LocalDate nextDate() {
+        int start = position;
+        int end = fieldEnd();
+        if (end - start == 10 && bytes[start + 4] == '-' && bytes[start + 7] == '-') {
+            return LocalDate.of(parseInt(start, start + 4), parseInt(start + 5, start + 7), parseInt(start + 8, end));
+        }
+        return LocalDate.parse(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the next field as an ISO time ({@code HH:mm} or {@code HH:mm:ss}).
+     */
+    LocalTime nextTime() {
+        int start = position;
+        int end = fieldEnd();
+        int length = end - start;
+        if ((length == 5 || length == 8) && bytes[start + 2] == ':') {
+            int hour = parseInt(start, start + 2);
+            int minute = parseInt(start + 3, start + 5);
+            if (length == 5) {
+                return LocalTime.of(hour, minute);
+            }
+            if (bytes[start + 5] == ':') {
+                return LocalTime.of(hour, minute, parseInt(start + 6, end));
+            }
+        }
+        return LocalTime.parse(new String(bytes, start, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the next field as the name of an {@link Element}.
+     *
+     * @throws IllegalArgumentException if the field is not an element name.
+     */
+    Element nextElement() {
+        int start = position;
+        int end = fieldEnd();
+        for (int i = 0; i < ELEMENTS.length; i++) {
+            if (equals(ELEMENT_NAMES[i], start, end)) {
+                return ELEMENTS[i];
+            }
+        }
+        return Element.valueOf(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Finds the end of the current field and moves past its separator.
+     *
+     * @throws IllegalStateException if the line has no fields left.
+     */
+    private int fieldEnd() {
+        if (exhausted) {
+            throw new IllegalStateException("Line has no more fields");
+        }
+        int end = position;
+        while (end < lineEnd && bytes[end] != ',') end++;
+        if (end == lineEnd) {
+            exhausted = true;
+            position = lineEnd;
+        } else {
+            position = end + 1;
+        }
+        return end;
+    }
+
+    private int parseInt(int start, int end) {
+        boolean negative = start < end && bytes[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("Empty number");
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number: " + new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private boolean equals(byte[] name, int start, int end) {
+        if (end - start != name.length) return false;
+        for (int i = 0; i < name.length; i++) {
+            if (bytes[start + i] != name[i]) return false;
+        }
+        return true;
+    }
+}
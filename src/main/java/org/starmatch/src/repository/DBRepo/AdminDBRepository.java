@@ -3,10 +3,12 @@ package org.starmatch.src.repository.DBRepo;
 import org.starmatch.src.exceptions.DatabaseException;
 import org.starmatch.src.model.Admin;
 import org.starmatch.src.repository.DBRepository;
+import org.starmatch.src.repository.ReplicaRouter;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository implementation for managing {@link Admin} entities in the database.
@@ -25,6 +27,28 @@ public class AdminDBRepository extends DBRepository<Admin> {
         super(dbUrl, dbUser, dbPassword);
     }
 
+    /**
+     * Constructs an {@link AdminDBRepository} sending its reads to read replicas.
+     *
+     * @param dbUrl         the URL of the primary PostgreSQL database.
+     * @param dbUser        the username for database authentication.
+     * @param dbPassword    the password for database authentication.
+     * @param replicaRouter the router choosing the connection of each read, or {@code null} to read from the primary.
+     */
+    public AdminDBRepository(String dbUrl, String dbUser, String dbPassword, ReplicaRouter replicaRouter) {
+        super(dbUrl, dbUser, dbPassword, replicaRouter);
+    }
+
+    /**
+     * Constructs a {@link AdminDBRepository} over an open connection, such as one counted by a
+     * {@link org.starmatch.src.repository.QueryCounter}.
+     *
+     * @param connection the connection to the PostgreSQL database, closed with the repository.
+     */
+    public AdminDBRepository(Connection connection) {
+        super(connection, null);
+    }
+
     /**
      * Inserts a new {@link Admin} entity into the database.
      *
@@ -35,7 +59,7 @@ public class AdminDBRepository extends DBRepository<Admin> {
     public void create(Admin obj) {
         String sql = "INSERT INTO \"Admin\" (name, email, password) VALUES (?, ?, ?)";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setString(1, obj.getName());
             statement.setString(2, obj.getEmail());
             statement.setString(3, obj.getPassword());
@@ -57,7 +81,7 @@ public class AdminDBRepository extends DBRepository<Admin> {
     public Admin get(Integer id) {
         String sql = "SELECT * FROM \"Admin\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             statement.setInt(1, id);
 
             ResultSet resultSet = statement.executeQuery();
@@ -81,7 +105,7 @@ public class AdminDBRepository extends DBRepository<Admin> {
     public void update(Admin obj) {
         String sql = "UPDATE \"Admin\" SET name = ?, email = ?, password = ? WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setString(1, obj.getName());
             statement.setString(2, obj.getEmail());
             statement.setString(3, obj.getPassword());
@@ -103,7 +127,7 @@ public class AdminDBRepository extends DBRepository<Admin> {
     public void delete(Integer id) {
         String sql = "DELETE FROM \"Admin\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setInt(1, id);
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -121,7 +145,7 @@ public class AdminDBRepository extends DBRepository<Admin> {
     public List<Admin> getAll() {
         String sql = "SELECT * FROM \"Admin\"";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             ResultSet resultSet = statement.executeQuery();
 
             List<Admin> admins = new ArrayList<>();
@@ -135,6 +159,17 @@ public class AdminDBRepository extends DBRepository<Admin> {
         }
     }
 
+    /**
+     * Streams all {@link Admin} entries through a database cursor.
+     *
+     * @return a lazy stream of {@link Admin} objects, which must be closed after use.
+     * @throws DatabaseException if a SQL error occurs.
+     */
+    @Override
+    public Stream<Admin> stream() {
+        return streamQuery("SELECT * FROM \"Admin\"", AdminDBRepository::extractFromResultSet);
+    }
+
     /**
      * Extracts an {@link Admin} entity from the current row of the given {@link ResultSet}.
      *
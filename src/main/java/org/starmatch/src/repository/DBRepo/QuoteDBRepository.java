@@ -4,10 +4,12 @@ import org.starmatch.src.exceptions.DatabaseException;
 import org.starmatch.src.model.Quote;
 import org.starmatch.src.model.Element;
 import org.starmatch.src.repository.DBRepository;
+import org.starmatch.src.repository.ReplicaRouter;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository implementation for managing {@link Quote} entities in the database.
@@ -26,6 +28,28 @@ public class QuoteDBRepository extends DBRepository<Quote> {
         super(dbUrl, dbUser, dbPassword);
     }
 
+    /**
+     * Constructs a {@link QuoteDBRepository} sending its reads to read replicas.
+     *
+     * @param dbUrl         the URL of the primary PostgreSQL database.
+     * @param dbUser        the username for database authentication.
+     * @param dbPassword    the password for database authentication.
+     * @param replicaRouter the router choosing the connection of each read, or {@code null} to read from the primary.
+     */
+    public QuoteDBRepository(String dbUrl, String dbUser, String dbPassword, ReplicaRouter replicaRouter) {
+        super(dbUrl, dbUser, dbPassword, replicaRouter);
+    }
+
+    /**
+     * Constructs a {@link QuoteDBRepository} over an open connection, such as one counted by a
+     * {@link org.starmatch.src.repository.QueryCounter}.
+     *
+     * @param connection the connection to the PostgreSQL database, closed with the repository.
+     */
+    public QuoteDBRepository(Connection connection) {
+        super(connection, null);
+    }
+
     /**
      * Inserts a new {@link Quote} entity into the database.
      *
@@ -36,7 +60,7 @@ public class QuoteDBRepository extends DBRepository<Quote> {
     public void create(Quote obj) {
         String sql = "INSERT INTO \"Quote\" (element, quoteText) VALUES (?, ?)";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setString(1, obj.getElement().name());  // Storing enum name as a string
             statement.setString(2, obj.getQuoteText());
 
@@ -57,7 +81,7 @@ public class QuoteDBRepository extends DBRepository<Quote> {
     public Quote get(Integer id) {
         String sql = "SELECT * FROM \"Quote\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             statement.setInt(1, id);
 
             ResultSet resultSet = statement.executeQuery();
@@ -81,7 +105,7 @@ public class QuoteDBRepository extends DBRepository<Quote> {
     public void update(Quote obj) {
         String sql = "UPDATE \"Quote\" SET element = ?, quoteText = ? WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setString(1, obj.getElement().name());  // Store enum name as a string
             statement.setString(2, obj.getQuoteText());
             statement.setInt(3, obj.getId());
@@ -102,7 +126,7 @@ public class QuoteDBRepository extends DBRepository<Quote> {
     public void delete(Integer id) {
         String sql = "DELETE FROM \"Quote\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setInt(1, id);
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -120,7 +144,7 @@ public class QuoteDBRepository extends DBRepository<Quote> {
     public List<Quote> getAll() {
         String sql = "SELECT * FROM \"Quote\"";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             ResultSet resultSet = statement.executeQuery();
 
             List<Quote> quotes = new ArrayList<>();
@@ -134,6 +158,17 @@ public class QuoteDBRepository extends DBRepository<Quote> {
         }
     }
 
+    /**
+     * Streams all {@link Quote} entries through a database cursor.
+     *
+     * @return a lazy stream of {@link Quote} objects, which must be closed after use.
+     * @throws DatabaseException if a SQL error occurs.
+     */
+    @Override
+    public Stream<Quote> stream() {
+        return streamQuery("SELECT * FROM \"Quote\"", QuoteDBRepository::extractFromResultSet);
+    }
+
     /**
      * Extracts a {@link Quote} entity from the current row of the given {@link ResultSet}.
      *
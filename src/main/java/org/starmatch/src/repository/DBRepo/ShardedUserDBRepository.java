@@ -0,0 +1,310 @@
+package org.starmatch.src.repository.DBRepo;
+
+import org.starmatch.src.exceptions.DatabaseException;
+import org.starmatch.src.model.User;
+import org.starmatch.src.repository.FriendshipCopier;
+import org.starmatch.src.repository.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Repository spreading the users over several PostgreSQL databases, each one holding a share of the user table.
+ * <p>
+ * Every database is a {@link UserDBRepository} whose ID sequence steps by the number of shards, so that the ID of
+ * a user tells which shard stores it: shard {@code i} of {@code n} only hands out IDs with {@code id mod n == i}.
+ * New users are placed by a hash of their email, and every other operation is routed by ID to a single shard.
+ * Operations over all users, such as {@link #getAll()} and {@link #count()}, are sent to every shard in parallel
+ * and their results merged.
+ * </p>
+ * <p>
+ * Friendships between users of the same shard are kept in "User_Friends" as usual. A friend stored in another
+ * shard cannot be referenced by a foreign key, so these friendships are kept in "User_RemoteFriends" of the
+ * user's shard together with the email of the friend, which is what the raw friend emails are made of.
+ * </p>
+ */
+public class ShardedUserDBRepository implements Repository<User>, FriendshipCopier, AutoCloseable {
+    /**
+     * Number of users whose friendships are copied per round of {@link #copyFriendships(Iterator)}.
+     */
+    private static final int COPY_BATCH_SIZE = 10_000;
+
+    private final List<UserDBRepository> shards;
+
+    /**
+     * Creates a repository over the given databases, one per shard. The databases must always be given in the same
+     * order, since users are placed by shard index, and must hold the tables of {@code SQLTables.sql} and
+     * {@code SQLShardTables.sql}.
+     *
+     * @param dbUrls     the URLs of the databases
+     * @param dbUser     the database username
+     * @param dbPassword the database password
+     */
+    public ShardedUserDBRepository(List<String> dbUrls, String dbUser, String dbPassword) {
+        if (dbUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = dbUrls.stream()
+                .map(url -> new UserDBRepository(url, dbUser, dbPassword))
+                .toList();
+        for (int i = 0; i < shards.size(); i++) {
+            shards.get(i).joinShards(i, shards.size());
+        }
+    }
+
+    /**
+     * Creates a new user in the shard chosen by a hash of its email; the shard assigns its ID.
+     *
+     * @param obj the User object to be created
+     */
+    @Override
+    public void create(User obj) {
+        shards.get(Math.floorMod(obj.getEmail().hashCode() * 0x9E3779B9, shards.size())).create(obj);
+    }
+
+    /**
+     * Creates several users at once, keeping their IDs. Every shard copies its own users, and the shards are
+     * written in parallel.
+     *
+     * @param users the User objects to be created
+     */
+    @Override
+    public void createAll(Collection<User> users) {
+        Map<UserDBRepository, List<User>> byShard = users.stream()
+                .collect(Collectors.groupingBy(user -> shardOf(user.getId())));
+        byShard.entrySet().parallelStream().forEach(entry -> entry.getKey().createAll(entry.getValue()));
+    }
+
+    /**
+     * Retrieves a user by its ID, with its friends from every shard.
+     *
+     * @param id the ID of the user to retrieve
+     * @return the User object if found, null otherwise
+     */
+    @Override
+    public User get(Integer id) {
+        UserDBRepository shard = shardOf(id);
+        User user = shard.get(id);
+        return user == null ? null : withRemoteFriends(shard, user);
+    }
+
+    /**
+     * Retrieves a user by its email, asking each shard in turn through its email column, with its friends from
+     * every shard.
+     *
+     * @param email the email of the user to retrieve
+     * @return the User object if found, null otherwise
+     */
+    @Override
+    public User findByEmail(String email) {
+        for (UserDBRepository shard : shards) {
+            User user = shard.findByEmail(email);
+            if (user != null) {
+                return withRemoteFriends(shard, user);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the highest user ID of all shards.
+     *
+     * @return the highest ID, or 0 if there are no users
+     */
+    @Override
+    public int getMaxId() {
+        return shards.parallelStream().mapToInt(UserDBRepository::getMaxId).max().orElse(0);
+    }
+
+    /**
+     * Adds to a user read from its shard the friends it has in the other shards.
+     */
+    private User withRemoteFriends(UserDBRepository shard, User user) {
+        List<Integer> remoteFriendIds = shard.getRemoteFriendIds(user.getId()).getOrDefault(user.getId(), List.of());
+        if (!remoteFriendIds.isEmpty()) {
+            List<User> friends = new ArrayList<>(user.getFriends());
+            remoteFriendIds.stream()
+                    .collect(Collectors.groupingBy(this::shardOf))
+                    .forEach((friendShard, friendIds) -> friends.addAll(friendShard.getUsersByIds(friendIds)));
+            user.setFriends(friends);
+        }
+        return user;
+    }
+
+    /**
+     * Updates a user in its shard. If its email changed, the copies of the email kept by the other shards for
+     * their remote friendships are updated as well.
+     *
+     * @param obj the User object with updated data
+     */
+    @Override
+    public void update(User obj) {
+        UserDBRepository shard = shardOf(obj.getId());
+        shard.update(obj);
+        for (UserDBRepository other : shards) {
+            if (other != shard) {
+                other.renameRemoteFriend(obj.getId(), obj.getEmail());
+            }
+        }
+    }
+
+    /**
+     * Deletes a user from its shard, along with the remote friendships other shards keep with it.
+     *
+     * @param id the ID of the user to delete
+     */
+    @Override
+    public void delete(Integer id) {
+        UserDBRepository shard = shardOf(id);
+        shard.delete(id);
+        for (UserDBRepository other : shards) {
+            if (other != shard) {
+                other.deleteRemoteFriendships("friendId", id);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the users of all shards, queried in parallel, with their friends from every shard.
+     *
+     * @return a list of all users, ordered by birth date
+     */
+    @Override
+    public List<User> getAll() {
+        List<List<User>> shardUsers = shards.parallelStream()
+                .map(UserDBRepository::getAll)
+                .toList();
+        Map<Integer, User> usersById = new HashMap<>();
+        shardUsers.forEach(users -> users.forEach(user -> usersById.put(user.getId(), user)));
+
+        List<Map<Integer, List<Integer>>> remoteFriendIds = shards.parallelStream()
+                .map(shard -> shard.getRemoteFriendIds(null))
+                .toList();
+        for (Map<Integer, List<Integer>> friendIdsByUser : remoteFriendIds) {
+            friendIdsByUser.forEach((userId, friendIds) -> {
+                User user = usersById.get(userId);
+                if (user == null) {
+                    return;
+                }
+                List<User> friends = new ArrayList<>(user.getFriends());
+                for (Integer friendId : friendIds) {
+                    User friend = usersById.get(friendId);
+                    if (friend != null) {
+                        friends.add(friend);
+                    }
+                }
+                user.setFriends(friends);
+            });
+        }
+
+        List<User> all = new ArrayList<>(usersById.size());
+        shardUsers.forEach(all::addAll);
+        all.sort(Comparator.comparing(User::getBirthDate, Comparator.nullsLast(Comparator.naturalOrder())));
+        return all;
+    }
+
+    /**
+     * Streams the users of every shard in turn, each shard ordered by ID, with their raw friend emails only.
+     *
+     * @return a lazy stream of users, which must be closed after use
+     */
+    @Override
+    public Stream<User> stream() {
+        return shards.stream().flatMap(UserDBRepository::stream);
+    }
+
+    /**
+     * Copies the friendships of users that are already stored, resolving their raw friend emails against the
+     * users of every shard. The users are read in batches, and each batch is split by shard and copied by the
+     * shards in parallel.
+     *
+     * @param users the users whose raw friend emails are to be stored as friendships
+     * @return the number of friendships copied
+     */
+    @Override
+    public long copyFriendships(Iterator<User> users) {
+        Map<String, Integer> idsByEmail = getIdsByEmail();
+        long copied = 0;
+        List<User> batch = new ArrayList<>(COPY_BATCH_SIZE);
+        while (users.hasNext()) {
+            batch.add(users.next());
+            if (batch.size() == COPY_BATCH_SIZE || !users.hasNext()) {
+                copied += batch.stream()
+                        .filter(user -> idsByEmail.containsKey(user.getEmail()))
+                        .collect(Collectors.groupingBy(user -> shardOf(idsByEmail.get(user.getEmail()))))
+                        .entrySet().parallelStream()
+                        .mapToLong(entry -> entry.getKey().copyFriendships(entry.getValue().iterator(), idsByEmail))
+                        .sum();
+                batch.clear();
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Retrieves the IDs of the users of all shards, keyed by their email address.
+     *
+     * @return a map from email address to user ID
+     */
+    public Map<String, Integer> getIdsByEmail() {
+        Map<String, Integer> idsByEmail = new HashMap<>();
+        shards.parallelStream()
+                .map(UserDBRepository::getIdsByEmail)
+                .toList()
+                .forEach(idsByEmail::putAll);
+        return idsByEmail;
+    }
+
+    /**
+     * Counts the users of all shards.
+     *
+     * @return the number of users
+     */
+    public long count() {
+        return shards.parallelStream().mapToLong(UserDBRepository::count).sum();
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Closes the connections to every shard, even if closing one of them fails.
+     *
+     * @throws DatabaseException if a connection cannot be closed, with the failures of the other shards suppressed.
+     */
+    @Override
+    public void close() {
+        DatabaseException failure = null;
+        for (UserDBRepository shard : shards) {
+            try {
+                shard.close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = new DatabaseException("Failed to close the shard connections", e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private UserDBRepository shardOf(Integer id) {
+        return shards.get(Math.floorMod(id, shards.size()));
+    }
+}
@@ -5,10 +5,13 @@ import org.starmatch.src.model.Element;
 import org.starmatch.src.model.StarSign;
 import org.starmatch.src.model.Trait;
 import org.starmatch.src.repository.DBRepository;
+import org.starmatch.src.repository.ReplicaRouter;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Repository implementation for managing Star Signs in the database.
@@ -26,8 +29,31 @@ public class StarSignDBRepository extends DBRepository<StarSign> {
      * @param dbPassword the password for database authentication.
      */
     public StarSignDBRepository(String dbUrl, String dbUser, String dbPassword) {
-        super(dbUrl, dbUser, dbPassword);
-        this.starSignTraitRepository = new StarSign_TraitDBRepository(dbUrl, dbUser, dbPassword);
+        this(dbUrl, dbUser, dbPassword, null);
+    }
+
+    /**
+     * Constructs a {@link StarSignDBRepository} sending its reads, and those of its traits, to read replicas.
+     *
+     * @param dbUrl         the URL of the primary PostgreSQL database.
+     * @param dbUser        the username for database authentication.
+     * @param dbPassword    the password for database authentication.
+     * @param replicaRouter the router choosing the connection of each read, or {@code null} to read from the primary.
+     */
+    public StarSignDBRepository(String dbUrl, String dbUser, String dbPassword, ReplicaRouter replicaRouter) {
+        super(dbUrl, dbUser, dbPassword, replicaRouter);
+        this.starSignTraitRepository = new StarSign_TraitDBRepository(dbUrl, dbUser, dbPassword, replicaRouter);
+    }
+
+    /**
+     * Constructs a {@link StarSignDBRepository} over an open connection, such as one counted by a
+     * {@link org.starmatch.src.repository.QueryCounter}. Its traits are read through the same connection.
+     *
+     * @param connection the connection to the PostgreSQL database, closed with the repository.
+     */
+    public StarSignDBRepository(Connection connection) {
+        super(connection, null);
+        this.starSignTraitRepository = new StarSign_TraitDBRepository(connection);
     }
 
     /**
@@ -41,7 +67,7 @@ public class StarSignDBRepository extends DBRepository<StarSign> {
     public void create(StarSign obj) {
         String sql = "INSERT INTO \"StarSign\" (starName, element) VALUES (?, ?)";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement statement = prepareWrite(sql, Statement.RETURN_GENERATED_KEYS)) {
             statement.setString(1, obj.getStarName());
             statement.setString(2, obj.getElement().name());
 
@@ -73,12 +99,13 @@ public class StarSignDBRepository extends DBRepository<StarSign> {
     public StarSign get(Integer id) {
         String sql = "SELECT * FROM \"StarSign\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             statement.setInt(1, id);
 
             ResultSet resultSet = statement.executeQuery();
             if (resultSet.next()) {
-                return extractFromResultSet(resultSet);
+                Integer starSignId = resultSet.getInt("id");
+                return extractFromResultSet(resultSet, starSignTraitRepository.getTraitsForStarSign(starSignId));
             } else {
                 return null;
             }
@@ -98,7 +125,7 @@ public class StarSignDBRepository extends DBRepository<StarSign> {
     public void update(StarSign obj) {
         String sql = "UPDATE \"StarSign\" SET starName = ?, element = ? WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setString(1, obj.getStarName());
             statement.setString(2, obj.getElement().name());
             statement.setInt(3, obj.getId());
@@ -124,7 +151,7 @@ public class StarSignDBRepository extends DBRepository<StarSign> {
     public void delete(Integer id) {
         String sql = "DELETE FROM \"StarSign\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setInt(1, id);
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -134,7 +161,7 @@ public class StarSignDBRepository extends DBRepository<StarSign> {
 
     /**
      * Retrieves all {@link StarSign} entries from the database.
-     * Includes associated traits for each star sign.
+     * Includes associated traits for each star sign, all read by a second query.
      *
      * @return a list of {@link StarSign} objects.
      * @throws DatabaseException if a SQL error occurs.
@@ -143,12 +170,13 @@ public class StarSignDBRepository extends DBRepository<StarSign> {
     public List<StarSign> getAll() {
         String sql = "SELECT * FROM \"StarSign\"";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             ResultSet resultSet = statement.executeQuery();
+            Map<Integer, List<Trait>> traits = starSignTraitRepository.getTraitsByStarSign();
 
             List<StarSign> starSigns = new ArrayList<>();
             while (resultSet.next()) {
-                starSigns.add(extractFromResultSet(resultSet));
+                starSigns.add(extractFromResultSet(resultSet, traits.getOrDefault(resultSet.getInt("id"), new ArrayList<>())));
             }
 
             return starSigns;
@@ -157,21 +185,33 @@ public class StarSignDBRepository extends DBRepository<StarSign> {
         }
     }
 
+    /**
+     * Streams all {@link StarSign} entries through a database cursor.
+     * The traits of every star sign are read beforehand by a single query.
+     *
+     * @return a lazy stream of {@link StarSign} objects, which must be closed after use.
+     * @throws DatabaseException if a SQL error occurs.
+     */
+    @Override
+    public Stream<StarSign> stream() {
+        Map<Integer, List<Trait>> traits = starSignTraitRepository.getTraitsByStarSign();
+        return streamQuery("SELECT * FROM \"StarSign\"",
+                resultSet -> extractFromResultSet(resultSet, traits.getOrDefault(resultSet.getInt("id"), new ArrayList<>())));
+    }
+
     /**
      * Extracts a {@link StarSign} object from the current row of the {@link ResultSet}.
-     * Fetches associated traits for the star sign.
      *
      * @param resultSet the {@link ResultSet} from which to extract data.
+     * @param traits    the traits associated with the star sign.
      * @return the {@link StarSign} object.
      * @throws SQLException if a SQL error occurs.
      */
-    private StarSign extractFromResultSet(ResultSet resultSet) throws SQLException {
+    private StarSign extractFromResultSet(ResultSet resultSet, List<Trait> traits) throws SQLException {
         String starName = resultSet.getString("starName");
         Element element = Element.valueOf(resultSet.getString("element"));
         Integer id = resultSet.getInt("id");
 
-        List<Trait> traits = starSignTraitRepository.getTraitsForStarSign(id);
-
         return new StarSign(starName, element, traits, id);
     }
 }
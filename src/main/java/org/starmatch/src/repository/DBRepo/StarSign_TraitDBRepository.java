@@ -4,10 +4,13 @@ import org.starmatch.src.exceptions.DatabaseException;
 import org.starmatch.src.model.Element;
 import org.starmatch.src.model.Trait;
 import org.starmatch.src.repository.DBRepository;
+import org.starmatch.src.repository.ReplicaRouter;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Repository implementation for managing relationships between Star Signs and Traits in the database.
@@ -26,6 +29,28 @@ public class StarSign_TraitDBRepository extends DBRepository<Trait> {
         super(dbUrl, dbUser, dbPassword);
     }
 
+    /**
+     * Constructs a {@link StarSign_TraitDBRepository} sending its reads to read replicas.
+     *
+     * @param dbUrl         the URL of the primary PostgreSQL database.
+     * @param dbUser        the username for database authentication.
+     * @param dbPassword    the password for database authentication.
+     * @param replicaRouter the router choosing the connection of each read, or {@code null} to read from the primary.
+     */
+    public StarSign_TraitDBRepository(String dbUrl, String dbUser, String dbPassword, ReplicaRouter replicaRouter) {
+        super(dbUrl, dbUser, dbPassword, replicaRouter);
+    }
+
+    /**
+     * Constructs a {@link StarSign_TraitDBRepository} over an open connection, such as one counted by a
+     * {@link org.starmatch.src.repository.QueryCounter}.
+     *
+     * @param connection the connection to the PostgreSQL database, closed with the repository.
+     */
+    public StarSign_TraitDBRepository(Connection connection) {
+        super(connection, null);
+    }
+
     /**
      * Adds a trait to a star sign by inserting into the "StarSign_Trait" table.
      *
@@ -36,7 +61,7 @@ public class StarSign_TraitDBRepository extends DBRepository<Trait> {
     public void addTraitToStarSign(Integer starSignId, Integer traitId) {
         String sql = "INSERT INTO \"StarSign_Trait\" (starSignId, traitId) VALUES (?, ?)";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setInt(1, starSignId);
             statement.setInt(2, traitId);
             statement.executeUpdate();
@@ -54,7 +79,7 @@ public class StarSign_TraitDBRepository extends DBRepository<Trait> {
     public void removeTraitsFromStarSign(Integer starSignId) {
         String sql = "DELETE FROM \"StarSign_Trait\" WHERE starSignId = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setInt(1, starSignId);
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -74,7 +99,7 @@ public class StarSign_TraitDBRepository extends DBRepository<Trait> {
                 "JOIN \"StarSign_Trait\" st ON t.id = st.traitId " +
                 "WHERE st.starSignId = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             statement.setInt(1, starSignId);
 
             ResultSet resultSet = statement.executeQuery();
@@ -93,6 +118,33 @@ public class StarSign_TraitDBRepository extends DBRepository<Trait> {
         }
     }
 
+    /**
+     * Retrieves the traits of every star sign in a single query, instead of one query per star sign.
+     *
+     * @return the {@link Trait} objects associated with each star sign, keyed by star sign ID.
+     * @throws DatabaseException if a SQL error occurs.
+     */
+    public Map<Integer, List<Trait>> getTraitsByStarSign() {
+        String sql = "SELECT st.starSignId, t.* FROM \"Trait\" t " +
+                "JOIN \"StarSign_Trait\" st ON t.id = st.traitId";
+
+        try (PreparedStatement statement = prepareRead(sql)) {
+            ResultSet resultSet = statement.executeQuery();
+            Map<Integer, List<Trait>> traits = new HashMap<>();
+            while (resultSet.next()) {
+                Integer traitId = resultSet.getInt("id");
+                String traitName = resultSet.getString("traitName");
+                Element element = Element.valueOf(resultSet.getString("element"));
+                traits.computeIfAbsent(resultSet.getInt("starSignId"), id -> new ArrayList<>())
+                        .add(new Trait(element, traitName, traitId));
+            }
+
+            return traits;
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Not implemented, not neeeded.
      * @param obj The object to create.
@@ -4,10 +4,12 @@ import org.starmatch.src.exceptions.DatabaseException;
 import org.starmatch.src.model.Trait;
 import org.starmatch.src.model.Element;
 import org.starmatch.src.repository.DBRepository;
+import org.starmatch.src.repository.ReplicaRouter;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository implementation for managing Traits in the database.
@@ -26,6 +28,28 @@ public class TraitDBRepository extends DBRepository<Trait> {
         super(dbUrl, dbUser, dbPassword);
     }
 
+    /**
+     * Constructs a {@link TraitDBRepository} sending its reads to read replicas.
+     *
+     * @param dbUrl         the URL of the primary PostgreSQL database.
+     * @param dbUser        the username for database authentication.
+     * @param dbPassword    the password for database authentication.
+     * @param replicaRouter the router choosing the connection of each read, or {@code null} to read from the primary.
+     */
+    public TraitDBRepository(String dbUrl, String dbUser, String dbPassword, ReplicaRouter replicaRouter) {
+        super(dbUrl, dbUser, dbPassword, replicaRouter);
+    }
+
+    /**
+     * Constructs a {@link TraitDBRepository} over an open connection, such as one counted by a
+     * {@link org.starmatch.src.repository.QueryCounter}.
+     *
+     * @param connection the connection to the PostgreSQL database, closed with the repository.
+     */
+    public TraitDBRepository(Connection connection) {
+        super(connection, null);
+    }
+
     /**
      * Creates a new {@link Trait} in the database.
      *
@@ -36,7 +60,7 @@ public class TraitDBRepository extends DBRepository<Trait> {
     public void create(Trait obj) {
         String sql = "INSERT INTO \"Trait\" (element, traitName) VALUES (?, ?)";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setString(1, obj.getElement().name());  // Storing the enum name as a string
             statement.setString(2, obj.getTraitName());
 
@@ -57,7 +81,7 @@ public class TraitDBRepository extends DBRepository<Trait> {
     public Trait get(Integer id) {
         String sql = "SELECT * FROM \"Trait\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             statement.setInt(1, id);
 
             ResultSet resultSet = statement.executeQuery();
@@ -81,7 +105,7 @@ public class TraitDBRepository extends DBRepository<Trait> {
     public void update(Trait obj) {
         String sql = "UPDATE \"Trait\" SET element = ?, traitName = ? WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setString(1, obj.getElement().name());  // Store the enum as a string
             statement.setString(2, obj.getTraitName());
             statement.setInt(3, obj.getId());
@@ -102,7 +126,7 @@ public class TraitDBRepository extends DBRepository<Trait> {
     public void delete(Integer id) {
         String sql = "DELETE FROM \"Trait\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setInt(1, id);
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -120,7 +144,7 @@ public class TraitDBRepository extends DBRepository<Trait> {
     public List<Trait> getAll() {
         String sql = "SELECT * FROM \"Trait\"";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             ResultSet resultSet = statement.executeQuery();
 
             List<Trait> traits = new ArrayList<>();
@@ -134,6 +158,17 @@ public class TraitDBRepository extends DBRepository<Trait> {
         }
     }
 
+    /**
+     * Streams all {@link Trait} entries through a database cursor.
+     *
+     * @return a lazy stream of {@link Trait} objects, which must be closed after use.
+     * @throws DatabaseException if a SQL error occurs.
+     */
+    @Override
+    public Stream<Trait> stream() {
+        return streamQuery("SELECT * FROM \"Trait\"", TraitDBRepository::extractFromResultSet);
+    }
+
     /**
      * Extracts a {@link Trait} object from the current row of the {@link ResultSet}.
      *
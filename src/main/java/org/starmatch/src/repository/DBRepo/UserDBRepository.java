@@ -3,16 +3,36 @@ package org.starmatch.src.repository.DBRepo;
 import org.starmatch.src.exceptions.DatabaseException;
 import org.starmatch.src.model.User;
 import org.starmatch.src.repository.DBRepository;
+import org.starmatch.src.repository.FriendshipCopier;
+import org.starmatch.src.repository.ReplicaRouter;
 
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
 
 /**
  * Repository for managing User entities in the database.
  * Provides methods to perform CRUD operations, manage friendships, and retrieve user-related data.
  */
-public class UserDBRepository extends DBRepository<User> {
+public class UserDBRepository extends DBRepository<User> implements FriendshipCopier {
+
+    /**
+     * Position of this database among the shards of a {@link ShardedUserDBRepository}.
+     * A standalone repository is the only shard of one.
+     */
+    private int shardIndex = 0;
+    private int shardCount = 1;
 
     /**
      * Constructor for initializing the repository with database connection details.
@@ -25,6 +45,28 @@ public class UserDBRepository extends DBRepository<User> {
         super(dbUrl, dbUser, dbPassword);
     }
 
+    /**
+     * Constructor for initializing the repository with a primary database and read replicas.
+     *
+     * @param dbUrl         the URL of the primary database
+     * @param dbUser        the database username
+     * @param dbPassword    the database password
+     * @param replicaRouter the router choosing the connection of each read, or {@code null} to read from the primary
+     */
+    public UserDBRepository(String dbUrl, String dbUser, String dbPassword, ReplicaRouter replicaRouter) {
+        super(dbUrl, dbUser, dbPassword, replicaRouter);
+    }
+
+    /**
+     * Constructs a {@link UserDBRepository} over an open connection, such as one counted by a
+     * {@link org.starmatch.src.repository.QueryCounter}.
+     *
+     * @param connection the connection to the PostgreSQL database, closed with the repository.
+     */
+    public UserDBRepository(Connection connection) {
+        super(connection, null);
+    }
+
     /**
      * Creates a new User entity in the database.
      * Also saves the user's friendships, if any.
@@ -36,7 +78,7 @@ public class UserDBRepository extends DBRepository<User> {
         String sql = "INSERT INTO \"User\" (name, birthDate, birthTime, birthPlace, email, password) " +
                 "VALUES (?, ?, ?, ?, ?, ?)";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement statement = prepareWrite(sql, Statement.RETURN_GENERATED_KEYS)) {
             statement.setString(1, obj.getName());
             statement.setDate(2, Date.valueOf(obj.getBirthDate()));
             statement.setTime(3, Time.valueOf(obj.getBirthTime()));
@@ -60,9 +102,207 @@ public class UserDBRepository extends DBRepository<User> {
         }
     }
 
+    /**
+     * Creates several User entities at once with {@code COPY ... FROM STDIN}.
+     * Unlike {@link #create(User)}, the IDs of the given users are kept, and the ID sequence is moved past
+     * the highest ID afterwards. Friendships to users that already have an ID are copied as well.
+     * Everything happens in a single transaction.
+     *
+     * @param users the User objects to be created
+     */
+    @Override
+    public void createAll(Collection<User> users) {
+        inTransaction(() -> {
+            copyIn("COPY \"User\" (id, name, birthDate, birthTime, birthPlace, email, password) FROM STDIN WITH (FORMAT csv)",
+                    users.stream().map(user -> csvRow(user.getId(), user.getName(), user.getBirthDate(), user.getBirthTime(),
+                            user.getBirthPlace(), user.getEmail(), user.getPassword())).iterator());
+
+            copyIn("COPY \"User_Friends\" (userId, friendId) FROM STDIN WITH (FORMAT csv)",
+                    users.stream().flatMap(user -> user.getFriends().stream()
+                            .filter(friend -> isLocal(friend.getId()))
+                            .map(User::getId)
+                            .distinct()
+                            .map(friendId -> csvRow(user.getId(), friendId))).iterator());
+
+            if (shardCount > 1) {
+                copyIn("COPY \"User_RemoteFriends\" (userId, friendId, friendEmail) FROM STDIN WITH (FORMAT csv)",
+                        users.stream().flatMap(user -> user.getFriends().stream()
+                                .filter(friend -> !isLocal(friend.getId()))
+                                .map(friend -> csvRow(user.getId(), friend.getId(), friend.getEmail()))
+                                .distinct()).iterator());
+            }
+
+            resetIdSequence();
+        });
+    }
+
+    /**
+     * Copies the friendships of users that are already stored in the database, resolving their raw friend emails
+     * against the whole user table. This is the second pass of a bulk import, run once every user of the batch
+     * exists so that friendships between them can be resolved in any order. Emails that do not belong to any
+     * user are skipped.
+     *
+     * @param users the users whose raw friend emails are to be stored as friendships
+     * @return the number of friendships copied
+     */
+    @Override
+    public long copyFriendships(Iterator<User> users) {
+        return copyFriendships(users, getIdsByEmail());
+    }
+
+    /**
+     * Copies the friendships of users stored in this database, resolving their raw friend emails with the given
+     * map. Friends stored in other shards are copied as remote friendships.
+     *
+     * @param users      the users whose raw friend emails are to be stored as friendships
+     * @param idsByEmail the IDs of all users that can be friends, keyed by email
+     * @return the number of friendships copied
+     */
+    long copyFriendships(Iterator<User> users, Map<String, Integer> idsByEmail) {
+        if (shardCount > 1) {
+            List<User> batch = new ArrayList<>();
+            users.forEachRemaining(batch::add);
+            long[] copied = new long[1];
+            inTransaction(() -> {
+                copied[0] = copyIn("COPY \"User_Friends\" (userId, friendId) FROM STDIN WITH (FORMAT csv)",
+                        friendshipRows(batch.iterator(), idsByEmail, true));
+                copied[0] += copyIn("COPY \"User_RemoteFriends\" (userId, friendId, friendEmail) FROM STDIN WITH (FORMAT csv)",
+                        friendshipRows(batch.iterator(), idsByEmail, false));
+            });
+            return copied[0];
+        }
+
+        long[] copied = new long[1];
+        inTransaction(() -> copied[0] = copyIn("COPY \"User_Friends\" (userId, friendId) FROM STDIN WITH (FORMAT csv)",
+                friendshipRows(users, idsByEmail, true)));
+        return copied[0];
+    }
+
+    /**
+     * Lazily builds the COPY rows of the friendships of users, either with the friends stored in this database
+     * or, as {@code userId, friendId, friendEmail}, with the friends stored in other shards.
+     */
+    private Iterator<String> friendshipRows(Iterator<User> users, Map<String, Integer> idsByEmail, boolean local) {
+        return new Iterator<>() {
+            private final Deque<String> pending = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                while (pending.isEmpty() && users.hasNext()) {
+                    User user = users.next();
+                    Integer userId = idsByEmail.get(user.getEmail());
+                    if (userId == null || !isLocal(userId)) {
+                        continue;
+                    }
+                    user.getRawFriendEmails().stream()
+                            .distinct()
+                            .filter(email -> idsByEmail.containsKey(email) && isLocal(idsByEmail.get(email)) == local)
+                            .forEach(email -> pending.add(local
+                                    ? csvRow(userId, idsByEmail.get(email))
+                                    : csvRow(userId, idsByEmail.get(email), email)));
+                }
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return pending.poll();
+            }
+        };
+    }
+
+    /**
+     * Retrieves the IDs of all users, keyed by their email address.
+     *
+     * @return a map from email address to user ID
+     */
+    public Map<String, Integer> getIdsByEmail() {
+        String sql = "SELECT id, email FROM \"User\"";
+
+        try (PreparedStatement statement = prepareRead(sql)) {
+            ResultSet resultSet = statement.executeQuery();
+
+            Map<String, Integer> idsByEmail = new HashMap<>();
+            while (resultSet.next()) {
+                idsByEmail.put(resultSet.getString("email"), resultSet.getInt("id"));
+            }
+
+            return idsByEmail;
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Moves the ID sequence of the user table past the highest stored ID,
+     * so that users created afterwards do not collide with copied IDs.
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    private void resetIdSequence() throws SQLException {
+        String sql = "SELECT setval(pg_get_serial_sequence('\"User\"', 'id'), " +
+                "COALESCE((SELECT MAX(id) FROM \"User\"), 0) + 1 + mod(? - mod(COALESCE((SELECT MAX(id) FROM \"User\"), 0) + 1, ?) + ?, ?), false)";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, shardIndex);
+            statement.setInt(2, shardCount);
+            statement.setInt(3, shardCount);
+            statement.setInt(4, shardCount);
+            statement.executeQuery();
+        }
+    }
+
+    /**
+     * Makes this database one shard of a {@link ShardedUserDBRepository}. The ID sequence is switched to step by
+     * the number of shards, starting from a value congruent to the shard index, so that the shard of a user can be
+     * told from its ID and IDs never collide across shards.
+     *
+     * @param shardIndex the index of this database among the shards
+     * @param shardCount the number of shards
+     */
+    void joinShards(int shardIndex, int shardCount) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        inTransaction(() -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DO $$ BEGIN EXECUTE format('ALTER SEQUENCE %s INCREMENT BY " + shardCount + "', " +
+                        "pg_get_serial_sequence('\"User\"', 'id')); END $$");
+            }
+            resetIdSequence();
+        });
+    }
+
+    /**
+     * Checks whether a user ID belongs to this shard.
+     */
+    private boolean isLocal(int id) {
+        return Math.floorMod(id, shardCount) == shardIndex;
+    }
+
+    /**
+     * Counts the users stored in the database.
+     *
+     * @return the number of users
+     */
+    public long count() {
+        String sql = "SELECT COUNT(*) FROM \"User\"";
+
+        try (PreparedStatement statement = prepareRead(sql)) {
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Retrieves a User entity from the database by its ID.
-     * Includes the user's friendships.
+     * Includes the user's friendships. The raw friend emails are taken from the loaded friends, so this costs
+     * two queries, plus one for the remote friend emails when the database is a shard.
      *
      * @param id the ID of the user to retrieve
      * @return the User object if found, null otherwise
@@ -71,25 +311,71 @@ public class UserDBRepository extends DBRepository<User> {
     public User get(Integer id) {
         String sql = "SELECT * FROM \"User\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             statement.setInt(1, id);
 
             ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                User user = extractFromResultSet(resultSet);
+            return resultSet.next() ? withFriends(extractFromResultSet(resultSet)) : null;
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
 
-                // Fetch the user's friends from the user_friends table
-                user.setFriends(getFriends(user.getId())); // Add friends to the user
-                user.setRawFriendEmails(getRawFriendEmails(user.getId())); // Set raw friend emails
-                return user;
-            } else {
-                return null;
-            }
+    /**
+     * Retrieves a User entity from the database by its email, through the unique email column rather than by
+     * reading every user. Includes the user's friendships, like {@link #get(Integer)}.
+     *
+     * @param email the email of the user to retrieve
+     * @return the User object if found, null otherwise
+     */
+    @Override
+    public User findByEmail(String email) {
+        String sql = "SELECT * FROM \"User\" WHERE email = ?";
+
+        try (PreparedStatement statement = prepareRead(sql)) {
+            statement.setString(1, email);
+
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? withFriends(extractFromResultSet(resultSet)) : null;
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the highest user ID stored in the database.
+     *
+     * @return the highest ID, or 0 if there are no users
+     */
+    @Override
+    public int getMaxId() {
+        String sql = "SELECT COALESCE(MAX(id), 0) FROM \"User\"";
+
+        try (PreparedStatement statement = prepareRead(sql)) {
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getInt(1);
         } catch (SQLException e) {
             throw new DatabaseException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Sets the friends of a user read from the database, and its raw friend emails taken from them.
+     */
+    private User withFriends(User user) {
+        // Fetch the user's friends from the user_friends table
+        List<User> friends = getFriends(user.getId());
+        List<String> emails = new ArrayList<>(friends.size());
+        friends.forEach(friend -> emails.add(friend.getEmail()));
+        if (shardCount > 1) {
+            getRemoteFriendEmails(user.getId()).values().forEach(emails::addAll);
+        }
+        user.setFriends(friends);
+        user.setRawFriendEmails(emails);
+        return user;
+    }
+
     /**
      * Updates an existing User entity in the database.
      * Also updates the user's friendships.
@@ -101,7 +387,7 @@ public class UserDBRepository extends DBRepository<User> {
         String sql = "UPDATE \"User\" SET name = ?, birthDate = ?, birthTime = ?, birthPlace = ?, " +
                 "email = ?, password = ? WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setString(1, obj.getName());
             statement.setDate(2, Date.valueOf(obj.getBirthDate()));
             statement.setTime(3, Time.valueOf(obj.getBirthTime()));
@@ -130,7 +416,7 @@ public class UserDBRepository extends DBRepository<User> {
     public void delete(Integer id) {
         String sql = "DELETE FROM \"User\" WHERE id = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setInt(1, id);
             statement.executeUpdate();
 
@@ -144,7 +430,9 @@ public class UserDBRepository extends DBRepository<User> {
 
     /**
      * Retrieves all User entities from the database.
-     * Includes their respective friendships.
+     * Includes their respective friendships, linking every user to the loaded instances of its friends.
+     * The whole friendship table is read in a single query rather than once per user, so this costs two
+     * queries, plus one for the remote friend emails when the database is a shard.
      *
      * @return a list of all User objects in the database
      */
@@ -152,25 +440,79 @@ public class UserDBRepository extends DBRepository<User> {
     public List<User> getAll() {
         String sql = "SELECT * FROM \"User\" ORDER BY birthdate";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             ResultSet resultSet = statement.executeQuery();
 
             List<User> users = new ArrayList<>();
+            Map<Integer, User> usersById = new HashMap<>();
             while (resultSet.next()) {
                 User user = extractFromResultSet(resultSet);
-
-                // Fetch the user's friends from the user_friends table
-                user.setFriends(getFriends(user.getId())); // Add friends to the user
-                user.setRawFriendEmails(getRawFriendEmails(user.getId())); // Set raw friend emails
                 users.add(user);
+                usersById.put(user.getId(), user);
             }
 
+            Map<Integer, List<User>> friends = new HashMap<>();
+            Map<Integer, List<String>> emails = new HashMap<>();
+            try (PreparedStatement friendships = prepareRead("SELECT userId, friendId FROM \"User_Friends\"")) {
+                ResultSet friendship = friendships.executeQuery();
+                while (friendship.next()) {
+                    int userId = friendship.getInt("userId");
+                    User friend = usersById.get(friendship.getInt("friendId"));
+                    if (friend != null && usersById.containsKey(userId)) {
+                        friends.computeIfAbsent(userId, key -> new ArrayList<>()).add(friend);
+                        emails.computeIfAbsent(userId, key -> new ArrayList<>()).add(friend.getEmail());
+                    }
+                }
+            }
+            if (shardCount > 1) {
+                getRemoteFriendEmails(null).forEach((userId, remoteEmails) ->
+                        emails.computeIfAbsent(userId, key -> new ArrayList<>()).addAll(remoteEmails));
+            }
+
+            for (User user : users) {
+                user.setFriends(friends.getOrDefault(user.getId(), List.of()));
+                user.setRawFriendEmails(emails.getOrDefault(user.getId(), List.of()));
+            }
             return users;
         } catch (SQLException e) {
             throw new DatabaseException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Streams all User entities, ordered by ID, with {@code COPY ... TO STDOUT}.
+     * The emails of each user's friends are aggregated by the server into the same row and set as raw friend
+     * emails; the friend objects themselves are not loaded, so the stream can walk the whole user table in
+     * constant memory.
+     *
+     * @return a lazy stream of users, which must be closed after use
+     */
+    @Override
+    public Stream<User> stream() {
+        String friendEmails = "SELECT f.email FROM \"User_Friends\" uf JOIN \"User\" f ON f.id = uf.friendId WHERE uf.userId = u.id";
+        if (shardCount > 1) {
+            friendEmails += " UNION ALL SELECT rf.friendEmail FROM \"User_RemoteFriends\" rf WHERE rf.userId = u.id";
+        }
+        String sql = "COPY (SELECT u.id, u.name, u.birthDate, u.birthTime, u.birthPlace, u.email, u.password, " +
+                "array_to_string(ARRAY(" + friendEmails + " ORDER BY 1), ',') " +
+                "FROM \"User\" u ORDER BY u.id) TO STDOUT";
+
+        return copyOut(sql).map(columns -> {
+            User user = new User(
+                    Integer.parseInt(columns[0]),
+                    columns[1],
+                    columns[2] == null ? null : LocalDate.parse(columns[2]),
+                    columns[3] == null ? null : LocalTime.parse(columns[3]),
+                    columns[4],
+                    columns[5],
+                    columns[6]);
+            if (!columns[7].isEmpty()) {
+                user.setRawFriendEmails(Arrays.asList(columns[7].split(",")));
+            }
+            return user;
+        });
+    }
+
     /**
      * Saves the friendships of a user in the database.
      * Ensures bidirectional friendships are stored.
@@ -180,8 +522,11 @@ public class UserDBRepository extends DBRepository<User> {
     private void saveFriendships(User user) {
         String sql = "INSERT INTO \"User_Friends\" (userId, friendId) VALUES (?, ?)";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             for (User friend : user.getFriends()) {
+                if (!isLocal(friend.getId())) {
+                    continue;
+                }
                 // Insert the friendship from user to friend
                 statement.setInt(1, user.getId());
                 statement.setInt(2, friend.getId());
@@ -191,6 +536,34 @@ public class UserDBRepository extends DBRepository<User> {
         } catch (SQLException e) {
             throw new DatabaseException(e.getMessage(), e);
         }
+
+        if (shardCount > 1) {
+            saveRemoteFriendships(user);
+        }
+    }
+
+    /**
+     * Saves the friendships of a user with users stored in other shards, along with the emails of those friends.
+     *
+     * @param user the User object whose friendships are to be saved
+     */
+    private void saveRemoteFriendships(User user) {
+        String sql = "INSERT INTO \"User_RemoteFriends\" (userId, friendId, friendEmail) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+
+        try (PreparedStatement statement = prepareWrite(sql)) {
+            for (User friend : user.getFriends()) {
+                if (isLocal(friend.getId())) {
+                    continue;
+                }
+                statement.setInt(1, user.getId());
+                statement.setInt(2, friend.getId());
+                statement.setString(3, friend.getEmail());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
     }
     /**
      * Updates the friendships of a user in the database.
@@ -214,13 +587,101 @@ public class UserDBRepository extends DBRepository<User> {
     private void deleteFriendships(Integer userId) {
         String sql = "DELETE FROM \"User_Friends\" WHERE userId = ? OR friendId = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareWrite(sql)) {
             statement.setInt(1, userId);
             statement.setInt(2, userId);
             statement.executeUpdate();
         } catch (SQLException e) {
             throw new DatabaseException(e.getMessage(), e);
         }
+
+        if (shardCount > 1) {
+            deleteRemoteFriendships("userId", userId);
+        }
+    }
+
+    /**
+     * Deletes the remote friendships where the given column, {@code userId} or {@code friendId}, matches a user.
+     *
+     * @param column the column to match
+     * @param userId the ID of the user
+     */
+    void deleteRemoteFriendships(String column, Integer userId) {
+        String sql = "DELETE FROM \"User_RemoteFriends\" WHERE " + column + " = ?";
+
+        try (PreparedStatement statement = prepareWrite(sql)) {
+            statement.setInt(1, userId);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Updates the email stored with the remote friendships pointing to a user of another shard.
+     *
+     * @param friendId the ID of the user
+     * @param email    the current email of the user
+     */
+    void renameRemoteFriend(Integer friendId, String email) {
+        String sql = "UPDATE \"User_RemoteFriends\" SET friendEmail = ? WHERE friendId = ? AND friendEmail <> ?";
+
+        try (PreparedStatement statement = prepareWrite(sql)) {
+            statement.setString(1, email);
+            statement.setInt(2, friendId);
+            statement.setString(3, email);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieves the IDs of the friends stored in other shards, for one user or for all users.
+     *
+     * @param userId the ID of the user, or {@code null} for all users
+     * @return the IDs of the remote friends, keyed by user ID
+     */
+    Map<Integer, List<Integer>> getRemoteFriendIds(Integer userId) {
+        String sql = "SELECT userId, friendId FROM \"User_RemoteFriends\"" + (userId == null ? "" : " WHERE userId = ?");
+
+        try (PreparedStatement statement = prepareRead(sql)) {
+            if (userId != null) {
+                statement.setInt(1, userId);
+            }
+            ResultSet resultSet = statement.executeQuery();
+
+            Map<Integer, List<Integer>> friendIds = new HashMap<>();
+            while (resultSet.next()) {
+                friendIds.computeIfAbsent(resultSet.getInt("userId"), id -> new ArrayList<>()).add(resultSet.getInt("friendId"));
+            }
+            return friendIds;
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieves users by their IDs, without their friendships.
+     *
+     * @param ids the IDs of the users
+     * @return the users found, in no particular order
+     */
+    List<User> getUsersByIds(Collection<Integer> ids) {
+        String sql = "SELECT * FROM \"User\" WHERE id = ANY(?)";
+
+        try (PreparedStatement statement = prepareRead(sql)) {
+            statement.setArray(1, statement.getConnection().createArrayOf("integer", ids.toArray()));
+            ResultSet resultSet = statement.executeQuery();
+
+            List<User> users = new ArrayList<>();
+            while (resultSet.next()) {
+                users.add(extractFromResultSet(resultSet));
+            }
+            return users;
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
     }
 
     /**
@@ -232,7 +693,7 @@ public class UserDBRepository extends DBRepository<User> {
     private List<User> getFriends(Integer userId) {
         String sql = "SELECT * FROM \"User\" u JOIN \"User_Friends\" uf ON u.id = uf.friendId WHERE uf.userId = ?";
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = prepareRead(sql)) {
             statement.setInt(1, userId);
             ResultSet resultSet = statement.executeQuery();
 
@@ -248,23 +709,24 @@ public class UserDBRepository extends DBRepository<User> {
     }
 
     /**
-     * Retrieves the email addresses of a user's friends from the database.
+     * Retrieves the emails kept with the friendships to users of other shards, for one user or for all users.
      *
-     * @param userId the ID of the user whose friends' emails are to be retrieved
-     * @return a list of email addresses of the user's friends
+     * @param userId the ID of the user, or {@code null} for all users
+     * @return the emails of the remote friends, keyed by user ID
      */
-    private List<String> getRawFriendEmails(Integer userId) {
-        String sql = "SELECT u.email FROM \"User_Friends\" uf JOIN \"User\" u ON u.id = uf.friendId WHERE uf.userId = ?";
+    private Map<Integer, List<String>> getRemoteFriendEmails(Integer userId) {
+        String sql = "SELECT userId, friendEmail FROM \"User_RemoteFriends\"" + (userId == null ? "" : " WHERE userId = ?");
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, userId);
+        try (PreparedStatement statement = prepareRead(sql)) {
+            if (userId != null) {
+                statement.setInt(1, userId);
+            }
             ResultSet resultSet = statement.executeQuery();
 
-            List<String> emails = new ArrayList<>();
+            Map<Integer, List<String>> emails = new HashMap<>();
             while (resultSet.next()) {
-                emails.add(resultSet.getString("email"));
+                emails.computeIfAbsent(resultSet.getInt("userId"), id -> new ArrayList<>()).add(resultSet.getString("friendEmail"));
             }
-
             return emails;
         } catch (SQLException e) {
             throw new DatabaseException(e.getMessage(), e);
@@ -1,9 +1,30 @@
 package org.starmatch.src.repository;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
 import org.starmatch.src.exceptions.DatabaseException;
 import org.starmatch.src.model.HasId;
 import org.starmatch.src.repository.Repository;
@@ -11,6 +32,15 @@ import org.starmatch.src.repository.Repository;
 /**
  * An abstract class for a database repository, managing the connection to a PostgreSQL database.
  * Provides a base for implementing repositories for different entity types.
+ * Every statement run through the statement cache, a cursor or a COPY is emitted as a {@link SqlStatementEvent}
+ * once the flight recorder has been started.
+ *
+ * <p>
+ * A repository may be used by several threads, which share its connection. A connection has one transaction at a
+ * time, so a thread running a transaction or a cursor holds the connection until it ends, and every statement on
+ * the primary connection waits for it: no statement of another thread runs inside the transaction. A stream must
+ * therefore be closed by the thread that opened it.
+ * </p>
  *
  * @param <T> the type of entities handled by the repository, must extend {@link HasId}.
  */
@@ -21,6 +51,26 @@ public abstract class DBRepository<T extends HasId> implements Repository<T>, Au
      */
     protected final Connection connection;
 
+    /**
+     * The router sending reads to replicas, or {@code null} if every statement goes to {@link #connection}.
+     */
+    private final ReplicaRouter replicaRouter;
+
+    /**
+     * The prepared statements of each connection used by this repository, keyed by SQL text.
+     */
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+
+    /**
+     * The lock of each connection, shared by the repositories and replica routers using the connection.
+     */
+    private static final Map<Connection, ReentrantLock> CONNECTION_LOCKS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * The lock of {@link #connection}, held by the thread running a transaction, a cursor or a statement on it.
+     */
+    private final ReentrantLock primaryLock;
+
     /**
      * Creates a new database repository and establishes a connection to the database.
      *
@@ -30,22 +80,512 @@ public abstract class DBRepository<T extends HasId> implements Repository<T>, Au
      * @throws DatabaseException if the database connection fails or the JDBC driver is not found.
      */
     public DBRepository(String dbUrl, String dbUser, String dbPassword) {
+        this(dbUrl, dbUser, dbPassword, null);
+    }
+
+    /**
+     * Creates a new database repository connected to a primary database, sending its reads through a replica router.
+     *
+     * @param dbUrl         the URL of the primary PostgreSQL database.
+     * @param dbUser        the username for database authentication.
+     * @param dbPassword    the password for database authentication.
+     * @param replicaRouter the router choosing the connection of each read, or {@code null} to read from the primary.
+     * @throws DatabaseException if the database connection fails or the JDBC driver is not found.
+     */
+    public DBRepository(String dbUrl, String dbUser, String dbPassword, ReplicaRouter replicaRouter) {
+        this(connect(dbUrl, dbUser, dbPassword), replicaRouter);
+    }
+
+    /**
+     * Creates a new database repository over an open connection, such as one counted by a {@link QueryCounter}.
+     * The repository closes the connection when it is closed.
+     *
+     * @param connection    the connection to the primary PostgreSQL database.
+     * @param replicaRouter the router choosing the connection of each read, or {@code null} to read from the primary.
+     */
+    protected DBRepository(Connection connection, ReplicaRouter replicaRouter) {
+        this.connection = connection;
+        this.replicaRouter = replicaRouter;
+        this.primaryLock = lockOf(connection);
+    }
+
+    /**
+     * Opens a connection to a PostgreSQL database.
+     *
+     * @throws DatabaseException if the database connection fails or the JDBC driver is not found.
+     */
+    protected static Connection connect(String dbUrl, String dbUser, String dbPassword) {
         try {
             // Register PostgreSQL JDBC driver
             Class.forName("org.postgresql.Driver");
-            connection = DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+            return DriverManager.getConnection(dbUrl, dbUser, dbPassword);
         } catch (SQLException | ClassNotFoundException e) {
             throw new DatabaseException("Failed to connect to PostgreSQL database", e);
         }
     }
 
     /**
-     * Closes the database connection.
+     * Gets the connection for a read. Without a replica router, or while the current thread holds the primary
+     * {@link #connection} for a transaction or a statement, this is the primary connection; otherwise the router
+     * picks a replica unless the session has just written.
+     *
+     * @return the connection to run the read on.
+     */
+    protected Connection readConnection() {
+        if (replicaRouter == null || primaryLock.isHeldByCurrentThread()) {
+            return connection;
+        }
+        return replicaRouter.route(connection);
+    }
+
+    /**
+     * Gets the connection for a write, which is always the primary {@link #connection}.
+     *
+     * @return the connection to run the write on.
+     */
+    protected Connection writeConnection() {
+        return connection;
+    }
+
+    /**
+     * Records a committed write with the replica router, so that the next reads of the session see it. A write
+     * made in auto-commit mode is committed once it ran; one made inside a transaction is recorded by
+     * {@link #inTransaction} after the commit.
+     */
+    private void recordCommittedWrite() {
+        if (replicaRouter == null) {
+            return;
+        }
+        try {
+            if (!connection.getAutoCommit()) {
+                return;
+            }
+        } catch (SQLException e) {
+            // Sticking to the primary is always safe
+        }
+        replicaRouter.recordWrite();
+    }
+
+    /**
+     * Prepares a read on the connection chosen by {@link #readConnection()}, reusing the statement cached for that
+     * connection if there is one. Closing the statement gives it back to the cache.
+     *
+     * @param sql the SQL text of the query.
+     * @return the prepared statement.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    protected PreparedStatement prepareRead(String sql) throws SQLException {
+        Connection read = readConnection();
+        if (read != connection) {
+            return statementCache(read).prepare(sql);
+        }
+        return preparePrimary(sql, Statement.NO_GENERATED_KEYS, null);
+    }
+
+    /**
+     * Prepares a write on the primary connection, reusing the cached statement if there is one. Closing the
+     * statement gives it back to the cache and records the write with the replica router, once it is committed.
+     *
+     * @param sql the SQL text of the statement.
+     * @return the prepared statement.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    protected PreparedStatement prepareWrite(String sql) throws SQLException {
+        return prepareWrite(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Prepares a write on the primary connection, reusing the cached statement if there is one. Closing the
+     * statement gives it back to the cache and records the write with the replica router, once it is committed.
+     *
+     * @param sql               the SQL text of the statement.
+     * @param autoGeneratedKeys whether generated keys are returned, {@link Statement#RETURN_GENERATED_KEYS} or
+     *                          {@link Statement#NO_GENERATED_KEYS}.
+     * @return the prepared statement.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    protected PreparedStatement prepareWrite(String sql, int autoGeneratedKeys) throws SQLException {
+        return preparePrimary(sql, autoGeneratedKeys, this::recordCommittedWrite);
+    }
+
+    /**
+     * Prepares a statement on the primary connection, holding the connection until the statement is closed.
+     */
+    private PreparedStatement preparePrimary(String sql, int autoGeneratedKeys, Runnable onClose) throws SQLException {
+        primaryLock.lock();
+        try {
+            return statementCache(connection).prepare(sql, autoGeneratedKeys, () -> {
+                try {
+                    if (onClose != null) {
+                        onClose.run();
+                    }
+                } finally {
+                    primaryLock.unlock();
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            primaryLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the lock of a connection, created on first use.
+     */
+    private static ReentrantLock lockOf(Connection connection) {
+        return CONNECTION_LOCKS.computeIfAbsent(connection, c -> new ReentrantLock());
+    }
+
+    private StatementCache statementCache(Connection connection) {
+        return statementCaches.computeIfAbsent(connection, c -> new StatementCache(c, StatementCache.DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Number of rows fetched per round trip when streaming through a cursor.
+     */
+    protected static final int CURSOR_FETCH_SIZE = 1000;
+
+    /**
+     * Maps the current row of a {@link ResultSet} to an object.
+     *
+     * @param <R> the type of the mapped object.
+     */
+    @FunctionalInterface
+    protected interface RowMapper<R> {
+        R map(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Streams the rows of a query through a server-side cursor, fetching {@link #CURSOR_FETCH_SIZE} rows at a time.
+     * PostgreSQL only keeps a cursor open inside a transaction, so auto-commit is switched off and the connection is
+     * held by the current thread until the stream is closed, which commits the transaction and switches auto-commit
+     * back on. Inside a transaction of the current thread, the cursor runs in it, and that transaction is left open.
+     *
+     * @param sql    the query to execute.
+     * @param mapper the mapper converting each row to an object.
+     * @param <R>    the type of the streamed objects.
+     * @return a lazy stream over the query results, which must be closed after use.
+     * @throws DatabaseException if the query cannot be executed.
+     */
+    protected <R> Stream<R> streamQuery(String sql, RowMapper<R> mapper) {
+        SqlStatementEvent event = beginStatementEvent();
+        Connection connection = readConnection();
+        ReentrantLock lock = lockOf(connection);
+        lock.lock();
+        boolean ownTransaction = false;
+        PreparedStatement statement = null;
+        try {
+            ownTransaction = connection.getAutoCommit();
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            }
+            statement = connection.prepareStatement(sql);
+            statement.setFetchSize(CURSOR_FETCH_SIZE);
+            ResultSet resultSet = statement.executeQuery();
+            PreparedStatement openStatement = statement;
+            boolean endsTransaction = ownTransaction;
+            long[] count = new long[1];
+
+            Spliterator<R> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super R> action) {
+                    try {
+                        if (!resultSet.next()) {
+                            return false;
+                        }
+                        count[0]++;
+                        action.accept(mapper.map(resultSet));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new DatabaseException(e.getMessage(), e);
+                    }
+                }
+            };
+
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                commit(event, sql, "executeQuery", count[0], false);
+                try {
+                    resultSet.close();
+                    openStatement.close();
+                    if (endsTransaction) {
+                        connection.commit();
+                        connection.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    throw new DatabaseException(e.getMessage(), e);
+                } finally {
+                    lock.unlock();
+                }
+            });
+        } catch (SQLException e) {
+            try {
+                if (statement != null) {
+                    statement.close();
+                }
+                if (ownTransaction && !connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException cleanupFailure) {
+                e.addSuppressed(cleanupFailure);
+            } finally {
+                lock.unlock();
+            }
+            commit(event, sql, "executeQuery", -1, true);
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Begins a {@link SqlStatementEvent}. When no recording enables the event, its methods do nothing and the JIT
+     * removes the allocation once this is inlined.
+     *
+     * @return the event
+     */
+    static SqlStatementEvent beginStatementEvent() {
+        SqlStatementEvent event = new SqlStatementEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a {@link SqlStatementEvent} and commits it if the flight recorder records it.
+     *
+     * @param event the event
+     */
+    static void commit(SqlStatementEvent event, String sql, String method, long rows, boolean failed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.sql = sql;
+            event.method = method;
+            event.rows = rows;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+
+    /**
+     * A unit of database work that may throw {@link SQLException}.
+     */
+    @FunctionalInterface
+    protected interface SQLWork {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Runs the given work in a single transaction, rolling it back if any statement fails. The current thread holds
+     * the connection until the transaction ends, so the statements of other threads wait instead of joining it.
+     * When the current thread already has a transaction open, the work joins it: the caller that opened the
+     * transaction commits or rolls it back.
+     *
+     * @param work the statements to run.
+     * @throws DatabaseException if the work or the commit fails.
+     */
+    protected void inTransaction(SQLWork work) {
+        primaryLock.lock();
+        try {
+            if (!connection.getAutoCommit()) {
+                work.run();
+                return;
+            }
+            connection.setAutoCommit(false);
+            try {
+                work.run();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            recordCommittedWrite();
+        } catch (SQLException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        } finally {
+            primaryLock.unlock();
+        }
+    }
+
+    /**
+     * Number of characters buffered before they are sent to the server during a COPY.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Gets the PgJDBC COPY API of the connection.
+     *
+     * @return the copy manager of the underlying PostgreSQL connection.
+     * @throws SQLException if the connection is not a PostgreSQL connection.
+     */
+    protected CopyManager copyManager() throws SQLException {
+        return copyManager(connection);
+    }
+
+    private static CopyManager copyManager(Connection connection) throws SQLException {
+        return connection.unwrap(PGConnection.class).getCopyAPI();
+    }
+
+    /**
+     * Streams rows into a table with {@code COPY ... FROM STDIN}, sending them to the server in large chunks.
+     *
+     * @param copySql the COPY statement, which must use {@code FORMAT csv}.
+     * @param rows    the rows to send, each one a line built with {@link #csvRow(Object...)}.
+     * @return the number of rows copied.
+     * @throws SQLException if the copy fails; the copy is cancelled in that case.
+     */
+    protected long copyIn(String copySql, Iterator<String> rows) throws SQLException {
+        SqlStatementEvent event = beginStatementEvent();
+        long copied = -1;
+        CopyIn copyIn = null;
+        try {
+            copyIn = copyManager(writeConnection()).copyIn(copySql);
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 1024);
+            while (rows.hasNext()) {
+                buffer.append(rows.next()).append('\n');
+                if (buffer.length() >= COPY_BUFFER_SIZE) {
+                    writeToCopy(copyIn, buffer);
+                }
+            }
+            writeToCopy(copyIn, buffer);
+            copied = copyIn.endCopy();
+            recordCommittedWrite();
+            return copied;
+        } finally {
+            if (copyIn != null && copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+            commit(event, copySql, "copyIn", copied, copied < 0);
+        }
+    }
+
+    private static void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Streams the rows produced by {@code COPY ... TO STDOUT} in PostgreSQL's default text format.
+     * Only one row is held in memory at a time.
+     *
+     * @param copySql the COPY statement, which must use the text format.
+     * @return a lazy stream of rows, each one an array of column values ({@code null} for SQL NULL),
+     *         which must be closed after use.
+     * @throws DatabaseException if the copy cannot be started or fails while reading.
+     */
+    protected Stream<String[]> copyOut(String copySql) {
+        SqlStatementEvent event = beginStatementEvent();
+        try {
+            CopyOut copyOut = copyManager(readConnection()).copyOut(copySql);
+            long[] count = new long[1];
+
+            Spliterator<String[]> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super String[]> action) {
+                    try {
+                        byte[] row = copyOut.readFromCopy();
+                        if (row == null) {
+                            return false;
+                        }
+                        count[0]++;
+                        action.accept(decodeTextRow(new String(row, StandardCharsets.UTF_8)));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new DatabaseException(e.getMessage(), e);
+                    }
+                }
+            };
+
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                commit(event, copySql, "copyOut", count[0], false);
+                try {
+                    if (copyOut.isActive()) {
+                        copyOut.cancelCopy();
+                    }
+                } catch (SQLException e) {
+                    throw new DatabaseException(e.getMessage(), e);
+                }
+            });
+        } catch (SQLException e) {
+            commit(event, copySql, "copyOut", -1, true);
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Splits a row of the COPY text format into its columns, undoing the backslash escapes.
+     *
+     * @param row the row, with or without its line terminator.
+     * @return the column values, {@code null} for {@code \N}.
+     */
+    static String[] decodeTextRow(String row) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean isNull = false;
+        int end = row.endsWith("\n") ? row.length() - 1 : row.length();
+
+        for (int i = 0; i <= end; i++) {
+            if (i == end || row.charAt(i) == '\t') {
+                columns.add(isNull ? null : column.toString());
+                column.setLength(0);
+                isNull = false;
+                continue;
+            }
+            char c = row.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                column.append(c);
+                continue;
+            }
+            char escaped = row.charAt(++i);
+            switch (escaped) {
+                case 'N' -> isNull = true;
+                case 'b' -> column.append('\b');
+                case 'f' -> column.append('\f');
+                case 'n' -> column.append('\n');
+                case 'r' -> column.append('\r');
+                case 't' -> column.append('\t');
+                case 'v' -> column.append('\u000B');
+                default -> column.append(escaped);
+            }
+        }
+        return columns.toArray(new String[0]);
+    }
+
+    /**
+     * Builds one row in the CSV format understood by {@code COPY ... WITH (FORMAT csv)}.
+     * {@code null} values are written as unquoted empty fields, which COPY reads as NULL.
+     *
+     * @param values the column values of the row.
+     * @return the CSV line, without the line terminator.
+     */
+    protected static String csvRow(Object... values) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                row.append(',');
+            }
+            if (values[i] == null) {
+                continue;
+            }
+            String value = values[i].toString();
+            if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                row.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                row.append(value);
+            }
+        }
+        return row.toString();
+    }
+
+    /**
+     * Closes the cached statements and the database connection.
      *
-     * @throws Exception if an error occurs while closing the connection.
+     * @throws SQLException if an error occurs while closing the connection.
      */
     @Override
-    public void close() throws Exception {
+    public void close() throws SQLException {
+        statementCaches.values().forEach(StatementCache::close);
         connection.close();
     }
 }
@@ -0,0 +1,19 @@
+package org.starmatch.src.repository;
+
+import org.starmatch.src.model.User;
+
+import java.util.Iterator;
+
+/**
+ * A user store that keeps friendships apart from the users and can copy them in bulk once the users are stored.
+ */
+public interface FriendshipCopier {
+    /**
+     * Copies the friendships of users that are already stored, resolving their raw friend emails against all
+     * stored users. Emails that do not belong to any user are skipped.
+     *
+     * @param users the users whose raw friend emails are to be stored as friendships
+     * @return the number of friendships copied
+     */
+    long copyFriendships(Iterator<User> users);
+}
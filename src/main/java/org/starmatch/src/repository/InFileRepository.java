@@ -1,14 +1,21 @@
 package org.starmatch.src.repository;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.starmatch.src.model.*;
 
 public class InFileRepository<T extends HasId> implements Repository<T> {
-    private final String filePath;
-    private final Class<T> entityClass;
+    protected final String filePath;
+    protected final Class<T> entityClass;
 
     /**
      * Constructs a new FileRepository with the specified file path.
@@ -29,6 +36,29 @@ public class InFileRepository<T extends HasId> implements Repository<T> {
         doInFile(data -> data.putIfAbsent(obj.getId(), obj));
     }
 
+    /**
+     * {@inheritDoc}
+     * The file is read and rewritten only once for the whole batch.
+     */
+    @Override
+    public void createAll(Collection<T> objs) {
+        doInFile(data -> objs.forEach(obj -> data.putIfAbsent(obj.getId(), obj)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The file is read and rewritten only once, whatever the number of objects, so the batch size is not used.
+     */
+    @Override
+    public long createAll(Iterator<? extends T> objs, int batchSize) {
+        long[] read = new long[1];
+        doInFile(data -> objs.forEachRemaining(obj -> {
+            data.putIfAbsent(obj.getId(), obj);
+            read[0]++;
+        }));
+        return read[0];
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -61,6 +91,24 @@ public class InFileRepository<T extends HasId> implements Repository<T> {
         return new ArrayList<>(readDataFromFile().values());
     }
 
+    /**
+     * {@inheritDoc}
+     * The file is parsed with a {@link ParallelCsvLoader}, one range of lines at a time while the stream is consumed.
+     * Friends are not resolved, only the raw friend emails of users are set.
+     */
+    @Override
+    public Stream<T> stream() {
+        File file = new File(filePath);
+        if (!file.exists()) return Stream.empty();
+
+        try {
+            return new ParallelCsvLoader<>(entityClass).stream(file.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Stream.empty();
+        }
+    }
+
     /**
      * Performs an operation on the data stored in the file.
      *
@@ -73,74 +121,98 @@ public class InFileRepository<T extends HasId> implements Repository<T> {
     }
 
     /**
-     * Reads the data from the file.
+     * Reads the data from the file with a {@link ParallelCsvLoader}, which parses large files on several threads.
      *
      * @return The data stored in the file, or an empty map if the file is empty or does not exist.
      */
-    private Map<Integer, T> readDataFromFile() {
-        Map<Integer, T> data = new HashMap<>();
+    protected Map<Integer, T> readDataFromFile() {
         File file = new File(filePath);
 
-        if (!file.exists() || file.length() == 0) return data;
-
-        List<User> allUsers = new ArrayList<>();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] fields = line.split(",");
-                if (fields.length == 0 || fields[0].isEmpty()) {
-                    continue;
-                }
-
-                try {
-                    Integer id = Integer.parseInt(fields[0]);
-                    T obj = createObjectFromFields(fields);
-                    if (obj != null) {
-                        data.put(id, obj);
-
-                        if (obj instanceof User user) {
-                            allUsers.add(user);
-                        }
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+        if (!file.exists() || file.length() == 0) return new HashMap<>();
 
-            for (User user : allUsers) {
-                List<User> resolvedFriends = user.getRawFriendEmails().stream()
-                        .map(email -> allUsers.stream()
-                                .filter(u -> u.getEmail().equals(email))
-                                .findFirst()
-                                .orElse(null))
-                        .filter(Objects::nonNull)
-                        .toList();
-                user.setFriends(resolvedFriends);
-            }
+        try {
+            return new ParallelCsvLoader<>(entityClass).load(file.toPath());
         } catch (IOException e) {
             e.printStackTrace();
+            return new HashMap<>();
         }
+    }
 
-        return data;
+    /**
+     * Registers a user in the email index of the file and lets it resolve its friends through that index.
+     * Friends are only looked up when {@link User#getFriends()} is first called, once the whole file has been read.
+     *
+     * @param user         The user read from the file.
+     * @param usersByEmail The users read so far, by email.
+     */
+    protected static void linkFriends(User user, Map<String, User> usersByEmail) {
+        usersByEmail.putIfAbsent(user.getEmail(), user);
+        user.setFriendResolver(usersByEmail::get);
     }
 
     /**
-     * Writes the data to the file.
+     * Writes the data to the file, replacing it atomically. The file is not forced to disk, which would cost a
+     * device flush on every mutation; {@link WriteBehindFileRepository} forces its log and file as its
+     * {@link WriteBehindFileRepository.FsyncPolicy} asks.
      *
      * @param data The data to write to the file.
      */
-    private void writeDataToFile(Map<Integer, T> data) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath))) {
+    protected void writeDataToFile(Map<Integer, T> data) {
+        try {
+            writeSnapshot(data, false);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + filePath);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Replaces the content of the file with the data, through {@link #replaceFile}.
+     *
+     * @param data  The data to write to the file.
+     * @param force Whether the new content is forced to disk before it replaces the file.
+     * @throws IOException if the file cannot be written; the previous content is then left untouched.
+     */
+    protected void writeSnapshot(Map<Integer, T> data, boolean force) throws IOException {
+        replaceFile(out -> {
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out));
             for (T obj : data.values()) {
                 String line = convertObjectToLine(obj);
                 bw.write(line);
                 bw.newLine();
             }
-        } catch (IOException e) {
-            System.err.println("Error writing to file: " + filePath);
-            e.printStackTrace();
+            bw.flush();
+        }, force);
+    }
+
+    /**
+     * Writes new content for the file into a temporary file next to it, then moves it over the file atomically.
+     * A crash while writing leaves the previous content in place instead of a truncated file.
+     *
+     * @param writer The function writing the new content.
+     * @param force  Whether the temporary file is forced to disk before the move.
+     * @throws IOException if the content cannot be written or moved.
+     */
+    protected void replaceFile(ContentWriter writer, boolean force) throws IOException {
+        Path target = Path.of(filePath);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16)) {
+            writer.write(out);
+            out.flush();
+            if (force) {
+                channel.force(true);
+            }
         }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the content of a file to a stream.
+     */
+    @FunctionalInterface
+    protected interface ContentWriter {
+        void write(OutputStream out) throws IOException;
     }
 
     /**
@@ -152,28 +224,4 @@ public class InFileRepository<T extends HasId> implements Repository<T> {
     private String convertObjectToLine(T obj) {
         return obj.convertObjectToLine();
     }
-
-    /**
-     * Creates an object from the CSV fields by invoking the `createObjectFromFields` method.
-     * This assumes that the class T implements `HasId` and provides this static method.
-     *
-     * @param fields The fields from the CSV line.
-     * @return A new instance of T created from the fields, or null if creation fails.
-     */
-    private T createObjectFromFields(String[] fields) {
-        try {
-            return switch (entityClass.getSimpleName()) {
-                case "User" -> (T) User.createObjectFromFields(fields);
-                case "Quote" -> (T) Quote.createObjectFromFields(fields);
-                case "StarSign" -> (T) StarSign.createObjectFromFields(fields);
-                case "Admin" -> (T) Admin.createObjectFromFields(fields);
-                case "Trait" -> (T) Trait.createObjectFromFields(fields);
-                default -> null;
-            };
-        } catch (Exception e) {
-            System.err.println("Error invoking createObjectFromFields for class: " + entityClass.getName());
-            e.printStackTrace();
-            return null;
-        }
-    }
 }
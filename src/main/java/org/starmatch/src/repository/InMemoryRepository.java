@@ -1,25 +1,36 @@
 package org.starmatch.src.repository;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
+import org.starmatch.src.model.HasEmail;
 import org.starmatch.src.model.HasId;
 
 /**
- * A repository implementation that stores data in memory.
+ * A repository implementation that stores data in memory, in a concurrent map so that several threads can use it.
+ * The objects stored are handed out as they are, not copied.
+ * <p>
+ * Objects with an email are also indexed by email. As the stored objects may be changed in place, an object is
+ * indexed under its email when it is created or updated, and an index entry is only trusted if the object still
+ * has that email and is still the one stored under its ID.
+ * </p>
  *
  * @param <T> The type of objects stored in the repository, which must implement HasId.
  */
 public class InMemoryRepository<T extends HasId> implements Repository<T> {
-    private final Map<Integer, T> data = new HashMap<>();
+    private final Map<Integer, T> data = new ConcurrentHashMap<>();
+    private final Map<String, T> dataByEmail = new ConcurrentHashMap<>();
 
     /**
      * {@inheritDoc}
      */
     @Override
     public void create(T obj) {
-        data.putIfAbsent(obj.getId(), obj);
+        if (data.putIfAbsent(obj.getId(), obj) == null) {
+            index(obj);
+        }
     }
 
     /**
@@ -35,7 +46,9 @@ public class InMemoryRepository<T extends HasId> implements Repository<T> {
      */
     @Override
     public void update(T obj) {
-        data.replace(obj.getId(), obj);
+        if (data.replace(obj.getId(), obj) != null) {
+            index(obj);
+        }
     }
 
     /**
@@ -43,7 +56,10 @@ public class InMemoryRepository<T extends HasId> implements Repository<T> {
      */
     @Override
     public void delete(Integer id) {
-        data.remove(id);
+        T removed = data.remove(id);
+        if (removed instanceof HasEmail withEmail) {
+            dataByEmail.remove(withEmail.getEmail(), removed);
+        }
     }
 
     /**
@@ -53,4 +69,47 @@ public class InMemoryRepository<T extends HasId> implements Repository<T> {
     public List<T> getAll() {
         return data.values().stream().toList();
     }
-}
\ No newline at end of file
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<T> stream() {
+        return data.values().stream();
+    }
+
+    /**
+     * Finds an object through the email index. Entries left behind by an email changed in place are dropped.
+     *
+     * @param email The email of the object.
+     * @return The object with the email, or null if there is none.
+     */
+    @Override
+    public T findByEmail(String email) {
+        T obj = email == null ? null : dataByEmail.get(email);
+        if (obj == null) {
+            return null;
+        }
+        if (!email.equals(((HasEmail) obj).getEmail()) || data.get(obj.getId()) != obj) {
+            dataByEmail.remove(email, obj);
+            return null;
+        }
+        return obj;
+    }
+
+    /**
+     * Gets the highest ID from the keys of the map, without reading the objects.
+     *
+     * @return The highest ID, or 0 if the repository is empty.
+     */
+    @Override
+    public int getMaxId() {
+        return data.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    private void index(T obj) {
+        if (obj instanceof HasEmail withEmail && withEmail.getEmail() != null) {
+            dataByEmail.put(withEmail.getEmail(), obj);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.starmatch.src.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.starmatch.src.model.*;
+
+/**
+ * Loads the CSV file of a file repository on the common fork-join pool.
+ * <p>
+ * The file is split into byte ranges of roughly equal size, each one moved forward to start right after a line
+ * break. Every range is read and parsed by its own task with a {@link CsvTokenizer}, and the entities of all
+ * ranges are then merged into the ID map in file order, so that a later line for the same ID wins as it does
+ * with a sequential read. Files smaller than {@link #MIN_CHUNK_SIZE} are parsed in a single range.
+ * </p>
+ *
+ * @param <T> The type of entities stored in the file.
+ */
+public class ParallelCsvLoader<T extends HasId> {
+    /**
+     * Smallest number of bytes parsed by one task.
+     */
+    public static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    private static final int MAX_CHUNK_SIZE = 64 << 20;
+    private static final int LINE_SEARCH_SIZE = 4096;
+
+    private final Class<T> entityClass;
+
+    /**
+     * Creates a loader for files of the given entity class.
+     *
+     * @param entityClass The class of the entities stored in the files.
+     */
+    public ParallelCsvLoader(Class<T> entityClass) {
+        this.entityClass = entityClass;
+    }
+
+    /**
+     * Loads a CSV file. Lines that cannot be parsed are reported and skipped.
+     * Users are linked to their friends through {@link InFileRepository#linkFriends}.
+     *
+     * @param file The file to load.
+     * @return The entities of the file, by ID.
+     * @throws IOException if the file cannot be read.
+     */
+    public Map<Integer, T> load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> ranges = split(channel);
+            List<List<T>> chunks;
+            try {
+                chunks = (ranges.size() == 1 ? ranges.stream() : ranges.parallelStream())
+                        .map(range -> parseRange(channel, range[0], range[1]))
+                        .toList();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int count = chunks.stream().mapToInt(List::size).sum();
+            Map<Integer, T> data = HashMap.newHashMap(count);
+            Map<String, User> usersByEmail = entityClass == User.class ? HashMap.newHashMap(count) : null;
+            for (List<T> chunk : chunks) {
+                for (T obj : chunk) {
+                    data.put(obj.getId(), obj);
+                    if (obj instanceof User user) {
+                        InFileRepository.linkFriends(user, usersByEmail);
+                    }
+                }
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Streams the entities of a CSV file, reading and parsing it one range of {@link #MIN_CHUNK_SIZE} bytes at a
+     * time as the stream is consumed. Lines that cannot be parsed are reported and skipped. Users are not linked to
+     * their friends, only their raw friend emails are set.
+     *
+     * @param file The file to stream.
+     * @return A lazy stream over the entities of the file, in file order, which must be closed after use.
+     * @throws IOException if the file cannot be opened.
+     */
+    public Stream<T> stream(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            return Stream.iterate(nextRange(channel, 0, size), range -> range[0] < size, range -> nextRange(channel, range[1], size))
+                    .flatMap(range -> parseRange(channel, range[0], range[1]).stream())
+                    .onClose(() -> {
+                        try {
+                            channel.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the range of about {@link #MIN_CHUNK_SIZE} bytes starting at a position, ending right after a line break.
+     */
+    private static long[] nextRange(FileChannel channel, long start, long size) {
+        try {
+            long end = start + MIN_CHUNK_SIZE >= size ? size : nextLineStart(channel, start + MIN_CHUNK_SIZE, size);
+            return new long[]{start, end};
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Splits the file into ranges, one per worker of the common pool, each one starting at the beginning of a line.
+     */
+    private List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, (size + parallelism - 1) / parallelism));
+
+        List<long[]> ranges = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize, size);
+            ranges.add(new long[]{start, end});
+            start = end;
+        }
+        if (ranges.isEmpty()) {
+            ranges.add(new long[]{0, 0});
+        }
+        return ranges;
+    }
+
+    /**
+     * Finds the position right after the first line break at or after a position.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LINE_SEARCH_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Reads a range of the file and parses its lines.
+     */
+    private List<T> parseRange(FileChannel channel, long start, long end) {
+        byte[] bytes = new byte[Math.toIntExact(end - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) break;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<T> objs = new ArrayList<>();
+        CsvTokenizer tokenizer = new CsvTokenizer(bytes);
+        int lineStart = 0;
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') lineEnd++;
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') lineEnd--;
+
+            if (lineEnd > lineStart && bytes[lineStart] != ',') {
+                tokenizer.line(lineStart, lineEnd);
+                try {
+                    objs.add(parse(tokenizer));
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping invalid line in " + entityClass.getSimpleName() + " file: "
+                            + new String(bytes, lineStart, lineEnd - lineStart));
+                    e.printStackTrace();
+                }
+            }
+            lineStart = next;
+        }
+        return objs;
+    }
+
+    /**
+     * Parses one line in the format written by the {@code convertObjectToLine} method of the entity class.
+     */
+    @SuppressWarnings("unchecked")
+    private T parse(CsvTokenizer tokenizer) {
+        return (T) switch (entityClass.getSimpleName()) {
+            case "User" -> parseUser(tokenizer);
+            case "Quote" -> new Quote(tokenizer.nextInt(), tokenizer.nextElement(), tokenizer.nextString());
+            case "StarSign" -> parseStarSign(tokenizer);
+            case "Admin" -> new Admin(tokenizer.nextInt(), tokenizer.nextString(), tokenizer.nextString(), tokenizer.nextString());
+            case "Trait" -> {
+                int id = tokenizer.nextInt();
+                Element element = tokenizer.nextElement();
+                yield new Trait(element, tokenizer.nextString(), id);
+            }
+            default -> throw new IllegalArgumentException("No CSV format for " + entityClass.getName());
+        };
+    }
+
+    private static User parseUser(CsvTokenizer tokenizer) {
+        int id = tokenizer.nextInt();
+        String name = tokenizer.nextString();
+        String email = tokenizer.nextString();
+        String password = tokenizer.nextString();
+        LocalDate birthDate = tokenizer.nextDate();
+        LocalTime birthTime = tokenizer.nextTime();
+        String birthPlace = tokenizer.nextString();
+        User user = new User(id, name, birthDate, birthTime, birthPlace, email, password);
+
+        List<String> friendEmails = remainingFields(tokenizer);
+        if (!friendEmails.isEmpty() && !friendEmails.getFirst().isEmpty()) {
+            user.setRawFriendEmails(friendEmails);
+        }
+        return user;
+    }
+
+    private static StarSign parseStarSign(CsvTokenizer tokenizer) {
+        int id = tokenizer.nextInt();
+        String starName = tokenizer.nextString();
+        Element element = tokenizer.nextElement();
+        List<Trait> traits = new ArrayList<>();
+        for (String traitName : remainingFields(tokenizer)) {
+            traits.add(new Trait(element, traitName, null));
+        }
+        return new StarSign(starName, element, traits, id);
+    }
+
+    /**
+     * Reads the remaining fields of the line, trimmed, dropping trailing empty fields like {@link String#split} does.
+     */
+    private static List<String> remainingFields(CsvTokenizer tokenizer) {
+        List<String> fields = new ArrayList<>();
+        while (tokenizer.hasNext()) {
+            fields.add(tokenizer.nextTrimmedString());
+        }
+        while (!fields.isEmpty() && fields.getLast().isEmpty()) {
+            fields.removeLast();
+        }
+        return fields;
+    }
+}
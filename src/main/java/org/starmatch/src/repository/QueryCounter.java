@@ -0,0 +1,188 @@
+package org.starmatch.src.repository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the SQL statements and database round trips made through JDBC connections, to find and guard against
+ * N+1 query patterns.
+ * <p>
+ * {@link #wrap(Connection)} returns a proxy of a connection whose statements report every execution to the
+ * counter. An execution, including a whole batch, counts as one statement and one round trip; commits and
+ * rollbacks count as round trips only. Rows fetched by a cursor in several chunks and {@code COPY} transfers are
+ * not counted.
+ * </p>
+ * <p>
+ * Besides the running totals, {@link #record()} captures the statements of one logical operation on the current
+ * thread:
+ * </p>
+ * <pre>{@code
+ * try (QueryCounter.Recording recording = counter.record()) {
+ *     userRepository.getAll();
+ *     assert recording.getStatementCount() <= 2 : recording.getStatements();
+ * }
+ * }</pre>
+ */
+public class QueryCounter {
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+    private final ThreadLocal<Recording> recording = new ThreadLocal<>();
+
+    /**
+     * Wraps a connection so that the statements run through it are counted.
+     *
+     * @param connection the connection to count
+     * @return the counting proxy of the connection
+     */
+    public Connection wrap(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            switch (method.getName()) {
+                case "createStatement" -> {
+                    return countingStatement(Statement.class, (Statement) result, null, (Connection) proxy);
+                }
+                case "prepareStatement" -> {
+                    return countingStatement(PreparedStatement.class, (PreparedStatement) result, (String) args[0], (Connection) proxy);
+                }
+                case "commit", "rollback" -> roundTrip(null);
+                default -> {
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Starts recording the statements run by the current thread. Recordings do not nest; starting one replaces the
+     * current one until it is closed.
+     *
+     * @return the recording, to close once the operation is over
+     */
+    public Recording record() {
+        Recording started = new Recording(recording.get());
+        recording.set(started);
+        return started;
+    }
+
+    /**
+     * Gets the number of statements run through the wrapped connections since the last reset.
+     *
+     * @return the statement count
+     */
+    public long getStatementCount() {
+        return statements.sum();
+    }
+
+    /**
+     * Gets the number of round trips to the database made through the wrapped connections since the last reset.
+     *
+     * @return the round trip count
+     */
+    public long getRoundTripCount() {
+        return roundTrips.sum();
+    }
+
+    /**
+     * Sets the running totals back to zero.
+     */
+    public void reset() {
+        statements.reset();
+        roundTrips.reset();
+    }
+
+    private <S extends Statement> S countingStatement(Class<S> type, S statement, String preparedSql, Connection connection) {
+        return proxy(type, statement, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.equals("getConnection")) {
+                return connection;
+            }
+            Object result = invoke(statement, method, args);
+            if (name.startsWith("execute")) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : preparedSql;
+                statements.increment();
+                roundTrip(name.equals("executeBatch") ? "[batch] " + sql : sql);
+            }
+            return result;
+        });
+    }
+
+    private void roundTrip(String sql) {
+        roundTrips.increment();
+        Recording current = recording.get();
+        if (current != null) {
+            current.roundTrips++;
+            if (sql != null) {
+                current.statements.add(sql);
+            }
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * The statements run by one thread during a logical operation.
+     */
+    public final class Recording implements AutoCloseable {
+        private final Recording previous;
+        private final List<String> statements = new ArrayList<>();
+        private long roundTrips;
+
+        private Recording(Recording previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Gets the number of statements run since the recording started.
+         *
+         * @return the statement count
+         */
+        public int getStatementCount() {
+            return statements.size();
+        }
+
+        /**
+         * Gets the number of round trips made since the recording started.
+         *
+         * @return the round trip count
+         */
+        public long getRoundTripCount() {
+            return roundTrips;
+        }
+
+        /**
+         * Gets the SQL of the statements run since the recording started, in order.
+         *
+         * @return the SQL texts
+         */
+        public List<String> getStatements() {
+            return List.copyOf(statements);
+        }
+
+        /**
+         * Stops the recording, restoring the one it replaced.
+         */
+        @Override
+        public void close() {
+            recording.set(previous);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.starmatch.src.repository;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.starmatch.src.model.*;
+
+/**
+ * Encodes entities as compact binary records.
+ * <p>
+ * Strings are written as a length-prefixed UTF-8 byte sequence (length -1 for {@code null}), dates as epoch days,
+ * times as seconds of the day and elements as their ordinal. Records are written through {@link DataOutput}
+ * and decoded from a {@link ByteBuffer}, so reading never splits or parses text.
+ * </p>
+ *
+ * @param <T> The type of entities handled by the codec.
+ */
+public abstract class RecordCodec<T extends HasId> {
+    private static final int NULL = -1;
+
+    /**
+     * Writes one entity.
+     *
+     * @param obj The entity to write.
+     * @param out The output receiving the encoded record.
+     * @throws IOException if the output cannot be written.
+     */
+    public abstract void write(T obj, DataOutput out) throws IOException;
+
+    /**
+     * Reads one entity, advancing the position of the buffer past the record.
+     *
+     * @param in The buffer positioned at the start of a record.
+     * @return The decoded entity.
+     */
+    public abstract T read(ByteBuffer in);
+
+    /**
+     * Gets the codec for an entity class.
+     *
+     * @param entityClass The class of the entities.
+     * @param <T>         The type of the entities.
+     * @return The codec for that class.
+     * @throws IllegalArgumentException if there is no codec for the class.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends HasId> RecordCodec<T> forClass(Class<T> entityClass) {
+        return (RecordCodec<T>) switch (entityClass.getSimpleName()) {
+            case "User" -> USER;
+            case "Quote" -> QUOTE;
+            case "StarSign" -> STAR_SIGN;
+            case "Admin" -> ADMIN;
+            case "Trait" -> TRAIT;
+            default -> throw new IllegalArgumentException("No record codec for " + entityClass.getName());
+        };
+    }
+
+    private static final RecordCodec<User> USER = new RecordCodec<>() {
+        @Override
+        public void write(User user, DataOutput out) throws IOException {
+            out.writeInt(user.getId());
+            writeString(out, user.getName());
+            writeString(out, user.getEmail());
+            writeString(out, user.getPassword());
+            out.writeInt(user.getBirthDate() == null ? Integer.MIN_VALUE : (int) user.getBirthDate().toEpochDay());
+            out.writeInt(user.getBirthTime() == null ? NULL : user.getBirthTime().toSecondOfDay());
+            writeString(out, user.getBirthPlace());
+            out.writeInt(user.getRawFriendEmails().size());
+            for (String email : user.getRawFriendEmails()) {
+                writeString(out, email);
+            }
+        }
+
+        @Override
+        public User read(ByteBuffer in) {
+            int id = in.getInt();
+            String name = readString(in);
+            String email = readString(in);
+            String password = readString(in);
+            int epochDay = in.getInt();
+            int secondOfDay = in.getInt();
+            String birthPlace = readString(in);
+            User user = new User(id, name,
+                    epochDay == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay),
+                    secondOfDay == NULL ? null : LocalTime.ofSecondOfDay(secondOfDay),
+                    birthPlace, email, password);
+
+            int friendCount = in.getInt();
+            if (friendCount > 0) {
+                List<String> friendEmails = new ArrayList<>(friendCount);
+                for (int i = 0; i < friendCount; i++) {
+                    friendEmails.add(readString(in));
+                }
+                user.setRawFriendEmails(friendEmails);
+            }
+            return user;
+        }
+    };
+
+    private static final RecordCodec<Admin> ADMIN = new RecordCodec<>() {
+        @Override
+        public void write(Admin admin, DataOutput out) throws IOException {
+            out.writeInt(admin.getId());
+            writeString(out, admin.getName());
+            writeString(out, admin.getEmail());
+            writeString(out, admin.getPassword());
+        }
+
+        @Override
+        public Admin read(ByteBuffer in) {
+            int id = in.getInt();
+            String name = readString(in);
+            String email = readString(in);
+            String password = readString(in);
+            return new Admin(id, name, email, password);
+        }
+    };
+
+    private static final RecordCodec<Quote> QUOTE = new RecordCodec<>() {
+        @Override
+        public void write(Quote quote, DataOutput out) throws IOException {
+            writeId(out, quote.getId());
+            writeElement(out, quote.getElement());
+            writeString(out, quote.getQuoteText());
+        }
+
+        @Override
+        public Quote read(ByteBuffer in) {
+            Integer id = readId(in);
+            Element element = readElement(in);
+            return new Quote(id, element, readString(in));
+        }
+    };
+
+    private static final RecordCodec<Trait> TRAIT = new RecordCodec<>() {
+        @Override
+        public void write(Trait trait, DataOutput out) throws IOException {
+            writeId(out, trait.getId());
+            writeElement(out, trait.getElement());
+            writeString(out, trait.getTraitName());
+        }
+
+        @Override
+        public Trait read(ByteBuffer in) {
+            Integer id = readId(in);
+            Element element = readElement(in);
+            return new Trait(element, readString(in), id);
+        }
+    };
+
+    private static final RecordCodec<StarSign> STAR_SIGN = new RecordCodec<>() {
+        @Override
+        public void write(StarSign sign, DataOutput out) throws IOException {
+            writeId(out, sign.getId());
+            writeString(out, sign.getStarName());
+            writeElement(out, sign.getElement());
+            out.writeInt(sign.getTraits().size());
+            for (Trait trait : sign.getTraits()) {
+                TRAIT.write(trait, out);
+            }
+        }
+
+        @Override
+        public StarSign read(ByteBuffer in) {
+            Integer id = readId(in);
+            String starName = readString(in);
+            Element element = readElement(in);
+            int traitCount = in.getInt();
+            List<Trait> traits = new ArrayList<>(traitCount);
+            for (int i = 0; i < traitCount; i++) {
+                traits.add(TRAIT.read(in));
+            }
+            return new StarSign(starName, element, traits, id);
+        }
+    };
+
+    private static void writeId(DataOutput out, Integer id) throws IOException {
+        out.writeInt(id == null ? NULL : id);
+    }
+
+    private static Integer readId(ByteBuffer in) {
+        int id = in.getInt();
+        return id == NULL ? null : id;
+    }
+
+    private static void writeElement(DataOutput out, Element element) throws IOException {
+        out.writeByte(element == null ? NULL : element.ordinal());
+    }
+
+    private static Element readElement(ByteBuffer in) {
+        byte ordinal = in.get();
+        return ordinal == NULL ? null : Element.values()[ordinal];
+    }
+
+    /**
+     * Writes a string as its UTF-8 byte length followed by the bytes.
+     */
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}, decoding it straight from the buffer's backing array if possible.
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == NULL) {
+            return null;
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
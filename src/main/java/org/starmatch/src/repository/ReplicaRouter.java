@@ -0,0 +1,238 @@
+package org.starmatch.src.repository;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.starmatch.src.exceptions.DatabaseException;
+
+/**
+ * Chooses the connection each read of a {@link DBRepository} goes to: one of a set of read replicas, or the primary.
+ * <p>
+ * Replicas are taken in turn. A replica is skipped while its replication lag exceeds the lag tolerance; the lag is
+ * measured on the replica itself and re-measured at most every {@link #LAG_CHECK_INTERVAL}. When no replica is fit,
+ * reads go to the primary.
+ * </p>
+ * <p>
+ * Since a replica used for reads is at most the lag tolerance behind when its lag is measured, a write becomes
+ * visible on every usable replica once the lag tolerance and the lag check interval have passed. To read its own
+ * writes, a session therefore keeps reading from the primary for that long after each of its committed writes.
+ * A session is the object bound with {@link #callInSession}, such as the session of a logged-in user, so that the
+ * requests of one user stick to the primary whichever thread serves them; threads started by the bound work
+ * inherit it. Work run outside of a session is tracked per thread. One router may be shared by several
+ * repositories, so that a write through one of them keeps the reads of all of them on the primary.
+ * </p>
+ */
+public class ReplicaRouter implements AutoCloseable {
+    /**
+     * Default replication lag tolerated on a replica. A session sticks to the primary for this long plus
+     * {@link #LAG_CHECK_INTERVAL} after a write.
+     */
+    public static final Duration DEFAULT_MAX_LAG = Duration.ofSeconds(1);
+
+    /**
+     * Time a measured replication lag is trusted before the replica is asked again.
+     */
+    public static final Duration LAG_CHECK_INTERVAL = Duration.ofMillis(500);
+
+    /**
+     * Replication lag of a PostgreSQL standby: zero once it replayed everything it received, and the age of the
+     * last replayed transaction otherwise. A server that is not a standby has no lag.
+     */
+    private static final String LAG_SQL = "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    /**
+     * Number of sessions tracked after which the sessions whose last write is older than the sticky window are
+     * dropped.
+     */
+    private static final int PRUNE_THRESHOLD = 1024;
+
+    /**
+     * The session bound by {@link #callInSession}, shared by every router.
+     */
+    private static final InheritableThreadLocal<Object> SESSION = new InheritableThreadLocal<>();
+
+    /**
+     * Work run on behalf of a session.
+     *
+     * @param <T> the type of the result.
+     * @param <E> the type of the exception thrown by the work.
+     */
+    @FunctionalInterface
+    public interface SessionWork<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Measures the replication lag of a replica.
+     */
+    @FunctionalInterface
+    public interface LagProbe {
+        Duration lag(Connection replica) throws SQLException;
+    }
+
+    private final List<Replica> replicas;
+    private final long maxLagNanos;
+    private final long stickyNanos;
+    private final LagProbe lagProbe;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<Object, Long> lastWrites = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a router connecting to the given replicas, which share the credentials of the primary.
+     *
+     * @param replicaUrls the URLs of the replicas.
+     * @param dbUser      the username for database authentication.
+     * @param dbPassword  the password for database authentication.
+     * @param maxLag      the replication lag tolerated on a replica.
+     * @throws DatabaseException if a replica cannot be reached.
+     */
+    public ReplicaRouter(List<String> replicaUrls, String dbUser, String dbPassword, Duration maxLag) {
+        this(connect(replicaUrls, dbUser, dbPassword), maxLag, ReplicaRouter::queryLag);
+    }
+
+    /**
+     * Creates a router over already opened replica connections.
+     *
+     * @param replicas the connections to the replicas.
+     * @param maxLag   the replication lag tolerated on a replica.
+     * @param lagProbe the way the lag of a replica is measured.
+     */
+    public ReplicaRouter(List<Connection> replicas, Duration maxLag, LagProbe lagProbe) {
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.maxLagNanos = maxLag.toNanos();
+        this.stickyNanos = maxLagNanos + LAG_CHECK_INTERVAL.toNanos();
+        this.lagProbe = lagProbe;
+    }
+
+    /**
+     * Runs work on behalf of a session, so that the reads and writes it makes through any router are tracked for
+     * the session rather than for the calling thread.
+     *
+     * @param session the session, such as the session of a logged-in user.
+     * @param work    the work to run.
+     * @return the result of the work.
+     * @throws E if the work throws it.
+     */
+    public static <T, E extends Exception> T callInSession(Object session, SessionWork<T, E> work) throws E {
+        Object previous = SESSION.get();
+        SESSION.set(session);
+        try {
+            return work.run();
+        } finally {
+            if (previous == null) {
+                SESSION.remove();
+            } else {
+                SESSION.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Chooses the connection for a read of the calling session.
+     *
+     * @param primary the connection to the primary database.
+     * @return a replica that is fit for the read, or the primary.
+     */
+    public Connection route(Connection primary) {
+        Long written = lastWrites.get(currentSession());
+        if (replicas.isEmpty() || (written != null && System.nanoTime() - written < stickyNanos)) {
+            return primary;
+        }
+        int start = next.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (replica.isFresh()) {
+                return replica.connection;
+            }
+        }
+        return primary;
+    }
+
+    /**
+     * Records that the calling session committed a write to the primary, so that its next reads see the write.
+     * Must be called once the write is committed, since the sticky window starts with the call.
+     */
+    public void recordWrite() {
+        long now = System.nanoTime();
+        if (lastWrites.size() >= PRUNE_THRESHOLD) {
+            lastWrites.values().removeIf(written -> now - written >= stickyNanos);
+        }
+        lastWrites.put(currentSession(), now);
+    }
+
+    private static Object currentSession() {
+        Object session = SESSION.get();
+        return session != null ? session : Thread.currentThread();
+    }
+
+    /**
+     * Closes the connections to the replicas.
+     *
+     * @throws SQLException if a connection cannot be closed.
+     */
+    @Override
+    public void close() throws SQLException {
+        for (Replica replica : replicas) {
+            replica.connection.close();
+        }
+    }
+
+    private static List<Connection> connect(List<String> replicaUrls, String dbUser, String dbPassword) {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            Class.forName("org.postgresql.Driver");
+            for (String url : replicaUrls) {
+                connections.add(DriverManager.getConnection(url, dbUser, dbPassword));
+            }
+            return connections;
+        } catch (SQLException | ClassNotFoundException e) {
+            throw new DatabaseException("Failed to connect to PostgreSQL replica", e);
+        }
+    }
+
+    private static Duration queryLag(Connection replica) throws SQLException {
+        try (PreparedStatement statement = replica.prepareStatement(LAG_SQL)) {
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            return Duration.ofMillis(resultSet.getLong(1));
+        }
+    }
+
+    /**
+     * A replica with its last measured lag.
+     */
+    private final class Replica {
+        private final Connection connection;
+        private long checkedAt;
+        private boolean checked;
+        private boolean fresh;
+
+        Replica(Connection connection) {
+            this.connection = connection;
+        }
+
+        synchronized boolean isFresh() {
+            long now = System.nanoTime();
+            if (!checked || now - checkedAt >= LAG_CHECK_INTERVAL.toNanos()) {
+                try {
+                    fresh = lagProbe.lag(connection).toNanos() <= maxLagNanos;
+                } catch (SQLException e) {
+                    fresh = false;
+                }
+                checked = true;
+                checkedAt = now;
+            }
+            return fresh;
+        }
+    }
+}
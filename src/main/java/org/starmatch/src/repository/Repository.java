@@ -1,7 +1,12 @@
 package org.starmatch.src.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.starmatch.src.model.HasEmail;
 import org.starmatch.src.model.HasId;
 
 /**
@@ -17,6 +22,48 @@ public interface Repository<T extends HasId> {
      */
     void create(T obj);
 
+    /**
+     * Creates several objects in the repository at once.
+     * <p>
+     * Backends override this when they can store a whole batch cheaper than one object at a time.
+     * </p>
+     *
+     * @param objs The objects to create.
+     */
+    default void createAll(Collection<T> objs) {
+        objs.forEach(this::create);
+    }
+
+    /**
+     * Creates every object of an iterator, such as the records of a file read one at a time.
+     * <p>
+     * By default the objects are stored through {@link #createAll(Collection)} in batches of the given size, so that
+     * only one batch is held in memory. Backends rewriting their whole store on every batch override this to store
+     * all the objects at once.
+     * </p>
+     *
+     * @param objs      The objects to create.
+     * @param batchSize The number of objects stored per call to {@link #createAll(Collection)}.
+     * @return The number of objects read from the iterator.
+     */
+    default long createAll(Iterator<? extends T> objs, int batchSize) {
+        long read = 0;
+        List<T> batch = new ArrayList<>(batchSize);
+        while (objs.hasNext()) {
+            batch.add(objs.next());
+            if (batch.size() == batchSize) {
+                createAll(batch);
+                read += batch.size();
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            createAll(batch);
+            read += batch.size();
+        }
+        return read;
+    }
+
     /**
      * Retrieves an object from the repository by its ID.
      *
@@ -45,4 +92,50 @@ public interface Repository<T extends HasId> {
      * @return A list of all objects in the repository.
      */
     List<T> getAll();
-}
\ No newline at end of file
+
+    /**
+     * Streams all objects from the repository.
+     * <p>
+     * Backends that can read lazily (e.g. through a database cursor) override this so that callers can
+     * walk the whole data set without materializing it. The stream must be closed after use,
+     * preferably with try-with-resources.
+     * </p>
+     *
+     * @return a stream over all objects in the repository.
+     */
+    default Stream<T> stream() {
+        return getAll().stream();
+    }
+
+    /**
+     * Finds an object by its email, such as a user logging in.
+     * <p>
+     * By default the objects are streamed until one has the email. Backends with an index by email override this
+     * to look the object up directly.
+     * </p>
+     *
+     * @param email The email of the object.
+     * @return The first object with the email, or null if there is none or the objects have no email.
+     */
+    default T findByEmail(String email) {
+        try (Stream<T> objs = stream()) {
+            return objs.filter(obj -> obj instanceof HasEmail withEmail && withEmail.getEmail().equals(email))
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+
+    /**
+     * Gets the highest ID in the repository, to number a new object.
+     * <p>
+     * By default the objects are streamed. Backends override this to read the IDs without building the objects.
+     * </p>
+     *
+     * @return The highest ID, or 0 if the repository is empty.
+     */
+    default int getMaxId() {
+        try (Stream<T> objs = stream()) {
+            return objs.mapToInt(HasId::getId).max().orElse(0);
+        }
+    }
+}
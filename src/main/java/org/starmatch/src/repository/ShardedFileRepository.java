@@ -0,0 +1,306 @@
+package org.starmatch.src.repository;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.starmatch.src.model.HasId;
+import org.starmatch.src.model.User;
+
+/**
+ * File-based repository partitioning its entities across several files by a hash of their ID.
+ * <p>
+ * Every shard keeps its entities in memory and has its own lock and file, so a write only rewrites the file of
+ * the shard holding the entity, and writers to different shards never wait for each other. The shards are loaded
+ * in parallel when the repository is created. Users resolve their friends through an email index spanning all
+ * shards, since friends usually live in other shards.
+ * </p>
+ *
+ * @param <T> The type of objects stored in the repository.
+ */
+public class ShardedFileRepository<T extends HasId> implements Repository<T> {
+    private final List<Shard<T>> shards;
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+    /**
+     * The email each user is indexed under in {@link #usersByEmail}, to remove it when the email changes, even if
+     * the updated user is the stored instance modified in place.
+     */
+    private final Map<Integer, String> emailsById = new ConcurrentHashMap<>();
+    private final Function<String, User> friendResolver = email -> {
+        User user = usersByEmail.get(email);
+        return user != null && email.equals(user.getEmail()) ? user : null;
+    };
+
+    /**
+     * Creates a sharded repository over the given file repositories, one per shard.
+     * The shards must always be given in the same order, since entities are placed by shard index.
+     *
+     * @param files The repositories storing the shards.
+     */
+    public ShardedFileRepository(List<? extends InFileRepository<T>> files) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = files.parallelStream()
+                .map(Shard::new)
+                .toList();
+        for (Shard<T> shard : shards) {
+            shard.data.values().forEach(this::index);
+        }
+    }
+
+    /**
+     * Creates a sharded repository storing its shards as CSV files named {@code <baseName>-<index>.txt}.
+     *
+     * @param directory   The directory of the shard files.
+     * @param baseName    The base name of the shard files, such as "users".
+     * @param shardCount  The number of shards.
+     * @param entityClass The class type of T.
+     * @return The sharded repository.
+     */
+    public static <T extends HasId> ShardedFileRepository<T> open(String directory, String baseName, int shardCount, Class<T> entityClass) {
+        List<InFileRepository<T>> files = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            files.add(new InFileRepository<>(new File(directory, baseName + "-" + i + ".txt").getPath(), entityClass));
+        }
+        return new ShardedFileRepository<>(files);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void create(T obj) {
+        shardOf(obj.getId()).modify(data -> {
+            if (data.putIfAbsent(obj.getId(), obj) == null) {
+                index(obj);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * Every shard receiving entities is written once, and the shards are written in parallel.
+     */
+    @Override
+    public void createAll(Collection<T> objs) {
+        groupByShard(objs).entrySet().parallelStream().forEach(entry -> entry.getKey().modify(data -> putAll(data, entry.getValue())));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The objects are read batch by batch, and every batch is grouped by shard and added to the shards in memory.
+     * Every shard file receiving objects is written only once, after the last batch.
+     */
+    @Override
+    public long createAll(Iterator<? extends T> objs, int batchSize) {
+        long read = 0;
+        Set<Shard<T>> modified = new HashSet<>();
+        List<T> batch = new ArrayList<>(batchSize);
+        while (objs.hasNext()) {
+            batch.add(objs.next());
+            if (batch.size() == batchSize || !objs.hasNext()) {
+                Map<Shard<T>, List<T>> byShard = groupByShard(batch);
+                byShard.entrySet().parallelStream().forEach(entry -> entry.getKey().apply(data -> putAll(data, entry.getValue())));
+                modified.addAll(byShard.keySet());
+                read += batch.size();
+                batch.clear();
+            }
+        }
+        modified.parallelStream().forEach(Shard::save);
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T get(Integer id) {
+        return shardOf(id).get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(T obj) {
+        shardOf(obj.getId()).modify(data -> {
+            if (data.replace(obj.getId(), obj) != null) {
+                index(obj);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(Integer id) {
+        shardOf(id).modify(data -> {
+            if (data.remove(id) instanceof User) {
+                unindex(id);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<T> getAll() {
+        List<T> all = new ArrayList<>();
+        shards.forEach(shard -> shard.copyTo(all));
+        return all;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<T> stream() {
+        return getAll().stream();
+    }
+
+    /**
+     * Finds a user through the email index spanning all shards. Other entities are searched shard by shard.
+     *
+     * @param email The email of the object.
+     * @return The object with the email, or null if there is none.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T findByEmail(String email) {
+        if (usersByEmail.isEmpty()) {
+            return Repository.super.findByEmail(email);
+        }
+        return email == null ? null : (T) friendResolver.apply(email);
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return The number of shards.
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    private Map<Shard<T>, List<T>> groupByShard(Collection<T> objs) {
+        return objs.stream().collect(Collectors.groupingBy(obj -> shardOf(obj.getId())));
+    }
+
+    /**
+     * Adds the objects missing from the data of a shard.
+     * Must be called while holding the write lock of the shard.
+     */
+    private void putAll(Map<Integer, T> data, List<T> objs) {
+        for (T obj : objs) {
+            if (data.putIfAbsent(obj.getId(), obj) == null) {
+                index(obj);
+            }
+        }
+    }
+
+    private Shard<T> shardOf(Integer id) {
+        return shards.get(Math.floorMod(Objects.hashCode(id) * 0x9E3779B9, shards.size()));
+    }
+
+    /**
+     * Indexes a user by email, replacing the email it was indexed under before.
+     * Must be called while holding the write lock of the shard of the user.
+     */
+    private void index(T obj) {
+        if (obj instanceof User user) {
+            String previousEmail = emailsById.put(user.getId(), user.getEmail());
+            if (previousEmail != null && !previousEmail.equals(user.getEmail())) {
+                removeEmail(previousEmail, user.getId());
+            }
+            usersByEmail.put(user.getEmail(), user);
+            user.setFriendResolver(friendResolver);
+        }
+    }
+
+    /**
+     * Removes a deleted user from the email index.
+     * Must be called while holding the write lock of the shard of the user.
+     */
+    private void unindex(Integer id) {
+        String email = emailsById.remove(id);
+        if (email != null) {
+            removeEmail(email, id);
+        }
+    }
+
+    private void removeEmail(String email, int id) {
+        usersByEmail.computeIfPresent(email, (key, user) -> user.getId() == id ? null : user);
+    }
+
+    /**
+     * One file of the repository with its entities and lock.
+     */
+    private static final class Shard<T extends HasId> {
+        private final InFileRepository<T> file;
+        private final Map<Integer, T> data;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Shard(InFileRepository<T> file) {
+            this.file = file;
+            this.data = file.readDataFromFile();
+        }
+
+        T get(Integer id) {
+            lock.readLock().lock();
+            try {
+                return data.get(id);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void copyTo(List<T> target) {
+            lock.readLock().lock();
+            try {
+                target.addAll(data.values());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void modify(Consumer<Map<Integer, T>> function) {
+            lock.writeLock().lock();
+            try {
+                function.accept(data);
+                file.writeDataToFile(data);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Modifies the entities without writing the file, which {@link #save} writes later.
+         */
+        void apply(Consumer<Map<Integer, T>> function) {
+            lock.writeLock().lock();
+            try {
+                function.accept(data);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void save() {
+            lock.writeLock().lock();
+            try {
+                file.writeDataToFile(data);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.starmatch.src.repository;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of one SQL statement run by a database repository.
+ * <p>
+ * Statements of the statement cache last as long as their execution. Cursor queries and {@code COPY ... TO STDOUT}
+ * last until their stream is closed, and count the rows read through it.
+ * </p>
+ */
+@Name("org.starmatch.SqlStatement")
+@Label("SQL Statement")
+@Category({"StarMatch", "Database"})
+@Description("A SQL statement run by a database repository")
+@StackTrace(false)
+public class SqlStatementEvent extends jdk.jfr.Event {
+    @Label("SQL")
+    String sql;
+
+    @Label("Method")
+    @Description("JDBC method running the statement, such as executeQuery, or copyIn and copyOut")
+    String method;
+
+    @Label("Rows")
+    @Description("Number of rows updated, copied or streamed, -1 if unknown")
+    long rows = -1;
+
+    @Label("Failed")
+    boolean failed;
+}
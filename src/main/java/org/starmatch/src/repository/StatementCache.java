@@ -0,0 +1,265 @@
+package org.starmatch.src.repository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.postgresql.PGStatement;
+
+/**
+ * Cache of the prepared statements of one connection, keyed by SQL text, evicting the least recently used one.
+ * <p>
+ * A statement is taken out of the cache while it is in use and put back when it is closed, so the usual
+ * try-with-resources blocks keep working: {@link #prepare} hands out a statement whose {@code close()} returns the
+ * real statement to the cache instead of closing it. If the same SQL is prepared again while its statement is in use,
+ * for instance by a nested lookup, a second statement is prepared and the one returned last is kept.
+ * </p>
+ * <p>
+ * Cached statements are switched to PgJDBC server-side prepared statements from their
+ * {@link #SERVER_PREPARE_THRESHOLD}th execution on, so that the server parses and plans a hot query once per
+ * connection. Evicting a statement closes it, which also releases its server-side statement.
+ * </p>
+ * <p>
+ * Every execution of a statement handed out by the cache is emitted as a {@link SqlStatementEvent}, once the flight
+ * recorder has been started.
+ * </p>
+ */
+public class StatementCache implements AutoCloseable {
+    /**
+     * Default number of statements kept per connection.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Number of executions of a cached statement after which PgJDBC uses a named server-side statement.
+     */
+    public static final int SERVER_PREPARE_THRESHOLD = 2;
+
+    private final Connection connection;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+
+    /**
+     * Creates a cache for the statements of a connection.
+     *
+     * @param connection the connection preparing the statements.
+     * @param capacity   the number of statements kept.
+     */
+    public StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets a prepared statement for the given SQL, reusing a cached one if possible.
+     * Closing the returned statement gives it back to the cache.
+     *
+     * @param sql the SQL text of the statement.
+     * @return the statement, with no parameters set.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Gets a prepared statement for the given SQL, reusing a cached one if possible.
+     * Closing the returned statement gives it back to the cache.
+     *
+     * @param sql               the SQL text of the statement.
+     * @param autoGeneratedKeys whether generated keys are returned, {@link Statement#RETURN_GENERATED_KEYS} or
+     *                          {@link Statement#NO_GENERATED_KEYS}.
+     * @return the statement, with no parameters set.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        return prepare(sql, autoGeneratedKeys, null);
+    }
+
+    /**
+     * Gets a prepared statement for the given SQL, reusing a cached one if possible.
+     * Closing the returned statement gives it back to the cache, then runs the given action.
+     *
+     * @param sql               the SQL text of the statement.
+     * @param autoGeneratedKeys whether generated keys are returned, {@link Statement#RETURN_GENERATED_KEYS} or
+     *                          {@link Statement#NO_GENERATED_KEYS}.
+     * @param onClose           the action run once the statement is closed, or null.
+     * @return the statement, with no parameters set.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys, Runnable onClose) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        PreparedStatement statement;
+        synchronized (this) {
+            statement = statements.remove(key);
+        }
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql, autoGeneratedKeys);
+            if (statement.isWrapperFor(PGStatement.class)) {
+                statement.unwrap(PGStatement.class).setPrepareThreshold(SERVER_PREPARE_THRESHOLD);
+            }
+        }
+        return borrowed(key, statement, onClose);
+    }
+
+    /**
+     * Gets the number of statements currently cached, not counting those in use.
+     *
+     * @return the number of cached statements.
+     */
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes every cached statement. Statements in use are closed when they are given back.
+     */
+    @Override
+    public void close() {
+        List<PreparedStatement> cached;
+        synchronized (this) {
+            cached = new ArrayList<>(statements.values());
+            statements.clear();
+        }
+        cached.forEach(StatementCache::closeQuietly);
+    }
+
+    /**
+     * Puts a statement back into the cache once its user closed it.
+     */
+    private void giveBack(Key key, PreparedStatement statement) throws SQLException {
+        if (statement.isClosed() || connection.isClosed()) {
+            closeQuietly(statement);
+            return;
+        }
+        try {
+            ResultSet resultSet = statement.getResultSet();
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+        } catch (SQLException e) {
+            closeQuietly(statement);
+            throw e;
+        }
+
+        PreparedStatement replaced;
+        synchronized (this) {
+            replaced = statements.put(key, statement);
+        }
+        if (replaced != null) {
+            closeQuietly(replaced);
+        }
+    }
+
+    /**
+     * Wraps a statement so that closing it gives it back to the cache and runs the close action. Every other call
+     * goes to the statement.
+     */
+    private PreparedStatement borrowed(Key key, PreparedStatement statement, Runnable onClose) {
+        boolean[] closed = new boolean[1];
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close" -> {
+                            if (!closed[0]) {
+                                closed[0] = true;
+                                try {
+                                    giveBack(key, statement);
+                                } finally {
+                                    if (onClose != null) {
+                                        onClose.run();
+                                    }
+                                }
+                            }
+                            return null;
+                        }
+                        case "isClosed" -> {
+                            return closed[0] || statement.isClosed();
+                        }
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        default -> {
+                            if (method.getName().startsWith("execute")) {
+                                return execute(key.sql(), statement, method, args);
+                            }
+                            return invoke(statement, method, args);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Runs an execute method of a statement, emitting it as a {@link SqlStatementEvent}.
+     */
+    private static Object execute(String sql, PreparedStatement statement, Method method, Object[] args) throws Throwable {
+        SqlStatementEvent event = DBRepository.beginStatementEvent();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = invoke(statement, method, args);
+            failed = false;
+            return result;
+        } finally {
+            DBRepository.commit(event, sql, method.getName(), failed ? -1 : updatedRows(result), failed);
+        }
+    }
+
+    /**
+     * Gets the number of rows updated from the result of an execute method, or -1 for a query.
+     */
+    private static long updatedRows(Object result) {
+        if (result instanceof Number count) {
+            return count.longValue();
+        }
+        if (result instanceof int[] counts) {
+            return Arrays.stream(counts).filter(count -> count >= 0).asLongStream().sum();
+        }
+        if (result instanceof long[] counts) {
+            return Arrays.stream(counts).filter(count -> count >= 0).sum();
+        }
+        return -1;
+    }
+
+    private static Object invoke(PreparedStatement statement, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private record Key(String sql, int autoGeneratedKeys) {
+    }
+}
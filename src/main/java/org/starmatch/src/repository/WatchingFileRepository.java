@@ -0,0 +1,245 @@
+package org.starmatch.src.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.starmatch.src.model.HasId;
+
+/**
+ * Caching front for a file-based repository that reloads the file only when it actually changes.
+ * <p>
+ * Reads are served from the parsed data kept in memory. The directory of the file is registered with a
+ * {@link WatchService}; a watcher thread collects the events on the file and reloads it once no new event arrived
+ * for the debounce delay, so that an editor saving in several steps causes a single reload. Since watch services
+ * may be slow or miss events on some platforms and network drives, reads also compare the modification time and
+ * size of the file with the loaded version, at most once per check interval.
+ * </p>
+ * <p>
+ * Mutations are written through to the file immediately, like {@link InFileRepository} does, and the cache takes
+ * the new version of the file without reading it again.
+ * </p>
+ *
+ * @param <T> The type of objects stored in the repository.
+ */
+public class WatchingFileRepository<T extends HasId> implements Repository<T>, AutoCloseable {
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(100);
+    public static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(2);
+
+    private final InFileRepository<T> file;
+    private final Path path;
+    private final long debounceNanos;
+    private final long checkIntervalNanos;
+    private final WatchService watchService;
+
+    private volatile Map<Integer, T> data;
+    private volatile FileStamp stamp;
+    private volatile long lastCheck;
+
+    /**
+     * Creates a watching repository over a file repository with the default debounce delay and check interval.
+     *
+     * @param file The repository whose file is cached and watched.
+     */
+    public WatchingFileRepository(InFileRepository<T> file) {
+        this(file, DEFAULT_DEBOUNCE, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Creates a watching repository over a file repository.
+     *
+     * @param file          The repository whose file is cached and watched.
+     * @param debounce      How long the watcher waits for the events on the file to settle before reloading it.
+     * @param checkInterval How often reads compare the modification time of the file with the loaded version.
+     * @throws UncheckedIOException if the directory of the file cannot be watched.
+     */
+    public WatchingFileRepository(InFileRepository<T> file, Duration debounce, Duration checkInterval) {
+        this.file = file;
+        this.path = Path.of(file.filePath).toAbsolutePath();
+        this.debounceNanos = debounce.toNanos();
+        this.checkIntervalNanos = checkInterval.toNanos();
+        reload();
+
+        try {
+            this.watchService = path.getFileSystem().newWatchService();
+            path.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not watch " + path, e);
+        }
+        Thread watcher = new Thread(this::watch, "file-watcher-" + path.getFileName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void create(T obj) {
+        modify(data -> data.putIfAbsent(obj.getId(), obj));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The file is written only once for the whole batch.
+     */
+    @Override
+    public void createAll(Collection<T> objs) {
+        modify(data -> objs.forEach(obj -> data.putIfAbsent(obj.getId(), obj)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The file is written only once, whatever the number of objects, so the batch size is not used.
+     */
+    @Override
+    public long createAll(Iterator<? extends T> objs, int batchSize) {
+        long[] read = new long[1];
+        modify(data -> objs.forEachRemaining(obj -> {
+            data.putIfAbsent(obj.getId(), obj);
+            read[0]++;
+        }));
+        return read[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T get(Integer id) {
+        return current().get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(T obj) {
+        modify(data -> data.replace(obj.getId(), obj));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(Integer id) {
+        modify(data -> data.remove(id));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<T> getAll() {
+        return new ArrayList<>(current().values());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<T> stream() {
+        return current().values().stream();
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the cached data, reloading it first if the check interval elapsed and the file changed.
+     * The returned map is never modified; mutations replace it with a modified copy.
+     */
+    private Map<Integer, T> current() {
+        long now = System.nanoTime();
+        if (now - lastCheck >= checkIntervalNanos) {
+            lastCheck = now;
+            reloadIfChanged();
+        }
+        return data;
+    }
+
+    /**
+     * Applies a mutation to a copy of the data, writes it to the file and makes it the cached data.
+     */
+    private synchronized void modify(Consumer<Map<Integer, T>> function) {
+        reloadIfChanged();
+        Map<Integer, T> copy = new HashMap<>(data);
+        function.accept(copy);
+        file.writeDataToFile(copy);
+        data = copy;
+        stamp = FileStamp.of(path);
+    }
+
+    private synchronized void reloadIfChanged() {
+        if (!Objects.equals(stamp, FileStamp.of(path))) {
+            reload();
+        }
+    }
+
+    private synchronized void reload() {
+        stamp = FileStamp.of(path);
+        data = file.readDataFromFile();
+        lastCheck = System.nanoTime();
+    }
+
+    /**
+     * Waits for events on the file and reloads it once they stop for the debounce delay.
+     */
+    private void watch() {
+        long reloadAt = 0;
+        boolean pending = false;
+        try {
+            while (true) {
+                WatchKey key = pending
+                        ? watchService.poll(Math.max(0, reloadAt - System.nanoTime()), TimeUnit.NANOSECONDS)
+                        : watchService.take();
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || path.getFileName().equals(event.context())) {
+                            pending = true;
+                            reloadAt = System.nanoTime() + debounceNanos;
+                        }
+                    }
+                    key.reset();
+                }
+                if (pending && System.nanoTime() - reloadAt >= 0) {
+                    pending = false;
+                    reloadIfChanged();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // The repository was closed
+        }
+    }
+
+    /**
+     * Version of the file as seen by the file system, or {@code null} if the file does not exist.
+     */
+    private record FileStamp(FileTime modified, long size) {
+        static FileStamp of(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileStamp(attributes.lastModifiedTime(), attributes.size());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.starmatch.src.repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.starmatch.src.model.HasId;
+
+/**
+ * Append-only log of the mutations made to a file repository since its last snapshot.
+ * <p>
+ * Every record holds its length, a CRC32 checksum, the operation, the ID of the entity and, for puts, the entity
+ * encoded with {@link RecordCodec}. On replay, records are applied in order up to the first one that is incomplete
+ * or fails its checksum, which is where a crash interrupted the log; that tail is cut off.
+ * </p>
+ * <p>
+ * Before a snapshot is written, the log is rotated: the records logged so far move to a second file, which is
+ * deleted once the snapshot is safely in place. A crash in between leaves both files, and replaying the rotated
+ * records over the snapshot again is harmless since every record sets the final state of one entity.
+ * </p>
+ *
+ * @param <T> The type of entities logged.
+ */
+class WriteAheadLog<T extends HasId> implements Closeable {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    private final Path path;
+    private final Path rotatedPath;
+    private final RecordCodec<T> codec;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+
+    /**
+     * Opens the log of a file, creating it if needed.
+     *
+     * @param dataFile    The file whose mutations are logged; the log is kept next to it.
+     * @param entityClass The class of the logged entities.
+     * @throws IOException if the log cannot be opened.
+     */
+    WriteAheadLog(Path dataFile, Class<T> entityClass) throws IOException {
+        this.path = dataFile.resolveSibling(dataFile.getFileName() + ".wal");
+        this.rotatedPath = dataFile.resolveSibling(dataFile.getFileName() + ".wal.old");
+        this.codec = RecordCodec.forClass(entityClass);
+        this.channel = open();
+    }
+
+    /**
+     * Applies the logged mutations, rotated ones first, to the data read from the snapshot.
+     * The log must not have been written to since it was opened.
+     *
+     * @param data The data of the snapshot.
+     * @return The number of applied records.
+     * @throws IOException if the log cannot be read.
+     */
+    int replay(Map<Integer, T> data) throws IOException {
+        int replayed = 0;
+        if (Files.exists(rotatedPath)) {
+            replayed += replay(ByteBuffer.wrap(Files.readAllBytes(rotatedPath)), data);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        replayed += replay(buffer, data);
+        if (buffer.position() < buffer.limit()) {
+            channel.truncate(buffer.position());
+        }
+        return replayed;
+    }
+
+    /**
+     * Logs that an entity was created or replaced.
+     */
+    void put(T obj) throws IOException {
+        record.reset();
+        recordOut.writeByte(PUT);
+        recordOut.writeInt(obj.getId());
+        codec.write(obj, recordOut);
+        append();
+    }
+
+    /**
+     * Logs that an entity was deleted.
+     */
+    void delete(Integer id) throws IOException {
+        record.reset();
+        recordOut.writeByte(DELETE);
+        recordOut.writeInt(id);
+        append();
+    }
+
+    /**
+     * Forces the logged records to disk.
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Moves the records logged so far aside, before a snapshot containing them is written.
+     * If a previous snapshot failed and its rotated records are still there, the new records are added to them.
+     * The log is reopened even if the rotation fails, so that later mutations are still logged; the records of a
+     * failed rotation stay in the log, or in both files, which replays them to the same data.
+     */
+    void rotate() throws IOException {
+        channel.close();
+        try {
+            if (Files.exists(rotatedPath)) {
+                try (FileChannel rotated = FileChannel.open(rotatedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                     FileChannel current = FileChannel.open(path, StandardOpenOption.READ)) {
+                    long rotatedSize = rotated.size();
+                    try {
+                        current.transferTo(0, current.size(), rotated);
+                    } catch (IOException e) {
+                        // Drop the partly copied records, which would end the rotated records with a torn one
+                        rotated.truncate(rotatedSize);
+                        throw e;
+                    }
+                }
+                Files.delete(path);
+            } else {
+                Files.move(path, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            channel = open();
+        }
+    }
+
+    /**
+     * Deletes the rotated records once the snapshot containing them is in place.
+     */
+    void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void append() throws IOException {
+        byte[] bytes = record.toByteArray();
+        crc.reset();
+        crc.update(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(bytes);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Applies the valid records of a log, leaving the buffer positioned after the last one.
+     */
+    private int replay(ByteBuffer buffer, Map<Integer, T> data) {
+        int replayed = 0;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < Byte.BYTES + Integer.BYTES || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+
+            int end = buffer.position() + length;
+            byte op = buffer.get();
+            int id = buffer.getInt();
+            if (op == PUT) {
+                data.put(id, codec.read(buffer));
+            } else {
+                data.remove(id);
+            }
+            buffer.position(end);
+            replayed++;
+        }
+        return replayed;
+    }
+}
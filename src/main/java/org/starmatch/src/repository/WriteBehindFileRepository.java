@@ -0,0 +1,338 @@
+package org.starmatch.src.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.starmatch.src.model.HasId;
+import org.starmatch.src.model.User;
+
+/**
+ * Write-behind front for a file-based repository.
+ * <p>
+ * The file is read once when the repository is created. Mutations are appended to a {@link WriteAheadLog},
+ * applied to the in-memory copy right away and persisted later by a background flusher, which rewrites the file
+ * once for all the mutations made since the previous flush. A flush happens when {@code maxPendingWrites}
+ * mutations are pending or {@code maxDelay} after the first pending mutation, whichever comes first, and on
+ * {@link #flush()} and {@link #close()}. The file is replaced atomically, and mutations not yet flushed when the
+ * process dies are replayed from the log the next time the repository is opened.
+ * </p>
+ *
+ * @param <T> The type of objects stored in the repository.
+ */
+public class WriteBehindFileRepository<T extends HasId> implements Repository<T>, AutoCloseable {
+    /**
+     * When the file and its log are forced to the storage device after being written.
+     * Without forcing, written data survives a crash of the process but not of the operating system.
+     */
+    public enum FsyncPolicy {
+        /**
+         * Never; the operating system writes the file back on its own schedule.
+         */
+        NEVER,
+        /**
+         * The log after every mutation and the file after every flush, so that no mutation is ever lost.
+         */
+        EVERY_WRITE,
+        /**
+         * The file after every flush.
+         */
+        ON_FLUSH,
+        /**
+         * Only after the final flush made by {@link #close()}.
+         */
+        ON_CLOSE
+    }
+
+    public static final int DEFAULT_MAX_PENDING_WRITES = 1000;
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(200);
+
+    private final InFileRepository<T> file;
+    private final WriteAheadLog<T> log;
+    private final int maxPendingWrites;
+    private final Duration maxDelay;
+    private final FsyncPolicy fsyncPolicy;
+    private final ScheduledThreadPoolExecutor flusher;
+    private final Object flushLock = new Object();
+
+    private final Map<Integer, T> data;
+    private int pendingWrites;
+    private boolean flushScheduled;
+    private boolean flushQueued;
+    private boolean closed;
+
+    /**
+     * Creates a write-behind repository over a file repository with the default thresholds,
+     * forcing the file to disk after every flush.
+     *
+     * @param file The repository whose file is cached and written behind.
+     */
+    public WriteBehindFileRepository(InFileRepository<T> file) {
+        this(file, DEFAULT_MAX_PENDING_WRITES, DEFAULT_MAX_DELAY, FsyncPolicy.ON_FLUSH);
+    }
+
+    /**
+     * Creates a write-behind repository over a file repository.
+     *
+     * @param file             The repository whose file is cached and written behind.
+     * @param maxPendingWrites The number of pending mutations that triggers a flush.
+     * @param maxDelay         The longest time a mutation stays pending.
+     * @param fsyncPolicy      When the file is forced to disk.
+     * @throws UncheckedIOException if the log cannot be opened or replayed.
+     */
+    public WriteBehindFileRepository(InFileRepository<T> file, int maxPendingWrites, Duration maxDelay, FsyncPolicy fsyncPolicy) {
+        if (maxPendingWrites < 1) {
+            throw new IllegalArgumentException("maxPendingWrites must be positive");
+        }
+        this.file = file;
+        this.maxPendingWrites = maxPendingWrites;
+        this.maxDelay = maxDelay;
+        this.fsyncPolicy = fsyncPolicy;
+        this.data = file.readDataFromFile();
+        try {
+            this.log = new WriteAheadLog<>(Path.of(file.filePath), file.entityClass);
+            this.pendingWrites = log.replay(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay the log of " + file.filePath, e);
+        }
+        this.flusher = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-" + Path.of(file.filePath).getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // close() flushes by itself, so the delayed flushes still waiting are dropped rather than waited for
+        this.flusher.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        if (pendingWrites > 0) {
+            relinkFriends();
+            flush(fsyncsOnFlush());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void create(T obj) {
+        synchronized (this) {
+            checkOpen();
+            if (!data.containsKey(obj.getId())) {
+                logged(() -> log.put(obj));
+                data.put(obj.getId(), obj);
+                pendingWrites(1);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createAll(Collection<T> objs) {
+        synchronized (this) {
+            checkOpen();
+            List<T> created = objs.stream()
+                    .filter(obj -> !data.containsKey(obj.getId()))
+                    .toList();
+            logged(() -> {
+                for (T obj : created) {
+                    log.put(obj);
+                }
+            });
+            created.forEach(obj -> data.putIfAbsent(obj.getId(), obj));
+            pendingWrites(created.size());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized T get(Integer id) {
+        return data.get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(T obj) {
+        synchronized (this) {
+            checkOpen();
+            if (data.containsKey(obj.getId())) {
+                logged(() -> log.put(obj));
+                data.put(obj.getId(), obj);
+                pendingWrites(1);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(Integer id) {
+        synchronized (this) {
+            checkOpen();
+            if (data.containsKey(id)) {
+                logged(() -> log.delete(id));
+                data.remove(id);
+                pendingWrites(1);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<T> getAll() {
+        return new ArrayList<>(data.values());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<T> stream() {
+        return getAll().stream();
+    }
+
+    /**
+     * Writes all pending mutations to the file and waits until they are written.
+     */
+    public void flush() {
+        flush(fsyncsOnFlush());
+    }
+
+    /**
+     * Stops the background flusher and writes the pending mutations right away, without waiting for the delayed
+     * flush. The repository cannot be modified afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(maxDelay.toMillis() + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (fsyncPolicy == FsyncPolicy.ON_CLOSE) {
+            force();
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records new pending mutations and schedules a flush: immediately once the size threshold is reached,
+     * otherwise after the maximum delay. Must be called while holding the lock of the repository.
+     */
+    private void pendingWrites(int count) {
+        if (count == 0) return;
+        pendingWrites += count;
+        if (pendingWrites >= maxPendingWrites) {
+            if (!flushQueued) {
+                flushQueued = true;
+                flusher.execute(() -> flush());
+            }
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            flusher.schedule(() -> flush(), maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the data. The log is rotated together with the snapshot, and the rotated part is only
+     * discarded once the snapshot replaced the file; if writing fails, it is kept for the next flush or replay.
+     */
+    private void flush(boolean fsync) {
+        synchronized (flushLock) {
+            Map<Integer, T> snapshot;
+            synchronized (this) {
+                if (pendingWrites == 0) return;
+                logged(log::rotate);
+                snapshot = new LinkedHashMap<>(data);
+                pendingWrites = 0;
+                flushScheduled = false;
+                flushQueued = false;
+            }
+            try {
+                file.writeSnapshot(snapshot, fsync);
+                log.discardRotated();
+            } catch (IOException e) {
+                System.err.println("Error writing to file: " + file.filePath);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs an operation on the log, forcing it afterwards if the fsync policy asks for it.
+     * Must be called while holding the lock of the repository.
+     *
+     * @throws UncheckedIOException if the log cannot be written; the mutation is then not applied.
+     */
+    private void logged(LogOperation operation) {
+        try {
+            operation.run();
+            if (fsyncPolicy == FsyncPolicy.EVERY_WRITE) {
+                log.sync();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the log of " + file.filePath, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface LogOperation {
+        void run() throws IOException;
+    }
+
+    /**
+     * Lets the users read from the file and from the log resolve their friends among each other.
+     */
+    private void relinkFriends() {
+        Map<String, User> usersByEmail = new HashMap<>();
+        for (T obj : data.values()) {
+            if (obj instanceof User user) {
+                InFileRepository.linkFriends(user, usersByEmail);
+            }
+        }
+    }
+
+    private boolean fsyncsOnFlush() {
+        return fsyncPolicy == FsyncPolicy.ON_FLUSH || fsyncPolicy == FsyncPolicy.EVERY_WRITE;
+    }
+
+    private void force() {
+        if (!Files.exists(Path.of(file.filePath))) return;
+        try (FileChannel channel = FileChannel.open(Path.of(file.filePath), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            System.err.println("Error syncing file: " + file.filePath);
+            e.printStackTrace();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Repository is closed");
+        }
+    }
+}
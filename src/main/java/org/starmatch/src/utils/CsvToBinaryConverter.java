@@ -0,0 +1,66 @@
+package org.starmatch.src.utils;
+
+import org.starmatch.src.model.*;
+import org.starmatch.src.repository.BinaryFileRepository;
+import org.starmatch.src.repository.InFileRepository;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the CSV files of the file-based storage into the binary format of {@link BinaryFileRepository}.
+ */
+public class CsvToBinaryConverter {
+    /**
+     * Entity classes of the file-based storage, by the base name of their files.
+     */
+    public static final Map<String, Class<? extends HasId>> FILES = Map.of(
+            "users", User.class,
+            "admins", Admin.class,
+            "starsigns", StarSign.class,
+            "quotes", Quote.class,
+            "traits", Trait.class);
+
+    /**
+     * Converts one CSV file. An existing binary file is overwritten.
+     *
+     * @param csvPath     The path of the CSV file.
+     * @param binaryPath  The path of the binary file to write.
+     * @param entityClass The class of the entities stored in the file.
+     * @return The number of converted records.
+     */
+    public static <T extends HasId> int convert(String csvPath, String binaryPath, Class<T> entityClass) {
+        List<T> objs = new InFileRepository<>(csvPath, entityClass).getAll();
+        new File(binaryPath).delete();
+        new BinaryFileRepository<>(binaryPath, entityClass).createAll(objs);
+        return objs.size();
+    }
+
+    /**
+     * Converts every CSV file of the file-based storage found in a directory,
+     * writing "users.bin" next to "users.txt" and so on.
+     *
+     * @param directory The directory containing the CSV files.
+     */
+    public static void convertDirectory(String directory) {
+        FILES.forEach((name, entityClass) -> {
+            File csv = new File(directory, name + ".txt");
+            if (csv.exists()) {
+                int count = convert(csv.getPath(), new File(directory, name + ".bin").getPath(), entityClass);
+                System.out.println("Converted " + count + " records from " + csv.getName());
+            }
+        });
+    }
+
+    /**
+     * Converts the CSV files of the directory given as first argument.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: CsvToBinaryConverter <directory>");
+            return;
+        }
+        convertDirectory(args[0]);
+    }
+}
@@ -0,0 +1,208 @@
+package org.starmatch.src.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Streaming JSON encoder writing values straight to a {@link Writer}, without building the document in memory first.
+ * <p>
+ * The writer keeps track of the nesting and inserts the commas itself, so callers only open and close the objects and
+ * arrays and write the names and values in order:
+ * </p>
+ * <pre>{@code
+ * json.beginObject().name("name").value("Amna").name("friends").beginArray().value(2).endArray().endObject();
+ * }</pre>
+ * <p>
+ * Write failures of the underlying writer are rethrown as {@link UncheckedIOException}.
+ * </p>
+ */
+public class JsonWriter {
+    private final Writer writer;
+    private boolean[] hasMembers = new boolean[8];
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * Creates an encoder writing to a writer. The writer is neither flushed nor closed by the encoder.
+     *
+     * @param writer the destination of the JSON text
+     */
+    public JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Opens an object.
+     *
+     * @return this encoder
+     */
+    public JsonWriter beginObject() {
+        return open('{');
+    }
+
+    /**
+     * Closes the innermost object.
+     *
+     * @return this encoder
+     */
+    public JsonWriter endObject() {
+        return close('}');
+    }
+
+    /**
+     * Opens an array.
+     *
+     * @return this encoder
+     */
+    public JsonWriter beginArray() {
+        return open('[');
+    }
+
+    /**
+     * Closes the innermost array.
+     *
+     * @return this encoder
+     */
+    public JsonWriter endArray() {
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     *
+     * @param name the member name
+     * @return this encoder
+     */
+    public JsonWriter name(String name) {
+        separate();
+        writeString(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value, or {@code null}.
+     *
+     * @param value the string
+     * @return this encoder
+     */
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            write("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a number value, or {@code null}.
+     *
+     * @param value the number
+     * @return this encoder
+     */
+    public JsonWriter value(Number value) {
+        separate();
+        write(value == null ? "null" : value.toString());
+        return this;
+    }
+
+    /**
+     * Writes a boolean value.
+     *
+     * @param value the boolean
+     * @return this encoder
+     */
+    public JsonWriter value(boolean value) {
+        separate();
+        write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes a value by its string form, or {@code null}. Used for dates, times and enums.
+     *
+     * @param value the value
+     * @return this encoder
+     */
+    public JsonWriter valueOf(Object value) {
+        return value(value == null ? null : value.toString());
+    }
+
+    private JsonWriter open(char bracket) {
+        separate();
+        write(bracket);
+        if (++depth == hasMembers.length) {
+            hasMembers = Arrays.copyOf(hasMembers, depth * 2);
+        }
+        hasMembers[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) {
+        if (depth == 0) {
+            throw new IllegalStateException("Nothing to close");
+        }
+        depth--;
+        write(bracket);
+        return this;
+    }
+
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (hasMembers[depth]) {
+            write(',');
+        }
+        hasMembers[depth] = true;
+    }
+
+    private void writeString(String value) {
+        write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escape = switch (c) {
+                case '"' -> "\\\"";
+                case '\\' -> "\\\\";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                case '\t' -> "\\t";
+                default -> c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+            };
+            if (escape != null) {
+                write(value, start, i - start);
+                write(escape);
+                start = i + 1;
+            }
+        }
+        write(value, start, value.length() - start);
+        write('"');
+    }
+
+    private void write(char c) {
+        try {
+            writer.write(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String text) {
+        write(text, 0, text.length());
+    }
+
+    private void write(String text, int offset, int length) {
+        try {
+            writer.write(text, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
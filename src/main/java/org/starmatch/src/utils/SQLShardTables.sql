@@ -0,0 +1,10 @@
+-- Extra table of every database used as a shard of ShardedUserDBRepository, created after SQLTables.sql
+
+-- Table for User_RemoteFriends (friendships with users stored in another shard, which no foreign key can reference)
+CREATE TABLE IF NOT EXISTS "User_RemoteFriends" (
+                                                  userId INTEGER NOT NULL,
+                                                  friendId INTEGER NOT NULL,     -- ID of the friend in its own shard
+                                                  friendEmail TEXT NOT NULL,     -- Email of the friend, kept for the raw friend emails
+                                                  PRIMARY KEY (userId, friendId),
+                                                  FOREIGN KEY (userId) REFERENCES "User" (id) ON DELETE CASCADE
+);
@@ -0,0 +1,311 @@
+package org.starmatch.src.utils;
+
+import org.starmatch.src.bulk.UserCsvImporter;
+import org.starmatch.src.model.User;
+import org.starmatch.src.repository.BinaryFileRepository;
+import org.starmatch.src.repository.DBRepo.UserDBRepository;
+import org.starmatch.src.repository.FriendshipCopier;
+import org.starmatch.src.repository.Repository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates large, realistic-looking user bases for scale tests, benchmarks and load tests.
+ * <p>
+ * The data set is fully determined by the seed and the number of users. Each user is derived from the seed and its
+ * ID alone, so users can be generated lazily, in any order or in parallel, and generated again for a second pass
+ * without keeping them in memory.
+ * </p>
+ * <ul>
+ *     <li>Ages follow a normal distribution around 29 years, between 18 and 80, on {@link #REFERENCE_DATE}.</li>
+ *     <li>Most birth times cluster around the late morning, the rest are spread over the whole day.</li>
+ *     <li>Birth places are drawn from Romanian cities weighted by their population.</li>
+ *     <li>The friend graph is power-law: friend counts follow a Pareto distribution, and friends are picked with a
+ *     Zipf distribution over a shuffled ranking of the users, so a few hub users appear in many friend lists.</li>
+ * </ul>
+ */
+public class SyntheticDataGenerator {
+    /**
+     * Date on which the ages of the generated users are computed, fixed so that the data does not change over time.
+     */
+    public static final LocalDate REFERENCE_DATE = LocalDate.of(2024, 1, 1);
+
+    private static final double MEAN_AGE = 29;
+    private static final double AGE_DEVIATION = 9;
+    private static final int MIN_AGE = 18;
+    private static final int MAX_AGE = 80;
+
+    private static final double DAYTIME_BIRTH_SHARE = 0.7;
+    private static final double MEAN_DAYTIME_BIRTH_MINUTE = 11 * 60;
+    private static final double DAYTIME_BIRTH_DEVIATION = 4 * 60;
+
+    private static final int MIN_FRIENDS = 2;
+    private static final double FRIEND_COUNT_EXPONENT = 1.8;
+    private static final int MAX_FRIENDS = 2000;
+
+    private static final String[] CITIES = {
+            "Bucharest", "Cluj", "Iasi", "Constanta", "Timisoara", "Brasov", "Craiova", "Galati", "Oradea", "Ploiesti",
+            "Braila", "Arad", "Pitesti", "Sibiu", "Bacau", "Targu Mures", "Baia Mare", "Buzau", "Botosani", "Satu Mare"
+    };
+    private static final int[] CITY_POPULATIONS = {
+            1716, 286, 271, 263, 250, 237, 234, 217, 183, 180, 154, 145, 141, 134, 128, 116, 108, 102, 94, 91
+    };
+    private static final String[] FIRST_NAMES = {
+            "Andrei", "Maria", "Alexandru", "Elena", "Mihai", "Ioana", "Stefan", "Ana", "David", "Andreea",
+            "Gabriel", "Cristina", "Darius", "Bianca", "Luca", "Sofia", "Matei", "Amna", "Florian", "Briana"
+    };
+    private static final String[] LAST_NAMES = {
+            "Popa", "Popescu", "Ionescu", "Pop", "Radu", "Dumitru", "Stan", "Stoica", "Gheorghe", "Matei",
+            "Ciobanu", "Rusu", "Munteanu", "Marin", "Tudor", "Moldovan", "Ilie", "Florea", "Dinu", "Lazar"
+    };
+    private static final String[] DOMAINS = {"gmail.com", "yahoo.com", "outlook.com"};
+
+    private final long seed;
+    private final int userCount;
+    private final long[] cumulativeCityPopulation;
+    private final long rankStride;
+
+    /**
+     * Creates a generator of users with IDs from 1 to the user count.
+     *
+     * @param seed      the seed determining the whole data set
+     * @param userCount the number of users
+     */
+    public SyntheticDataGenerator(long seed, int userCount) {
+        if (userCount < 1) {
+            throw new IllegalArgumentException("At least one user is needed");
+        }
+        this.seed = seed;
+        this.userCount = userCount;
+        this.cumulativeCityPopulation = new long[CITY_POPULATIONS.length];
+        long total = 0;
+        for (int i = 0; i < CITY_POPULATIONS.length; i++) {
+            total += CITY_POPULATIONS[i];
+            cumulativeCityPopulation[i] = total;
+        }
+        this.rankStride = coprimeStride(seed, userCount);
+    }
+
+    /**
+     * Gets the number of generated users.
+     *
+     * @return the user count
+     */
+    public int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * Generates one user. The same ID always gives an equal user.
+     *
+     * @param id the ID of the user, from 1 to the user count
+     * @return the user, with its friends as raw friend emails
+     */
+    public User user(int id) {
+        SplittableRandom random = random(id);
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        User user = new User(id, firstName + " " + lastName, birthDate(random), birthTime(random), birthPlace(random),
+                email(id), "pass" + Long.toHexString(random.nextLong() & 0xFFFFFFL));
+
+        int friendCount = friendCount(random);
+        List<String> friendEmails = new ArrayList<>(friendCount);
+        for (int i = 0; i < friendCount; i++) {
+            int friendId = friendId(random);
+            if (friendId != id) {
+                friendEmails.add(email(friendId));
+            }
+        }
+        user.setRawFriendEmails(friendEmails.stream().distinct().toList());
+        return user;
+    }
+
+    /**
+     * Generates all users lazily, in ID order.
+     *
+     * @return the stream of users
+     */
+    public Stream<User> users() {
+        return IntStream.rangeClosed(1, userCount).mapToObj(this::user);
+    }
+
+    /**
+     * Gets the email of a generated user, which is unique to its ID.
+     *
+     * @param id the ID of the user
+     * @return the email of the user
+     */
+    public String email(int id) {
+        SplittableRandom random = random(id);
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        return (firstName + "." + lastName + id + "@" + DOMAINS[id % DOMAINS.length]).toLowerCase();
+    }
+
+    /**
+     * Stores all users in a repository, in batches of {@link UserCsvImporter#BATCH_SIZE} through
+     * {@link Repository#createAll}, which the database backend implements with {@code COPY}. The friendships of a
+     * database are copied in a second pass, once every user exists, by generating the users again.
+     * <p>
+     * The file backends rewrite their whole file per batch, so {@link #writeCsv} and {@link #writeBinary} are the
+     * way to fill them.
+     * </p>
+     *
+     * @param repository the repository to fill
+     * @return the number of stored users
+     */
+    public int writeTo(Repository<User> repository) {
+        List<User> batch = new ArrayList<>(UserCsvImporter.BATCH_SIZE);
+        for (int id = 1; id <= userCount; id++) {
+            batch.add(user(id));
+            if (batch.size() == UserCsvImporter.BATCH_SIZE) {
+                repository.createAll(batch);
+                batch = new ArrayList<>(UserCsvImporter.BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            repository.createAll(batch);
+        }
+        if (repository instanceof FriendshipCopier friendshipCopier) {
+            friendshipCopier.copyFriendships(users().iterator());
+        }
+        return userCount;
+    }
+
+    /**
+     * Writes all users to a CSV file in the format of the file-based storage, streaming them without keeping them
+     * in memory. An existing file is overwritten.
+     *
+     * @param csvFile the file to write
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public void writeCsv(Path csvFile) {
+        try (BufferedWriter writer = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= userCount; id++) {
+                writer.write(user(id).convertObjectToLine());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + csvFile, e);
+        }
+    }
+
+    /**
+     * Writes all users to a file in the format of {@link BinaryFileRepository}, streaming them without keeping them
+     * in memory. An existing file is overwritten.
+     *
+     * @param binaryFile the file to write
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public void writeBinary(Path binaryFile) {
+        new BinaryFileRepository<>(binaryFile.toString(), User.class)
+                .replaceAll(IntStream.rangeClosed(1, userCount).mapToObj(this::user).iterator(), userCount);
+    }
+
+    /**
+     * Gets the random source of a user, which always starts with the draws of its first and last name.
+     */
+    private SplittableRandom random(int id) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + id);
+    }
+
+    /**
+     * Writes a generated user base to a backend:
+     * {@code SyntheticDataGenerator <csv|binary|database> <userCount> <seed> <file or JDBC URL> [dbUser dbPassword]}.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: SyntheticDataGenerator <csv|binary|database> <userCount> <seed> <file or JDBC URL> [dbUser dbPassword]");
+            return;
+        }
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(Long.parseLong(args[2]), Integer.parseInt(args[1]));
+        long start = System.nanoTime();
+        switch (args[0]) {
+            case "csv" -> generator.writeCsv(Path.of(args[3]));
+            case "binary" -> generator.writeBinary(Path.of(args[3]));
+            case "database" -> {
+                try (UserDBRepository repository = new UserDBRepository(args[3],
+                        args.length > 4 ? args[4] : "postgres", args.length > 5 ? args[5] : "")) {
+                    generator.writeTo(repository);
+                }
+            }
+            default -> {
+                System.out.println("Unknown backend " + args[0]);
+                return;
+            }
+        }
+        System.out.printf("Generated %d users in %.1f s%n", generator.getUserCount(), (System.nanoTime() - start) / 1e9);
+    }
+
+    private LocalDate birthDate(SplittableRandom random) {
+        double age;
+        do {
+            age = MEAN_AGE + gaussian(random) * AGE_DEVIATION;
+        } while (age < MIN_AGE || age > MAX_AGE);
+        return REFERENCE_DATE.minusDays((long) (age * 365.25));
+    }
+
+    private LocalTime birthTime(SplittableRandom random) {
+        int minute;
+        if (random.nextDouble() < DAYTIME_BIRTH_SHARE) {
+            minute = Math.floorMod(Math.round(MEAN_DAYTIME_BIRTH_MINUTE + gaussian(random) * DAYTIME_BIRTH_DEVIATION), 24 * 60);
+        } else {
+            minute = random.nextInt(24 * 60);
+        }
+        return LocalTime.of(minute / 60, minute % 60);
+    }
+
+    private String birthPlace(SplittableRandom random) {
+        long pick = random.nextLong(cumulativeCityPopulation[cumulativeCityPopulation.length - 1]);
+        int index = Arrays.binarySearch(cumulativeCityPopulation, pick + 1);
+        return CITIES[index >= 0 ? index : -index - 1];
+    }
+
+    /**
+     * Draws a friend count from a Pareto distribution: most users have a few friends, some have hundreds.
+     */
+    private int friendCount(SplittableRandom random) {
+        double count = MIN_FRIENDS / Math.pow(1 - random.nextDouble(), 1 / FRIEND_COUNT_EXPONENT);
+        return (int) Math.min(Math.min(count, MAX_FRIENDS), userCount - 1);
+    }
+
+    /**
+     * Draws a friend with a Zipf distribution over popularity ranks, whose rank {@code r} is picked with a probability
+     * proportional to {@code 1/r}. The ranks are spread over the IDs by a stride coprime to the user count, so that
+     * the hubs are not simply the first users.
+     */
+    private int friendId(SplittableRandom random) {
+        long rank = (long) Math.pow(userCount, random.nextDouble());
+        return (int) ((rank - 1) * rankStride % userCount) + 1;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static long coprimeStride(long seed, int userCount) {
+        long stride = Math.floorMod(seed * 0x5DEECE66DL, (long) userCount) + userCount / 3 + 1;
+        while (gcd(stride, userCount) != 1) {
+            stride++;
+        }
+        return stride;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,152 @@
+package org.starmatch;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.starmatch.src.utils.InMemoryData.*;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.function.Supplier;
+
+import org.starmatch.src.StarMatchService;
+import org.starmatch.src.model.*;
+
+/**
+ * This class checks the bytes allocated per call by the hot methods of the service against a budget, so that
+ * allocations removed from them do not come back. The allocations are read from the thread MXBean of the JVM,
+ * after a warm-up letting the JIT compile the calls, and the tests are skipped on JVMs that cannot measure them.
+ * The JIT compiles in the background, so a call is measured over several rounds and its lowest round counts; the
+ * flight recorder events of the calls are only free once compiled.
+ * The in-memory repository finds users by email through its index, so no budget allows for a list of the users.
+ */
+public class StarMatchAllocationTest {
+    private static final int WARM_UP_CALLS = 50_000;
+    private static final int MEASURED_CALLS = 20_000;
+    private static final int MEASURED_ROUNDS = 10;
+
+    /**
+     * Keeps the results of the measured calls alive, so that the JIT does not remove the calls.
+     */
+    private static volatile Object sink;
+
+    private StarMatchService starMatchService;
+    private User user;
+    private User friend;
+    private NatalChart chart;
+    private int index;
+
+    /**
+     * Creates a service on the in-memory repositories, with two users who are friends.
+     */
+    @BeforeEach
+    void setUp() {
+        starMatchService = new StarMatchService(createInMemoryUserRepository(), createInMemoryAdminRepository(),
+                createInMemoryStarSignRepository(), createInMemoryQuoteRepository(), createInMemoryTraitRepository());
+        user = starMatchService.getUsers().getFirst();
+        friend = starMatchService.getUsers().getLast();
+        starMatchService.addFriend(user, friend.getEmail());
+        user = starMatchService.getUserByEmail(user.getEmail());
+        chart = starMatchService.getNatalChart(user);
+    }
+
+    /**
+     * Measures the bytes allocated by a call, averaged over many calls, and fails if they exceed the budget in every
+     * round.
+     *
+     * @param method the name of the method, for the failure message
+     * @param budget the most bytes a call may allocate
+     * @param call   the call to measure
+     */
+    private static void assertAllocationBudget(String method, long budget, Supplier<?> call) {
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "The JVM cannot measure allocations");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported(), "The JVM cannot measure allocations");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            sink = call.get();
+        }
+        long bytesPerCall = Long.MAX_VALUE;
+        for (int round = 0; round < MEASURED_ROUNDS && bytesPerCall > budget; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < MEASURED_CALLS; i++) {
+                sink = call.get();
+            }
+            bytesPerCall = Math.min(bytesPerCall, (threads.getCurrentThreadAllocatedBytes() - before) / MEASURED_CALLS);
+        }
+        assertTrue(bytesPerCall <= budget,
+                method + " allocates " + bytesPerCall + " bytes per call, over its budget of " + budget + " bytes");
+    }
+
+    /**
+     * Tests that looking up a zodiac sign by index allocates nothing.
+     */
+    @Test
+    void testZodiacSignFromIndexAllocations() {
+        assertAllocationBudget("getZodiacSignFromIndex", 0, () -> StarMatchService.getZodiacSignFromIndex(index++));
+    }
+
+    /**
+     * Tests that computing the sign indexes of a birth date and time allocates nothing.
+     */
+    @Test
+    void testSignIndexAllocations() {
+        LocalDate birthDate = LocalDate.of(1995, 12, 15);
+        LocalTime birthTime = LocalTime.of(9, 0);
+        assertAllocationBudget("sunSignIndex", 0, () -> StarMatchService.sunSignIndex(birthDate));
+        assertAllocationBudget("moonSignIndex", 0, () -> StarMatchService.moonSignIndex(birthDate));
+        assertAllocationBudget("risingSignIndex", 0, () -> StarMatchService.risingSignIndex(birthTime));
+    }
+
+    /**
+     * Tests that scoring the name of a star sign allocates nothing.
+     */
+    @Test
+    void testNameToBinaryAllocations() {
+        assertEquals(1000001, StarMatchService.convertNameToBinary("A"));
+        // The score is reduced to a cached Boolean, as boxing it as a Long would allocate
+        assertAllocationBudget("convertNameToBinary", 0,
+                () -> StarMatchService.convertNameToBinary(StarMatchService.getZodiacSignFromIndex(index++)) % 2 == 0);
+    }
+
+    /**
+     * Tests that a natal chart reads the star signs once, allocating only the chart and the list of signs.
+     */
+    @Test
+    void testNatalChartAllocations() {
+        assertAllocationBudget("getNatalChart", 640, () -> starMatchService.getNatalChart(user));
+    }
+
+    /**
+     * Tests that picking a personalized quote allocates only the list of quotes, not a random generator
+     * or a copy of the matching quotes.
+     */
+    @Test
+    void testPersonalizedQuoteAllocations() {
+        assertAllocationBudget("getPersonalizedQuote", 384, () -> starMatchService.getPersonalizedQuote(chart));
+    }
+
+    /**
+     * Tests that logging in finds the user through the email index of the repository, allocating nothing.
+     */
+    @Test
+    void testLogInUserAllocations() {
+        String email = user.getEmail();
+        String password = user.getPassword();
+        assertAllocationBudget("logInUser", 0, () -> starMatchService.logInUser(email, password));
+    }
+
+    /**
+     * Tests that a compatibility allocates only the friend's natal chart and the result, with no list of the
+     * users read to find the friend and no strings built to score the sign names.
+     */
+    @Test
+    void testCompatibilityAllocations() {
+        assertAllocationBudget("calculateCompatibility", 512,
+                () -> starMatchService.calculateCompatibility(user, chart, friend.getEmail()));
+    }
+}
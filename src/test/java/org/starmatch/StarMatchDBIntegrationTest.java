@@ -0,0 +1,127 @@
+package org.starmatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.starmatch.src.model.*;
+import org.starmatch.src.repository.QueryCounter;
+import org.starmatch.src.repository.DBRepo.*;
+
+/**
+ * This class checks the number of SQL queries issued by the database repositories, so that N+1 query patterns
+ * do not come back. It runs against a PostgreSQL database created with {@code SQLTables.sql}, given by the
+ * STARMATCH_TEST_DB_URL environment variable (with STARMATCH_TEST_DB_USER and STARMATCH_TEST_DB_PASSWORD,
+ * postgres and 1234 by default), and is skipped without it. Every test runs in a transaction that is rolled back.
+ */
+public class StarMatchDBIntegrationTest {
+    private final QueryCounter counter = new QueryCounter();
+    private Connection connection;
+    private UserDBRepository userDBRepo;
+    private StarSignDBRepository starSignDBRepo;
+    private QuoteDBRepository quoteDBRepo;
+    private TraitDBRepository traitDBRepo;
+    private AdminDBRepository adminDBRepo;
+
+    /**
+     * Connects to the test database and adds a few users with friendships, inside a transaction.
+     */
+    @BeforeEach
+    void setUp() throws SQLException {
+        String url = System.getenv("STARMATCH_TEST_DB_URL");
+        Assumptions.assumeTrue(url != null && !url.isBlank(), "STARMATCH_TEST_DB_URL is not set");
+        String user = System.getenv().getOrDefault("STARMATCH_TEST_DB_USER", "postgres");
+        String password = System.getenv().getOrDefault("STARMATCH_TEST_DB_PASSWORD", "1234");
+
+        connection = counter.wrap(DriverManager.getConnection(url, user, password));
+        connection.setAutoCommit(false);
+        userDBRepo = new UserDBRepository(connection);
+        starSignDBRepo = new StarSignDBRepository(connection);
+        quoteDBRepo = new QuoteDBRepository(connection);
+        traitDBRepo = new TraitDBRepository(connection);
+        adminDBRepo = new AdminDBRepository(connection);
+
+        User first = new User(0, "Query Count One", LocalDate.of(1995, 12, 15), LocalTime.of(9, 0), "Cluj", "querycount1@gmail.com", "test123");
+        userDBRepo.create(first);
+        for (int i = 2; i <= 10; i++) {
+            User other = new User(0, "Query Count " + i, LocalDate.of(1990 + i, i, i), LocalTime.of(i, 0), "Bucharest", "querycount" + i + "@gmail.com", "test123");
+            other.setFriends(List.of(first));
+            userDBRepo.create(other);
+        }
+    }
+
+    /**
+     * Rolls back the changes of the test and closes the connection.
+     */
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (connection != null) {
+            connection.rollback();
+            connection.close();
+        }
+    }
+
+    /**
+     * Tests that reading users costs a fixed number of queries, whatever the number of users and friendships.
+     */
+    @Test
+    void testUserQueryCount() {
+        List<User> users = assertMaxQueries(2, () -> userDBRepo.getAll());
+        User friend = users.stream().filter(user -> user.getEmail().equals("querycount2@gmail.com")).findFirst().orElseThrow();
+        assertEquals(List.of("querycount1@gmail.com"), friend.getRawFriendEmails());
+        assertEquals("querycount1@gmail.com", friend.getFriends().getFirst().getEmail());
+
+        User fetched = assertMaxQueries(2, () -> userDBRepo.get(friend.getId()));
+        assertEquals(friend.getRawFriendEmails(), fetched.getRawFriendEmails());
+        assertEquals(1, fetched.getFriends().size());
+    }
+
+    /**
+     * Tests that reading star signs loads the traits of all of them with a single query.
+     */
+    @Test
+    void testStarSignQueryCount() {
+        List<StarSign> starSigns = assertMaxQueries(2, () -> starSignDBRepo.getAll());
+        assertMaxQueries(2, () -> {
+            try (Stream<StarSign> stream = starSignDBRepo.stream()) {
+                return stream.count();
+            }
+        });
+        if (!starSigns.isEmpty()) {
+            assertMaxQueries(2, () -> starSignDBRepo.get(starSigns.getFirst().getId()));
+        }
+    }
+
+    /**
+     * Tests that the repositories without associations read all their rows with one query.
+     */
+    @Test
+    void testSimpleQueryCount() {
+        assertMaxQueries(1, () -> quoteDBRepo.getAll());
+        assertMaxQueries(1, () -> traitDBRepo.getAll());
+        assertMaxQueries(1, () -> adminDBRepo.getAll());
+    }
+
+    /**
+     * Runs an operation and checks that it issued at most a number of queries, listing them otherwise.
+     */
+    private <T> T assertMaxQueries(int max, Supplier<T> operation) {
+        try (QueryCounter.Recording recording = counter.record()) {
+            T result = operation.get();
+            assertTrue(recording.getStatementCount() <= max,
+                    "Expected at most " + max + " queries but got " + recording.getStatementCount() + ": " + recording.getStatements());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.starmatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.starmatch.src.model.User;
+import org.starmatch.src.repository.DBRepo.ShardedUserDBRepository;
+
+/**
+ * This class tests the sharded user repository across several PostgreSQL databases, each one created with
+ * {@code SQLTables.sql} and {@code SQLShardTables.sql}. The databases are given, comma-separated, by the
+ * STARMATCH_TEST_SHARD_URLS environment variable (with STARMATCH_TEST_DB_USER and STARMATCH_TEST_DB_PASSWORD,
+ * postgres and 1234 by default), and the tests are skipped without at least two of them. The shards commit their
+ * changes, so every test deletes the users it created.
+ */
+public class StarMatchShardedDBIntegrationTest {
+    private static final int USER_COUNT = 20;
+
+    private ShardedUserDBRepository userDBRepo;
+    private final List<User> created = new ArrayList<>();
+
+    /**
+     * Connects to the shards and adds users with emails unique to this run, which land in several shards.
+     */
+    @BeforeEach
+    void setUp() {
+        String urls = System.getenv("STARMATCH_TEST_SHARD_URLS");
+        Assumptions.assumeTrue(urls != null && urls.split(",").length >= 2, "STARMATCH_TEST_SHARD_URLS does not list two databases");
+        String user = System.getenv().getOrDefault("STARMATCH_TEST_DB_USER", "postgres");
+        String password = System.getenv().getOrDefault("STARMATCH_TEST_DB_PASSWORD", "1234");
+        userDBRepo = new ShardedUserDBRepository(List.of(urls.split(",")), user, password);
+
+        long run = System.nanoTime();
+        for (int i = 1; i <= USER_COUNT; i++) {
+            User shardUser = new User(0, "Shard Test " + i, LocalDate.of(1990, 1 + i % 12, i), LocalTime.of(i, 0), "Cluj",
+                    "shardtest" + run + "-" + i + "@gmail.com", "test123");
+            userDBRepo.create(shardUser);
+            created.add(shardUser);
+        }
+    }
+
+    /**
+     * Deletes the users created by the test and closes the shards.
+     */
+    @AfterEach
+    void tearDown() {
+        if (userDBRepo != null) {
+            created.forEach(user -> userDBRepo.delete(user.getId()));
+            userDBRepo.close();
+        }
+    }
+
+    /**
+     * Tests that new users are spread over the shards, each one with IDs telling its shard, and are read back
+     * from every shard.
+     */
+    @Test
+    void testUsersAreSpreadAcrossShards() {
+        Set<Integer> shardsUsed = created.stream()
+                .map(user -> Math.floorMod(user.getId(), userDBRepo.getShardCount()))
+                .collect(Collectors.toSet());
+        assertTrue(shardsUsed.size() >= 2, "All users landed in the shards " + shardsUsed);
+
+        for (User user : created) {
+            assertEquals(user.getEmail(), userDBRepo.get(user.getId()).getEmail());
+        }
+        Set<Integer> allIds = userDBRepo.getAll().stream().map(User::getId).collect(Collectors.toSet());
+        assertTrue(allIds.containsAll(created.stream().map(User::getId).toList()));
+        assertTrue(userDBRepo.getIdsByEmail().keySet().containsAll(created.stream().map(User::getEmail).toList()));
+    }
+
+    /**
+     * Tests that a friendship between users of different shards is read back, follows the friend changing
+     * their email and goes away when the friend is deleted.
+     */
+    @Test
+    void testCrossShardFriendship() {
+        int shardCount = userDBRepo.getShardCount();
+        User user = created.getFirst();
+        User friend = created.stream()
+                .filter(other -> Math.floorMod(other.getId(), shardCount) != Math.floorMod(user.getId(), shardCount))
+                .findFirst().orElseThrow();
+
+        user.setFriends(List.of(friend));
+        userDBRepo.update(user);
+        assertEquals(List.of(friend.getId()), userDBRepo.get(user.getId()).getFriends().stream().map(User::getId).toList());
+
+        friend.setEmail("renamed-" + friend.getEmail());
+        userDBRepo.update(friend);
+        assertEquals(List.of(friend.getEmail()), userDBRepo.get(user.getId()).getRawFriendEmails());
+
+        userDBRepo.delete(friend.getId());
+        created.remove(friend);
+        assertEquals(List.of(), userDBRepo.get(user.getId()).getFriends());
+    }
+}
@@ -4,17 +4,63 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.starmatch.src.utils.InMemoryData.*;
+import static org.mockito.Mockito.*;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.starmatch.src.AsyncStarMatchService;
+import org.starmatch.src.BatchApp;
+import org.starmatch.src.HttpApp;
+import org.starmatch.src.InstrumentedStarMatchService;
+import org.starmatch.src.LoadTestApp;
+import org.starmatch.src.StarMatchController;
 import org.starmatch.src.StarMatchService;
+import org.starmatch.src.UserSession;
+import org.starmatch.src.analytics.UserStatistics;
+import org.starmatch.src.bulk.RepositorySnapshot;
+import org.starmatch.src.bulk.UserCsvImporter;
 import org.starmatch.src.exceptions.BusinessLogicException;
 import org.starmatch.src.exceptions.EntityNotFoundException;
+import org.starmatch.src.metrics.FlightRecording;
+import org.starmatch.src.metrics.LatencyHistogram;
+import org.starmatch.src.metrics.MetricsRegistry;
+import org.starmatch.src.metrics.OperationMetrics;
 import org.starmatch.src.model.*;
 import org.starmatch.src.repository.*;
+import org.starmatch.src.utils.CsvToBinaryConverter;
+import org.starmatch.src.utils.Json;
+import org.starmatch.src.utils.SyntheticDataGenerator;
 
 /**
  * Unit tests for the StarMatch application.
@@ -206,6 +252,18 @@ public class StarMatchTest {
 
         EntityNotFoundException exceptionRemoveInvalidFriend = assertThrows(EntityNotFoundException.class, () -> service.removeFriend(user, "unemail@yahoo.com"));
         assertEquals("User with that email does not exist", exceptionRemoveInvalidFriend.getMessage());
+
+        // The compact storage hands out copies, so two sessions of a user hold different snapshots of it
+        CompactUserRepository compact = new CompactUserRepository();
+        userRepository.getAll().forEach(compact::create);
+        StarMatchService compactService = new StarMatchService(compact, adminRepository, signRepository, quoteRepository, traitRepository);
+        User firstSession = compactService.getUserByEmail(user.getEmail());
+        User secondSession = compactService.getUserByEmail(user.getEmail());
+        compactService.addFriend(firstSession, friend.getEmail());
+        User stored = compactService.addFriend(secondSession, "amna@gmail.com");
+        assertEquals(Set.of(friend.getEmail(), "amna@gmail.com"), Set.copyOf(stored.getRawFriendEmails()));
+        stored = compactService.removeFriend(firstSession, "amna@gmail.com");
+        assertEquals(List.of(friend.getEmail()), stored.getRawFriendEmails());
     }
 
     @Test
@@ -263,6 +321,774 @@ public class StarMatchTest {
         assertFalse(popularElements.isEmpty());
     }
 
+    @Test
+    public void testUserStatistics() {
+        User user = new User(5, "Test User", LocalDate.of(1995, 12, 15), LocalTime.of(9, 0), "Cluj", "testuser@gmail.com", "test123");
+        userRepository.create(user);
+        StarMatchService service = new StarMatchService(userRepository, adminRepository, signRepository, quoteRepository, traitRepository);
+
+        UserStatistics statistics = service.getUserStatistics();
+        assertEquals(5L, statistics.getUserCount());
+        assertEquals(service.mostPopularElements(userRepository.getAll()), statistics.getElementCounts());
+        assertEquals(Map.of(Element.Water, 1L, Element.Fire, 2L), statistics.getElementCountsByBirthPlace().get("Cluj"));
+        assertEquals(Map.of(Element.Fire, 1L), statistics.getElementCountsByBirthYear().get(1995));
+
+        int sun = StarMatchService.sunSignIndex(user.getBirthDate());
+        int moon = StarMatchService.moonSignIndex(user.getBirthDate());
+        int rising = StarMatchService.risingSignIndex(user.getBirthTime());
+        assertEquals("Sagittarius", StarMatchService.getZodiacSignFromIndex(sun));
+        assertTrue(statistics.getSignTripleCount(sun, moon, rising) >= 1);
+    }
+
+    @Test
+    public void testBulkUserImport() throws IOException {
+        Path csvFile = Files.createTempFile("users", ".txt");
+        Path storeFile = Files.createTempFile("store", ".txt");
+        Files.write(csvFile, List.of(
+                "10,Ana,ana@gmail.com,pass,1999-04-02,08:30,Iasi,bob@gmail.com",
+                "11,Bob,bob@gmail.com,pass,1998-11-30,17:45,Iasi,ana@gmail.com,amna@gmail.com",
+                "",
+                "12,Cleo,cleo@gmail.com,pass,2001-01-15,23:10,Brasov,"));
+
+        assertEquals(3, new UserCsvImporter(userRepository).importFile(csvFile));
+        assertEquals(7, userRepository.getAll().size());
+        assertEquals(List.of("ana@gmail.com", "amna@gmail.com"), userRepository.get(11).getRawFriendEmails());
+
+        Repository<User> fileRepository = new InFileRepository<>(storeFile.toString(), User.class);
+        assertEquals(3, new UserCsvImporter(fileRepository).importFile(csvFile));
+        assertEquals(3, fileRepository.getAll().size());
+        assertEquals("Ana", fileRepository.get(11).getFriends().getFirst().getName());
+
+        Files.delete(csvFile);
+        Files.delete(storeFile);
+    }
+
+    @Test
+    public void testSnapshotExportAndRestore() throws IOException {
+        Path snapshotFile = Files.createTempFile("snapshot", ".bin");
+        userRepository.get(1).setRawFriendEmails(List.of("florinel@gmail.com"));
+        quoteRepository.create(new Quote(17, Element.Air, "Commas, \"quotes\" and new\nlines survive"));
+
+        RepositorySnapshot source = new RepositorySnapshot(userRepository, adminRepository, signRepository, quoteRepository, traitRepository);
+        long exported = source.export(snapshotFile);
+        assertEquals(4L + 2 + 12 + 17 + 12, exported);
+
+        Repository<User> users = new InMemoryRepository<>();
+        Repository<Admin> admins = new InMemoryRepository<>();
+        Repository<StarSign> signs = new InMemoryRepository<>();
+        Repository<Quote> quotes = new InMemoryRepository<>();
+        Repository<Trait> traits = new InMemoryRepository<>();
+        assertEquals(exported, new RepositorySnapshot(users, admins, signs, quotes, traits).restore(snapshotFile));
+
+        assertEquals(List.of("florinel@gmail.com"), users.get(1).getRawFriendEmails());
+        assertEquals(LocalTime.of(22, 12), users.get(3).getBirthTime());
+        assertEquals("Ioana Popa", admins.get(2).getName());
+        assertEquals("Commas, \"quotes\" and new\nlines survive", quotes.get(17).getQuoteText());
+        assertEquals(traits.get(1), signs.get(1).getTraits().getFirst());
+
+        Path usersFile = Files.createTempFile("users", ".txt");
+        Repository<User> fileUsers = new InFileRepository<>(usersFile.toString(), User.class);
+        new RepositorySnapshot(fileUsers, new InMemoryRepository<>(), new InMemoryRepository<>(), new InMemoryRepository<>(),
+                new InMemoryRepository<>()).restore(snapshotFile);
+        assertEquals(4, fileUsers.getAll().size());
+        assertEquals(List.of("florinel@gmail.com"), fileUsers.get(1).getRawFriendEmails());
+
+        Files.delete(usersFile);
+        Files.delete(snapshotFile);
+    }
+
+    @Test
+    public void testBinaryFileRepository() throws IOException {
+        Path csvFile = Files.createTempFile("quotes", ".txt");
+        Path binaryFile = Files.createTempFile("quotes", ".bin");
+        Path userFile = Files.createTempFile("users", ".bin");
+        Files.write(csvFile, List.of("1,Fire,Be bold", "2,Water,Go with the flow"));
+
+        assertEquals(2, CsvToBinaryConverter.convert(csvFile.toString(), binaryFile.toString(), Quote.class));
+        Repository<Quote> quotes = new BinaryFileRepository<>(binaryFile.toString(), Quote.class);
+        assertEquals("Go with the flow", quotes.get(2).getQuoteText());
+
+        quotes.create(new Quote(3, Element.Air, "Commas, \"quotes\" and all"));
+        quotes.delete(1);
+        assertEquals(2, quotes.getAll().size());
+        assertEquals("Commas, \"quotes\" and all", quotes.get(3).getQuoteText());
+        assertEquals(Element.Air, quotes.get(3).getElement());
+
+        Repository<User> users = new BinaryFileRepository<>(userFile.toString(), User.class);
+        userRepository.get(1).setRawFriendEmails(List.of("florinel@gmail.com"));
+        users.createAll(userRepository.getAll());
+        assertEquals(4, users.stream().count());
+        assertEquals(LocalDate.of(2000, 3, 12), users.get(1).getBirthDate());
+        assertEquals("Florian", users.get(1).getFriends().getFirst().getName());
+
+        byte[] content = Files.readAllBytes(binaryFile);
+        Files.write(binaryFile, Arrays.copyOf(content, content.length - 3));
+        assertThrows(UncheckedIOException.class, quotes::getAll);
+        assertThrows(UncheckedIOException.class, () -> quotes.create(new Quote(4, Element.Earth, "Stay grounded")));
+        assertEquals(content.length - 3, Files.size(binaryFile));
+
+        Files.delete(csvFile);
+        Files.delete(binaryFile);
+        Files.delete(userFile);
+    }
+
+    @Test
+    public void testLazyFriendResolution() throws IOException {
+        Path userFile = Files.createTempFile("users", ".txt");
+        Files.write(userFile, List.of(
+                "1,Ana,ana@gmail.com,pass,1999-04-02,08:30,Iasi,bob@gmail.com,ghost@gmail.com",
+                "2,Bob,bob@gmail.com,pass,1998-11-30,17:45,Iasi,ana@gmail.com",
+                "3,Cleo,cleo@gmail.com,pass,2001-01-15,23:10,Brasov,"));
+        Repository<User> fileRepository = new InFileRepository<>(userFile.toString(), User.class);
+
+        List<User> users = fileRepository.getAll();
+        User ana = users.stream().filter(u -> u.getId() == 1).findFirst().orElseThrow();
+        assertEquals(1, ana.getFriends().size());
+        assertSame(users.stream().filter(u -> u.getId() == 2).findFirst().orElseThrow(), ana.getFriends().getFirst());
+
+        StarMatchService service = new StarMatchService(fileRepository, adminRepository, signRepository, quoteRepository, traitRepository);
+        User bob = fileRepository.get(2);
+        bob = service.addFriend(bob, "cleo@gmail.com");
+        assertEquals(List.of("Ana", "Cleo"), bob.getFriends().stream().map(User::getName).toList());
+        assertEquals(List.of("ana@gmail.com", "cleo@gmail.com"), fileRepository.get(2).getRawFriendEmails());
+
+        Files.delete(userFile);
+    }
+
+    @Test
+    public void testWriteBehindFileRepository() throws IOException {
+        Path quoteFile = Files.createTempFile("quotes", ".txt");
+        WriteBehindFileRepository<Quote> quotes = new WriteBehindFileRepository<>(
+                new InFileRepository<>(quoteFile.toString(), Quote.class), 1000, Duration.ofMinutes(1),
+                WriteBehindFileRepository.FsyncPolicy.ON_CLOSE);
+
+        for (int i = 1; i <= 100; i++) {
+            quotes.create(new Quote(i, Element.Fire, "Quote " + i));
+        }
+        quotes.delete(100);
+        assertEquals(99, quotes.getAll().size());
+        assertEquals(0, Files.size(quoteFile));
+
+        quotes.flush();
+        assertEquals(99, new InFileRepository<>(quoteFile.toString(), Quote.class).getAll().size());
+
+        quotes.update(new Quote(1, Element.Water, "Updated"));
+        quotes.close();
+        assertEquals("Updated", new InFileRepository<>(quoteFile.toString(), Quote.class).get(1).getQuoteText());
+        assertThrows(IllegalStateException.class, () -> quotes.delete(1));
+
+        Files.delete(quoteFile);
+        Files.delete(Path.of(quoteFile + ".wal"));
+    }
+
+    @Test
+    public void testWriteAheadLogReplay() throws IOException {
+        Path directory = Files.createTempDirectory("wal");
+        Path quoteFile = directory.resolve("quotes.bin");
+        WriteBehindFileRepository<Quote> quotes = new WriteBehindFileRepository<>(
+                new BinaryFileRepository<>(quoteFile.toString(), Quote.class), 1000, Duration.ofMinutes(1),
+                WriteBehindFileRepository.FsyncPolicy.EVERY_WRITE);
+        for (int i = 1; i <= 10; i++) {
+            quotes.create(new Quote(i, Element.Fire, "Quote, " + i));
+        }
+        quotes.flush();
+        quotes.update(new Quote(2, Element.Air, "Changed"));
+        quotes.delete(3);
+
+        // The process dies without closing the repository, in the middle of appending a record
+        Files.write(Path.of(quoteFile + ".wal"), new byte[]{0, 0, 0, 50, 1, 2}, StandardOpenOption.APPEND);
+        assertEquals(10, new BinaryFileRepository<>(quoteFile.toString(), Quote.class).getAll().size());
+
+        WriteBehindFileRepository<Quote> reopened = new WriteBehindFileRepository<>(
+                new BinaryFileRepository<>(quoteFile.toString(), Quote.class));
+        assertEquals("Changed", reopened.get(2).getQuoteText());
+        assertNull(reopened.get(3));
+        assertEquals(9, new BinaryFileRepository<>(quoteFile.toString(), Quote.class).getAll().size());
+        reopened.close();
+        // Stops the flusher of the abandoned repository, which holds the same data
+        quotes.close();
+        assertEquals(9, new BinaryFileRepository<>(quoteFile.toString(), Quote.class).getAll().size());
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testParallelCsvLoader() throws IOException {
+        Path userFile = Files.createTempFile("users", ".txt");
+        List<String> lines = new ArrayList<>();
+        for (int i = 1; i <= 30_000; i++) {
+            lines.add(i + ",User " + i + ",user" + i + "@gmail.com,pass,1990-0" + (1 + i % 9) + "-1" + (i % 10) + ",0" + (i % 10) + ":30,Cluj,"
+                    + "user" + (i % 30_000 + 1) + "@gmail.com, user" + ((i + 7) % 30_000 + 1) + "@gmail.com" + (i % 2 == 0 ? "\r" : ""));
+        }
+        lines.add("");
+        lines.add("not a user");
+        lines.add("30001,Last,last@gmail.com,pass,2001-01-15,23:10:05,Brasov,");
+        Files.write(userFile, lines);
+        assertTrue(Files.size(userFile) > 2L * ParallelCsvLoader.MIN_CHUNK_SIZE);
+
+        Map<Integer, User> users = new ParallelCsvLoader<>(User.class).load(userFile);
+        assertEquals(30_001, users.size());
+        for (int id : new int[]{1, 12_345, 15_000, 29_999, 30_000}) {
+            User expected = User.createObjectFromFields(lines.get(id - 1).split(","));
+            User actual = users.get(id);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getBirthDate(), actual.getBirthDate());
+            assertEquals(expected.getBirthTime(), actual.getBirthTime());
+            assertEquals(expected.getRawFriendEmails(), actual.getRawFriendEmails());
+        }
+        assertEquals(LocalTime.of(23, 10, 5), users.get(30_001).getBirthTime());
+        assertTrue(users.get(30_001).getRawFriendEmails().isEmpty());
+        assertEquals("User 2", users.get(1).getFriends().getFirst().getName());
+
+        // Streaming the file parses it range by range, in file order
+        try (Stream<User> streamed = new InFileRepository<>(userFile.toString(), User.class).stream()) {
+            List<User> all = streamed.toList();
+            assertEquals(30_001, all.size());
+            for (int i = 0; i < all.size(); i++) {
+                assertEquals(i + 1, all.get(i).getId());
+            }
+            assertEquals(users.get(15_000).getRawFriendEmails(), all.get(14_999).getRawFriendEmails());
+        }
+
+        Files.delete(userFile);
+    }
+
+    @Test
+    public void testWatchingFileRepository() throws IOException {
+        Path quoteFile = Files.createTempFile("quotes", ".txt");
+        Files.write(quoteFile, List.of("1,Fire,Be bold", "2,Water,Go with the flow"));
+
+        try (WatchingFileRepository<Quote> quotes = new WatchingFileRepository<>(
+                new InFileRepository<>(quoteFile.toString(), Quote.class), Duration.ofMillis(50), Duration.ZERO)) {
+            assertEquals(2, quotes.getAll().size());
+
+            Files.write(quoteFile, List.of("1,Fire,Be bold", "2,Water,Go with the flow", "3,Air,Think freely"));
+            assertEquals("Think freely", quotes.get(3).getQuoteText());
+
+            quotes.create(new Quote(4, Element.Earth, "Stay grounded"));
+            assertEquals(4, quotes.getAll().size());
+            assertEquals(4, new InFileRepository<>(quoteFile.toString(), Quote.class).getAll().size());
+        }
+
+        Files.delete(quoteFile);
+    }
+
+    @Test
+    public void testWatchingFileRepositoryReloadsOnFileEvents() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("watched");
+        Path quoteFile = directory.resolve("quotes.txt");
+        Files.write(quoteFile, List.of("1,Fire,Be bold"));
+
+        // Reads never check the file themselves, so only the watcher can see the change
+        try (WatchingFileRepository<Quote> quotes = new WatchingFileRepository<>(
+                new InFileRepository<>(quoteFile.toString(), Quote.class), Duration.ofMillis(50), Duration.ofHours(1))) {
+            Files.write(quoteFile, List.of("1,Fire,Be bold", "2,Water,Go with the flow"));
+            Files.write(quoteFile, List.of("1,Fire,Be bold", "2,Water,Go with the flow", "3,Air,Think freely"));
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (quotes.get(3) == null && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals("Think freely", quotes.get(3).getQuoteText());
+            assertEquals(3, quotes.getAll().size());
+        }
+
+        Files.delete(quoteFile);
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testShardedFileRepository() throws IOException {
+        Path directory = Files.createTempDirectory("shards");
+        ShardedFileRepository<User> users = ShardedFileRepository.open(directory.toString(), "users", 4, User.class);
+        userRepository.get(1).setRawFriendEmails(List.of("florinel@gmail.com", "soremarian@gmail.com"));
+        users.createAll(userRepository.getAll());
+        users.create(new User(5, "Ana", LocalDate.of(1999, 4, 2), LocalTime.of(8, 30), "Iasi", "ana@gmail.com", "pass"));
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(4, files.count());
+        }
+        assertEquals(5, users.getAll().size());
+        users.delete(3);
+        assertNull(users.get(3));
+
+        ShardedFileRepository<User> reopened = ShardedFileRepository.open(directory.toString(), "users", 4, User.class);
+        assertEquals(4, reopened.getAll().size());
+        assertEquals("Ana", reopened.get(5).getName());
+        assertEquals(List.of("Florian", "sore marian"), reopened.get(1).getFriends().stream().map(User::getName).toList());
+
+        // The old email of a user no longer finds them once they changed it
+        User florian = users.getAll().stream().filter(user -> user.getEmail().equals("florinel@gmail.com")).findFirst().orElseThrow();
+        users.update(new User(florian.getId(), florian.getName(), florian.getBirthDate(), florian.getBirthTime(),
+                florian.getBirthPlace(), "florian@gmail.com", florian.getPassword()));
+        assertEquals(List.of("sore marian"), users.get(1).getFriends().stream().map(User::getName).toList());
+
+        // Objects created batch by batch all reach the shard files
+        ShardedFileRepository<User> batched = ShardedFileRepository.open(directory.toString(), "batched", 3, User.class);
+        assertEquals(4, batched.createAll(userRepository.getAll().iterator(), 3));
+        assertEquals(4, ShardedFileRepository.open(directory.toString(), "batched", 3, User.class).getAll().size());
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testReplicaRouter() {
+        Connection primary = mock(Connection.class);
+        Connection lagging = mock(Connection.class);
+        Connection current = mock(Connection.class);
+        ReplicaRouter router = new ReplicaRouter(List.of(lagging, current), Duration.ofMillis(200),
+                replica -> replica == lagging ? Duration.ofSeconds(5) : Duration.ZERO);
+
+        assertSame(current, router.route(primary));
+        assertSame(current, router.route(primary));
+
+        router.recordWrite();
+        assertSame(primary, router.route(primary));
+
+        // A write sticks its session to the primary on any thread, and leaves the other sessions on the replicas
+        Object writer = new Object();
+        Object reader = new Object();
+        ReplicaRouter.callInSession(writer, () -> {
+            router.recordWrite();
+            return null;
+        });
+        assertSame(primary, ReplicaRouter.callInSession(writer, () -> router.route(primary)));
+        assertSame(current, ReplicaRouter.callInSession(reader, () -> router.route(primary)));
+
+        ReplicaRouter noReplicas = new ReplicaRouter(List.of(), Duration.ofMillis(200), replica -> Duration.ZERO);
+        assertSame(primary, noReplicas.route(primary));
+    }
+
+    @Test
+    public void testStatementCache() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString(), anyInt())).thenAnswer(invocation -> mock(PreparedStatement.class));
+        StatementCache cache = new StatementCache(connection, 2);
+
+        try (PreparedStatement statement = cache.prepare("SELECT 1")) {
+            assertFalse(statement.isClosed());
+        }
+        try (PreparedStatement statement = cache.prepare("SELECT 1")) {
+            try (PreparedStatement nested = cache.prepare("SELECT 1")) {
+                assertNotSame(statement, nested);
+            }
+        }
+        verify(connection, times(2)).prepareStatement("SELECT 1", Statement.NO_GENERATED_KEYS);
+        assertEquals(1, cache.size());
+
+        cache.prepare("SELECT 2").close();
+        cache.prepare("SELECT 3").close();
+        assertEquals(2, cache.size());
+        cache.prepare("SELECT 1").close();
+        verify(connection, times(3)).prepareStatement("SELECT 1", Statement.NO_GENERATED_KEYS);
+
+        cache.close();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testQueryCounter() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString(), anyInt())).thenAnswer(invocation -> mock(PreparedStatement.class));
+        when(connection.createStatement()).thenAnswer(invocation -> mock(Statement.class));
+        QueryCounter counter = new QueryCounter();
+        Connection counted = counter.wrap(connection);
+
+        try (QueryCounter.Recording recording = counter.record()) {
+            PreparedStatement statement = counted.prepareStatement("SELECT * FROM \"User\" WHERE id = ?", Statement.NO_GENERATED_KEYS);
+            assertSame(counted, statement.getConnection());
+            statement.executeQuery();
+            statement.executeQuery();
+            counted.createStatement().execute("SELECT 1");
+            counted.commit();
+            assertEquals(3, recording.getStatementCount());
+            assertEquals(4, recording.getRoundTripCount());
+            assertEquals(List.of("SELECT * FROM \"User\" WHERE id = ?", "SELECT * FROM \"User\" WHERE id = ?", "SELECT 1"),
+                    recording.getStatements());
+        }
+        counted.createStatement().executeUpdate("DELETE FROM \"User\"");
+        assertEquals(4, counter.getStatementCount());
+        assertEquals(5, counter.getRoundTripCount());
+        verify(connection).commit();
+
+        counter.reset();
+        assertEquals(0, counter.getStatementCount());
+    }
+
+    @Test
+    public void testUserSession() {
+        StarMatchService service = new StarMatchService(userRepository, adminRepository, signRepository, quoteRepository, traitRepository);
+        StarMatchController controller = new StarMatchController(service);
+        assertNull(controller.logInUser("amna@gmail.com", "wrong"));
+
+        UserSession session = controller.logInUser("amna@gmail.com", "parola");
+        assertEquals(1, session.getUserId());
+        NatalChart chart = controller.viewNatalChart(session);
+        assertSame(chart, controller.viewNatalChart(session));
+        assertEquals("Pisces", chart.getPlanets().getFirst().getSign().getStarName());
+
+        controller.updateUser(session, "", "", "", LocalDate.of(2000, 8, 1), null, "");
+        assertEquals("Leo", controller.viewNatalChart(session).getPlanets().getFirst().getSign().getStarName());
+
+        controller.addFriend(session, "florinel@gmail.com");
+        assertEquals(List.of("Florian"), controller.viewFriends(session).stream().map(User::getName).toList());
+        assertEquals(List.of(2), session.getFriendIds());
+        assertEquals(List.of("Florian"), controller.viewFriends(session).stream().map(User::getName).toList());
+    }
+
+    @Test
+    public void testBatchApp() throws IOException {
+        StarMatchService service = new StarMatchService(userRepository, adminRepository, signRepository, quoteRepository, traitRepository);
+        String script = String.join("\n",
+                "# replayed session",
+                "login amna@gmail.com parola",
+                "add-friend florinel@gmail.com",
+                "add-friend nobody@gmail.com",
+                "friends",
+                "quote",
+                "statistics",
+                "unknown-command",
+                "login \"amna@gmail.com\" wrong");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        BatchApp.Summary summary = new BatchApp(service, out).run(new BufferedReader(new StringReader(script)), false);
+        String output = out.toString(StandardCharsets.UTF_8);
+        assertEquals(8, summary.getCommandCount());
+        assertEquals(4, summary.getErrorCount());
+        assertEquals(2, summary.getCommandCounts().get("add-friend"));
+        assertEquals(2, summary.getCommandCounts().get("login"));
+        assertTrue(output.contains("Florian (florinel@gmail.com)"));
+        assertTrue(output.contains("No admin is logged in"));
+        assertTrue(output.contains("(add-friend): User with that email does not exist"));
+        assertTrue(output.contains("8 commands, 4 errors"));
+
+        BatchApp.Command command = BatchApp.parseJsonLine("{\"command\": \"signup\", \"args\": [\"Ana Pop\", \"2001-06-23\"]}");
+        assertEquals(new BatchApp.Command("signup", List.of("Ana Pop", "2001-06-23")), command);
+        assertEquals(command, BatchApp.parseScriptLine("signup \"Ana Pop\" 2001-06-23"));
+    }
+
+    @Test
+    public void testHttpApp() throws Exception {
+        StarMatchService service = new StarMatchService(userRepository, adminRepository, signRepository, quoteRepository, traitRepository);
+        try (HttpApp app = new HttpApp(service, 0, Duration.ofSeconds(1)); HttpClient client = HttpClient.newHttpClient()) {
+            app.start();
+            String base = "http://localhost:" + app.getPort();
+            HttpResponse<String> login = client.send(HttpRequest.newBuilder(URI.create(base + "/login"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"email\": \"amna@gmail.com\", \"password\": \"parola\"}")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, login.statusCode());
+            String token = (String) Json.parseObject(login.body()).get("token");
+
+            HttpResponse<String> friends = client.send(HttpRequest.newBuilder(URI.create(base + "/friends"))
+                    .header("Authorization", "Bearer " + token)
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"email\": \"florinel@gmail.com\"}")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, friends.statusCode());
+            assertEquals("Florian", ((Map<?, ?>) ((List<?>) Json.parse(friends.body())).getFirst()).get("name"));
+
+            HttpResponse<String> unknownFriend = client.send(HttpRequest.newBuilder(URI.create(base + "/friends"))
+                    .header("Authorization", "Bearer " + token)
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"email\": \"nobody@gmail.com\"}")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(404, unknownFriend.statusCode());
+            HttpResponse<String> self = client.send(HttpRequest.newBuilder(URI.create(base + "/friends"))
+                    .header("Authorization", "Bearer " + token)
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"email\": \"amna@gmail.com\"}")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(409, self.statusCode());
+
+            HttpResponse<String> chart = client.send(HttpRequest.newBuilder(URI.create(base + "/natal-chart"))
+                    .header("Authorization", "Bearer " + token).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("Pisces", ((Map<?, ?>) ((List<?>) Json.parse(chart.body())).getFirst()).get("sign"));
+
+            HttpResponse<String> anonymous = client.send(HttpRequest.newBuilder(URI.create(base + "/profile")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(401, anonymous.statusCode());
+
+            Thread.sleep(1500);
+            HttpResponse<String> expired = client.send(HttpRequest.newBuilder(URI.create(base + "/profile"))
+                    .header("Authorization", "Bearer " + token).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(401, expired.statusCode());
+        }
+    }
+
+    @Test
+    public void testAsyncStarMatchService() {
+        StarMatchService service = new StarMatchService(userRepository, adminRepository, signRepository, quoteRepository, traitRepository);
+        try (AsyncStarMatchService asyncService = new AsyncStarMatchService(service)) {
+            User user = asyncService.logInUser("amna@gmail.com", "parola").join();
+            AsyncStarMatchService.Insights insights = asyncService.getInsights(user).join();
+            assertEquals("Pisces", insights.natalChart().getPlanets().getFirst().getSign().getStarName());
+            assertEquals(service.getPersonalityTraits(user), insights.traits());
+            assertNotNull(insights.quote());
+
+            asyncService.addFriend(user, "florinel@gmail.com").join();
+            assertEquals(service.calculateCompatibility(user, "florinel@gmail.com").getCompatibilityScore(),
+                    asyncService.calculateCompatibility(user, "florinel@gmail.com").join().getCompatibilityScore());
+            CompletionException failure = assertThrows(CompletionException.class,
+                    () -> asyncService.calculateCompatibility(user, "nobody@gmail.com").join());
+            assertTrue(failure.getCause() instanceof EntityNotFoundException);
+        }
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        StarMatchService instrumented = new InstrumentedStarMatchService(userRepository, adminRepository, signRepository,
+                quoteRepository, traitRepository, metrics, "memory");
+        try (AsyncStarMatchService asyncService = new AsyncStarMatchService(instrumented)) {
+            User user = userRepository.getAll().getFirst();
+            asyncService.getInsights(user).join();
+            asyncService.calculateCompatibility(user, "florinel@gmail.com").join();
+        }
+        Map<MetricsRegistry.OperationKey, OperationMetrics> operations = metrics.getOperations();
+        assertEquals(1, operations.get(new MetricsRegistry.OperationKey("service", "StarMatchService", "memory", "getPersonalizedQuote")).getCallCount());
+        assertEquals(1, operations.get(new MetricsRegistry.OperationKey("service", "StarMatchService", "memory", "calculateCompatibility")).getCallCount());
+        assertEquals(1, operations.get(new MetricsRegistry.OperationKey("service", "StarMatchService", "memory", "getUserByEmail")).getCallCount());
+        assertEquals(3, operations.get(new MetricsRegistry.OperationKey("service", "StarMatchService", "memory", "getNatalChart")).getCallCount());
+    }
+
+    @Test
+    public void testSyntheticDataGenerator() throws IOException {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(7, 5000);
+        assertEquals(generator.user(42).toString(), new SyntheticDataGenerator(7, 5000).user(42).toString());
+        assertEquals(generator.user(42).getRawFriendEmails(), generator.user(42).getRawFriendEmails());
+
+        List<User> users = generator.users().toList();
+        Set<String> emails = users.stream().map(User::getEmail).collect(Collectors.toSet());
+        assertEquals(5000, emails.size());
+        assertTrue(users.stream().allMatch(user -> emails.containsAll(user.getRawFriendEmails())
+                && !user.getRawFriendEmails().contains(user.getEmail())));
+        int mostFriendedCount = users.stream().flatMap(user -> user.getRawFriendEmails().stream())
+                .collect(Collectors.groupingBy(email -> email, Collectors.counting()))
+                .values().stream().mapToInt(Long::intValue).max().orElse(0);
+        assertTrue(mostFriendedCount > 100);
+
+        Repository<User> repository = new InMemoryRepository<>();
+        assertEquals(5000, generator.writeTo(repository));
+        assertEquals(users.get(99).getEmail(), repository.get(100).getEmail());
+
+        Path file = Files.createTempFile("synthetic-users", ".txt");
+        try {
+            generator.writeCsv(file);
+            assertEquals(5000, new InFileRepository<>(file.toString(), User.class).getAll().size());
+            generator.writeBinary(file);
+            BinaryFileRepository<User> binary = new BinaryFileRepository<>(file.toString(), User.class);
+            assertEquals(5000, binary.getAll().size());
+            assertEquals(users.get(99).getRawFriendEmails(), binary.get(100).getRawFriendEmails());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.04);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.04);
+        assertEquals(500_500, histogram.getMean(), 1);
+        histogram.reset();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testLoadTestApp() {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42, 200);
+        Repository<User> users = new InMemoryRepository<>();
+        generator.writeTo(users);
+        StarMatchService service = new StarMatchService(users, adminRepository, signRepository, quoteRepository, traitRepository);
+        LoadTestApp loadTest = new LoadTestApp(service, generator, LoadTestApp.parseMix(LoadTestApp.DEFAULT_MIX));
+
+        LoadTestApp.Report report = loadTest.run(8, Duration.ofMillis(300));
+        assertTrue(report.getLatencies(LoadTestApp.Operation.LOGIN).getCount() >= 8);
+        assertEquals(0, report.getErrors(LoadTestApp.Operation.LOGIN));
+        assertTrue(report.getLatencies(LoadTestApp.Operation.NATAL_CHART).getCount() > 0);
+        assertEquals(0, report.getErrors(LoadTestApp.Operation.ADD_FRIEND));
+        assertEquals(0, report.getErrors(LoadTestApp.Operation.REMOVE_FRIEND));
+        assertTrue(users.getAll().stream().allMatch(user -> Set.copyOf(user.getRawFriendEmails()).size() == user.getRawFriendEmails().size()));
+        assertTrue(report.format().contains("compatibility"));
+        assertThrows(IllegalArgumentException.class, () -> LoadTestApp.parseMix("dance=1"));
+    }
+
+    @Test
+    public void testInstrumentedStarMatchService() throws IOException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        StarMatchService service = new InstrumentedStarMatchService(userRepository, adminRepository, signRepository,
+                quoteRepository, traitRepository, metrics, "memory");
+        User user = userRepository.getAll().getFirst();
+
+        service.getNatalChart(user);
+        service.getNatalChart(user);
+        assertThrows(BusinessLogicException.class, () -> service.addFriend(user, user.getEmail()));
+
+        Map<MetricsRegistry.OperationKey, OperationMetrics> operations = metrics.getOperations();
+        OperationMetrics natalChart = operations.get(new MetricsRegistry.OperationKey("service", "StarMatchService", "memory", "getNatalChart"));
+        assertEquals(2, natalChart.getCallCount());
+        assertEquals(0, natalChart.getErrorCount());
+        OperationMetrics addFriend = operations.get(new MetricsRegistry.OperationKey("service", "StarMatchService", "memory", "addFriend"));
+        assertEquals(1, addFriend.getErrorCount());
+        assertTrue(operations.get(new MetricsRegistry.OperationKey("repository", "StarSign", "InMemoryRepository", "getAll")).getCallCount() > 0);
+        assertTrue(metrics.format().contains("service/StarMatchService/memory/getNatalChart"));
+
+        Path file = Files.createTempFile("starmatch-metrics", ".prom");
+        try {
+            metrics.writePrometheus(file);
+            String text = Files.readString(file);
+            assertTrue(text.contains("# TYPE starmatch_operation_latency_seconds summary"));
+            assertTrue(text.contains("starmatch_operation_calls_total{layer=\"service\",target=\"StarMatchService\",backend=\"memory\",method=\"getNatalChart\"} 2"));
+            assertTrue(text.contains("starmatch_operation_errors_total{layer=\"service\",target=\"StarMatchService\",backend=\"memory\",method=\"addFriend\"} 1"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        metrics.reset();
+        assertTrue(metrics.getOperations().isEmpty());
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws IOException {
+        StarMatchService service = new InstrumentedStarMatchService(userRepository, adminRepository, signRepository,
+                quoteRepository, traitRepository, new MetricsRegistry(), "memory");
+        List<User> users = userRepository.getAll();
+        User user = users.get(0);
+        User friend = users.get(1);
+        service.addFriend(user, friend.getEmail());
+
+        Path file = Files.createTempFile("starmatch", ".jfr");
+        try (Recording recording = FlightRecording.start(file)) {
+            service.getNatalChart(user);
+            service.calculateCompatibility(user, friend.getEmail());
+            recording.stop();
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            List<RecordedEvent> compatibilities = events.stream()
+                    .filter(event -> event.getEventType().getName().equals("org.starmatch.Compatibility")).toList();
+            assertEquals(1, compatibilities.size());
+            assertEquals(friend.getId(), compatibilities.getFirst().getInt("friendId"));
+            assertEquals(3, events.stream().filter(event -> event.getEventType().getName().equals("org.starmatch.NatalChart")).count());
+            assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("org.starmatch.Repository")
+                    && event.getString("entity").equals("StarSign") && event.getLong("rows") == 12));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Tests the compact user model and its repository: sorted friend IDs, friends created after the user,
+     * friend emails following a change of email, deletions in the indexes, bulk loading and the service on top.
+     */
+    @Test
+    public void testCompactUserRepository() {
+        CompactUser compact = new CompactUser(1, "Compact", LocalDate.of(1995, 12, 15), LocalTime.of(9, 30), "Cluj",
+                "compact@gmail.com", "test123", new int[]{7, 3, 7, 5});
+        assertArrayEquals(new int[]{3, 5, 7}, compact.getFriendIds());
+        assertTrue(compact.isFriend(5));
+        assertFalse(compact.isFriend(4));
+        assertEquals(LocalDate.of(1995, 12, 15), compact.getBirthDate());
+        assertEquals(LocalTime.of(9, 30), compact.getBirthTime());
+        assertEquals("1,Compact,compact@gmail.com,test123,1995-12-15,09:30,Cluj,3,5,7", compact.convertObjectToLine());
+
+        CompactUserRepository repository = new CompactUserRepository();
+        User first = new User(1, "First", LocalDate.of(1995, 12, 15), LocalTime.of(9, 0), "Cluj", "first@gmail.com", "test123");
+        first.setRawFriendEmails(List.of("second@gmail.com"));
+        repository.create(first);
+        assertEquals(List.of("second@gmail.com"), repository.get(1).getRawFriendEmails());
+        assertTrue(repository.get(1).getFriends().isEmpty());
+
+        repository.create(new User(2, "Second", LocalDate.of(2001, 6, 23), LocalTime.of(10, 0), "Cluj", "second@gmail.com", "test123"));
+        assertEquals(List.of("Second"), repository.get(1).getFriends().stream().map(User::getName).toList());
+        assertSame(repository.get(1).getBirthPlace(), repository.get(2).getBirthPlace());
+
+        User second = repository.get(2);
+        second.setEmail("second.renamed@gmail.com");
+        repository.update(second);
+        assertEquals(List.of("second.renamed@gmail.com"), repository.get(1).getRawFriendEmails());
+        assertNull(repository.getByEmail("second@gmail.com"));
+        assertEquals(2, repository.getByEmail("second.renamed@gmail.com").getId());
+
+        for (int id = 3; id <= 100; id++) {
+            repository.create(new User(id, "User " + id, LocalDate.of(1990, 1, 1).plusDays(id), LocalTime.of(id % 24, 0), "Sibiu", "user" + id + "@gmail.com", "test123"));
+        }
+        for (int id = 2; id <= 100; id += 2) {
+            repository.delete(id);
+        }
+        assertEquals(50, repository.getAll().size());
+        assertEquals(50, repository.stream().count());
+        for (int id = 3; id <= 99; id += 2) {
+            assertEquals("user" + id + "@gmail.com", repository.get(id).getEmail());
+            assertEquals(id, repository.getByEmail("user" + id + "@gmail.com").getId());
+        }
+        assertNull(repository.get(50));
+        assertTrue(repository.get(1).getRawFriendEmails().isEmpty());
+        assertEquals(99, repository.getMaxId());
+        assertEquals(99, repository.findByEmail("user99@gmail.com").getId());
+        repository.create(new User(2, "Reused", LocalDate.of(2001, 6, 23), LocalTime.of(10, 0), "Cluj", "reused@gmail.com", "test123"));
+        assertTrue(repository.get(1).getFriends().isEmpty());
+        assertTrue(repository.get(1).getRawFriendEmails().isEmpty());
+
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42, 500);
+        CompactUserRepository generated = new CompactUserRepository();
+        generator.writeTo(generated);
+        for (int id = 1; id <= 500; id++) {
+            assertEquals(Set.copyOf(generator.user(id).getRawFriendEmails()), Set.copyOf(generated.get(id).getRawFriendEmails()));
+        }
+
+        StarMatchService service = new StarMatchService(generated, adminRepository, signRepository, quoteRepository, traitRepository);
+        User user = service.getUserByEmail(generator.user(1).getEmail());
+        String friendEmail = generator.user(2).getEmail();
+        service.removeFriend(user, friendEmail);
+        service.addFriend(user, friendEmail);
+        user = service.getUserByEmail(user.getEmail());
+        assertTrue(service.getFriends(user).stream().anyMatch(friend -> friend.getEmail().equals(friendEmail)));
+        assertNotNull(service.calculateCompatibility(user, friendEmail));
+    }
+
+    /**
+     * Tests the email index of the in-memory repository through a change of email made in place, a deletion and
+     * an ID reused by another object, and the highest ID read from the keys.
+     */
+    @Test
+    public void testInMemoryRepositoryFindByEmail() {
+        InMemoryRepository<User> repository = new InMemoryRepository<>();
+        assertNull(repository.findByEmail("first@gmail.com"));
+        assertEquals(0, repository.getMaxId());
+
+        User first = new User(1, "First", LocalDate.of(1995, 12, 15), LocalTime.of(9, 0), "Cluj", "first@gmail.com", "test123");
+        repository.create(first);
+        repository.create(new User(7, "Second", LocalDate.of(2001, 6, 23), LocalTime.of(10, 0), "Cluj", "second@gmail.com", "test123"));
+        assertSame(first, repository.findByEmail("first@gmail.com"));
+        assertNull(repository.findByEmail(null));
+        assertEquals(7, repository.getMaxId());
+
+        first.setEmail("first.renamed@gmail.com");
+        assertNull(repository.findByEmail("first@gmail.com"));
+        repository.update(first);
+        assertSame(first, repository.findByEmail("first.renamed@gmail.com"));
+
+        repository.delete(1);
+        assertNull(repository.findByEmail("first.renamed@gmail.com"));
+        User reused = new User(1, "Reused", LocalDate.of(1995, 12, 15), LocalTime.of(9, 0), "Cluj", "reused@gmail.com", "test123");
+        repository.create(reused);
+        assertSame(reused, repository.findByEmail("reused@gmail.com"));
+
+        StarMatchService service = new StarMatchService(repository, adminRepository, signRepository, quoteRepository, traitRepository);
+        assertSame(reused, service.logInUser("reused@gmail.com", "test123"));
+        assertNull(service.logInUser("first.renamed@gmail.com", "test123"));
+        assertEquals(7, service.getMaxId(repository));
+    }
+
     @Test
     public void testFriendsNearMe() {
         User userNear = new User(7, "Near User", LocalDate.of(2001, 6, 23), LocalTime.of(10, 0), "Cluj", "testnear@gmail.com", "test123");